@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.local;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.qiscus.sdk.data.model.QiscusComment;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local full text search of {@link QiscusDataBaseHelper}, and the triggers keeping comments_fts in sync with every
+ * way a comment gets written.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QiscusCommentSearchTest {
+    private SQLiteDatabase db;
+    private QiscusDataBaseHelper dataBaseHelper;
+
+    @Before
+    public void setUp() {
+        db = SQLiteDatabase.create(null);
+        QiscusDbOpenHelper openHelper = new QiscusDbOpenHelper(InstrumentationRegistry.getTargetContext());
+        openHelper.onConfigure(db);
+        openHelper.onCreate(db);
+        dataBaseHelper = new QiscusDataBaseHelper(db);
+
+        dataBaseHelper.addOrUpdate(comment(10, 1, "hello world"));
+        dataBaseHelper.addOrUpdate(comment(11, 1, "second message"));
+        dataBaseHelper.addOrUpdate(comment(12, 2, "hello from another room"));
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void searchMatchesWordPrefixes() {
+        List<QiscusComment> result = dataBaseHelper.searchComments("wor", 0, 20, 0);
+
+        assertEquals(1, result.size());
+        assertEquals(10, result.get(0).getId());
+        assertTrue(result.get(0).getSearchSnippet(), result.get(0).getSearchSnippet().contains("<b>world</b>"));
+        assertEquals(1, dataBaseHelper.searchComments("sec mess", 0, 20, 0).size());
+        assertEquals(0, dataBaseHelper.searchComments("second world", 0, 20, 0).size());
+    }
+
+    @Test
+    public void searchOrdersByTimeAndPages() {
+        List<QiscusComment> result = dataBaseHelper.searchComments("hello", 0, 20, 0);
+        assertEquals(2, result.size());
+        assertEquals(12, result.get(0).getId());
+        assertEquals(10, result.get(1).getId());
+
+        result = dataBaseHelper.searchComments("hello", 0, 1, 1);
+        assertEquals(1, result.size());
+        assertEquals(10, result.get(0).getId());
+    }
+
+    @Test
+    public void searchIsScopedToRoom() {
+        List<QiscusComment> result = dataBaseHelper.searchComments("hello", 2, 20, 0);
+
+        assertEquals(1, result.size());
+        assertEquals(12, result.get(0).getId());
+    }
+
+    @Test
+    public void searchSkipsDeletedComments() {
+        QiscusComment deleted = comment(10, 1, "hello world");
+        deleted.setDeleted(true);
+        dataBaseHelper.update(deleted);
+
+        assertEquals(0, dataBaseHelper.searchComments("world", 0, 20, 0).size());
+    }
+
+    @Test
+    public void updateReindexesComment() {
+        dataBaseHelper.update(comment(11, 1, "edited text"));
+
+        assertEquals(0, dataBaseHelper.searchComments("second", 0, 20, 0).size());
+        assertEquals(1, dataBaseHelper.searchComments("edited", 0, 20, 0).size());
+    }
+
+    @Test
+    public void replaceReindexesComment() {
+        // addOrUpdate goes through INSERT OR REPLACE, which relies on recursive triggers to drop the old entry
+        dataBaseHelper.addOrUpdate(comment(11, 1, "replaced text"));
+
+        assertEquals(0, dataBaseHelper.searchComments("second", 0, 20, 0).size());
+        assertEquals(1, dataBaseHelper.searchComments("replaced", 0, 20, 0).size());
+    }
+
+    @Test
+    public void deleteRemovesCommentFromIndex() {
+        dataBaseHelper.delete(comment(10, 1, "hello world"));
+
+        assertEquals(0, dataBaseHelper.searchComments("world", 0, 20, 0).size());
+        assertEquals(1, dataBaseHelper.searchComments("hello", 0, 20, 0).size());
+    }
+
+    @Test
+    public void searchIgnoresQuerySyntax() {
+        assertNull(QiscusDb.CommentSearchTable.toMatchQuery("  \" "));
+        assertEquals("\"hello*\" \"wor*\"", QiscusDb.CommentSearchTable.toMatchQuery(" hello \"wor"));
+        assertEquals(0, dataBaseHelper.searchComments("\"", 0, 20, 0).size());
+        // Operators are searched as plain words instead of changing the query
+        assertEquals(1, dataBaseHelper.searchComments("world -hello", 0, 20, 0).size());
+        assertEquals(0, dataBaseHelper.searchComments("world OR second", 0, 20, 0).size());
+    }
+
+    private static QiscusComment comment(long id, long roomId, String message) {
+        QiscusComment qiscusComment = new QiscusComment();
+        qiscusComment.setId(id);
+        qiscusComment.setRoomId(roomId);
+        qiscusComment.setUniqueId("c" + id);
+        qiscusComment.setCommentBeforeId(id - 1);
+        qiscusComment.setMessage(message);
+        qiscusComment.setSender("A");
+        qiscusComment.setSenderEmail("a@mail.com");
+        qiscusComment.setTime(new Date(1000L * id));
+        qiscusComment.setState(QiscusComment.STATE_DELIVERED);
+        return qiscusComment;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.local;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.qiscus.sdk.data.model.QiscusComment;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check that the room scoped comment queries of {@link QiscusDataBaseHelper} are answered by an index, on a
+ * database seeded with 100k comments across 500 rooms. Query plan and average latency of every query are logged
+ * with tag QiscusDbIndexTest.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QiscusDbIndexTest {
+    private static final String TAG = QiscusDbIndexTest.class.getSimpleName();
+    private static final int ROOMS = 500;
+    private static final int COMMENTS = 100000;
+    private static final int RUNS = 20;
+    private static final long ROOM_ID = 250;
+
+    private static SQLiteDatabase db;
+
+    @BeforeClass
+    public static void seed() {
+        db = SQLiteDatabase.create(null);
+        new QiscusDbOpenHelper(InstrumentationRegistry.getTargetContext()).onCreate(db);
+
+        db.beginTransaction();
+        try {
+            SQLiteStatement statement = db.compileStatement("INSERT INTO comments (id, room_id, unique_id, "
+                    + "comment_before_id, message, sender_email, time, state) VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+            for (int i = 1; i <= COMMENTS; i++) {
+                statement.bindLong(1, i);
+                statement.bindLong(2, i % ROOMS);
+                statement.bindString(3, "c" + i);
+                statement.bindLong(4, i - ROOMS);
+                statement.bindString(5, "message number " + i);
+                statement.bindString(6, "user" + (i % 7) + "@mail.com");
+                statement.bindLong(7, 1500000000000L + i * 1000L);
+                statement.bindLong(8, i % 3 == 0 ? QiscusComment.STATE_READ : QiscusComment.STATE_DELIVERED);
+                statement.executeInsert();
+            }
+            statement.close();
+            for (int i = 0; i < COMMENTS / 10; i++) {
+                db.execSQL("INSERT INTO files (comment_id, room_id, local_path) VALUES (?, ?, ?)",
+                        new Object[]{i * 10, (i * 10) % ROOMS, "/sdcard/Qiscus/" + i});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.execSQL("ANALYZE");
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void getComments() {
+        assertIndexed("getComments", "SELECT * FROM comments WHERE room_id = " + ROOM_ID
+                + " ORDER BY time DESC LIMIT 20");
+    }
+
+    @Test
+    public void getCommentsOffset() {
+        assertIndexed("getComments(offset)", "SELECT * FROM comments WHERE room_id = " + ROOM_ID
+                + " AND time <= 1500000050000 ORDER BY time DESC");
+    }
+
+    @Test
+    public void getOlderCommentsThan() {
+        assertIndexed("getOlderCommentsThan", "SELECT * FROM comments WHERE room_id = " + ROOM_ID
+                + " AND time <= 1500000050000 ORDER BY time DESC LIMIT 20");
+    }
+
+    @Test
+    public void getCommentsAfter() {
+        assertIndexed("getCommentsAfter", "SELECT * FROM comments WHERE room_id = " + ROOM_ID
+                + " AND (id >= 50000 OR id = -1) ORDER BY time DESC");
+    }
+
+    @Test
+    public void getLatestCommentOfRoom() {
+        assertIndexed("getLatestComment(roomId)", "SELECT * FROM comments WHERE room_id = " + ROOM_ID
+                + " ORDER BY time DESC LIMIT 1");
+    }
+
+    @Test
+    public void getLatestDeliveredComment() {
+        assertIndexed("getLatestDeliveredComment", "SELECT * FROM comments WHERE id != -1 AND room_id = " + ROOM_ID
+                + " AND state = " + QiscusComment.STATE_DELIVERED + " ORDER BY id DESC LIMIT 1");
+    }
+
+    @Test
+    public void getLatestReadComment() {
+        assertIndexed("getLatestReadComment", "SELECT * FROM comments WHERE id != -1 AND room_id = " + ROOM_ID
+                + " AND state = " + QiscusComment.STATE_READ + " ORDER BY id DESC LIMIT 1");
+    }
+
+    @Test
+    public void updateLastReadComment() {
+        assertIndexed("updateLastReadComment", "UPDATE comments SET state = " + QiscusComment.STATE_READ
+                + " WHERE room_id = " + ROOM_ID + " AND id <= 50000 AND id != -1 AND state < "
+                + QiscusComment.STATE_READ);
+    }
+
+    @Test
+    public void getCommentByBeforeId() {
+        assertIndexed("getCommentByBeforeId", "SELECT * FROM comments WHERE comment_before_id = 50000");
+    }
+
+    @Test
+    public void getPendingComments() {
+        assertIndexed("getPendingComments", "SELECT * FROM comments WHERE state = " + QiscusComment.STATE_PENDING
+                + " ORDER BY time ASC");
+    }
+
+    @Test
+    public void getLocalPaths() {
+        assertIndexed("getLocalPaths", "SELECT * FROM files WHERE room_id = " + ROOM_ID);
+    }
+
+    private static void assertIndexed(String name, String sql) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        try {
+            int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                String detail = cursor.getString(detailIndex);
+                plan.append(detail).append('\n');
+                boolean tableScan = detail.startsWith("SCAN") && !detail.contains("USING");
+                assertFalse(name + " scans the table: " + detail, tableScan);
+                assertFalse(name + " sorts without index: " + detail, detail.contains("TEMP B-TREE"));
+            }
+        } finally {
+            cursor.close();
+        }
+        assertTrue(name + " has no plan", plan.length() > 0);
+
+        long startTime = SystemClock.elapsedRealtime();
+        for (int i = 0; i < RUNS; i++) {
+            if (sql.startsWith("SELECT")) {
+                Cursor result = db.rawQuery(sql, null);
+                result.moveToLast();
+                result.close();
+            } else {
+                db.execSQL(sql);
+            }
+        }
+        Log.i(TAG, name + " " + (SystemClock.elapsedRealtime() - startTime) / (float) RUNS + " ms\n" + plan);
+    }
+}
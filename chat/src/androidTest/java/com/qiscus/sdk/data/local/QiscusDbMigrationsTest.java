@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.local;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Upgrade a database seeded with the version 14 schema, the oldest migratable one, through every migration.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QiscusDbMigrationsTest {
+    // Schema as shipped with DATABASE_VERSION 14, do not derive it from QiscusDb
+    private static final String[] SCHEMA_V14 = {
+            "CREATE TABLE rooms (id LONG PRIMARY KEY, distinct_id TEXT DEFAULT 'default', unique_id TEXT, "
+                    + "name TEXT, is_group INTEGER DEFAULT 0, options TEXT, avatar_url TEXT, "
+                    + "unread_count INTEGER DEFAULT 0 ); ",
+            "CREATE TABLE members (user_email TEXT PRIMARY KEY, user_name TEXT, user_avatar TEXT ); ",
+            "CREATE TABLE room_members (room_id LONG, user_email TEXT, distinct_id TEXT DEFAULT 'default', "
+                    + "last_delivered LONG DEFAULT 0, last_read LONG DEFAULT 0, "
+                    + "PRIMARY KEY (room_id, user_email) ); ",
+            "CREATE TABLE comments (id LONG, room_id LONG, unique_id TEXT PRIMARY KEY, comment_before_id LONG, "
+                    + "message TEXT, sender TEXT, sender_email TEXT NOT NULL, sender_avatar TEXT, "
+                    + "time LONG NOT NULL, state INTEGER NOT NULL, deleted INTEGER DEFAULT 0, type TEXT, "
+                    + "payload TEXT, extras TEXT  ); ",
+            "CREATE TABLE files (comment_id LONG PRIMARY KEY, room_id LONG NOT NULL, local_path TEXT NOT NULL ); "
+    };
+
+    private QiscusDbOpenHelper openHelper;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        openHelper = new QiscusDbOpenHelper(InstrumentationRegistry.getTargetContext());
+        db = SQLiteDatabase.create(null);
+        db.execSQL(QiscusDb.CommentSearchTable.ENABLE_RECURSIVE_TRIGGERS);
+        for (String statement : SCHEMA_V14) {
+            db.execSQL(statement);
+        }
+        db.setVersion(14);
+        seed();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    private void seed() {
+        db.execSQL("INSERT INTO rooms (id, unique_id, name, is_group) VALUES (1, 'r1', 'Room 1', 1)");
+        db.execSQL("INSERT INTO rooms (id, unique_id, name, is_group) VALUES (2, 'r2', 'Room 2', 0)");
+        db.execSQL("INSERT INTO members VALUES ('a@mail.com', 'A', 'a.png')");
+        db.execSQL("INSERT INTO members VALUES ('b@mail.com', 'B', 'b.png')");
+        db.execSQL("INSERT INTO room_members VALUES (1, 'a@mail.com', 'default', 11, 10)");
+        db.execSQL("INSERT INTO room_members VALUES (1, 'b@mail.com', 'default', 11, 11)");
+        db.execSQL("INSERT INTO comments (id, room_id, unique_id, comment_before_id, message, sender, "
+                + "sender_email, time, state) VALUES (10, 1, 'c10', 0, 'hello world', 'A', 'a@mail.com', 1000, 3)");
+        db.execSQL("INSERT INTO comments (id, room_id, unique_id, comment_before_id, message, sender, "
+                + "sender_email, time, state) VALUES (11, 1, 'c11', 10, 'second message', 'B', 'b@mail.com', 2000, 4)");
+        db.execSQL("INSERT INTO files VALUES (10, 1, '/sdcard/Qiscus/image.png')");
+    }
+
+    @Test
+    public void upgradeFromOldestMigratableVersion() {
+        assertTrue(QiscusDbMigrations.canMigrate(14, QiscusDb.DATABASE_VERSION));
+        openHelper.onUpgrade(db, 14, QiscusDb.DATABASE_VERSION);
+
+        assertEquals(2, count("SELECT COUNT(*) FROM rooms"));
+        assertEquals(2, count("SELECT COUNT(*) FROM members"));
+        assertEquals(2, count("SELECT COUNT(*) FROM room_members"));
+        assertEquals(2, count("SELECT COUNT(*) FROM comments"));
+        assertEquals(1, count("SELECT COUNT(*) FROM files"));
+        assertEquals(11, count("SELECT last_read FROM room_members WHERE user_email = 'b@mail.com'"));
+        assertEquals(2000, count("SELECT time FROM comments WHERE unique_id = 'c11'"));
+    }
+
+    @Test
+    public void upgradeBackfillsLastCommentTime() {
+        openHelper.onUpgrade(db, 14, QiscusDb.DATABASE_VERSION);
+
+        assertEquals(2000, count("SELECT last_comment_time FROM rooms WHERE id = 1"));
+        assertEquals(0, count("SELECT last_comment_time FROM rooms WHERE id = 2"));
+    }
+
+    @Test
+    public void upgradeIndexesExistingComments() {
+        openHelper.onUpgrade(db, 14, QiscusDb.DATABASE_VERSION);
+
+        assertEquals(1, count("SELECT COUNT(*) FROM comments_fts WHERE comments_fts MATCH 'hello'"));
+        assertEquals(1, count("SELECT COUNT(*) FROM comments_fts WHERE comments_fts MATCH 'sec*'"));
+        assertEquals(10, count("SELECT comments.id FROM comments JOIN comments_fts "
+                + "ON comments_fts.docid = comments.rowid WHERE comments_fts MATCH 'world'"));
+
+        // Triggers keep the index in sync with comments written after the upgrade
+        db.execSQL("INSERT OR REPLACE INTO comments (id, room_id, unique_id, comment_before_id, message, sender, "
+                + "sender_email, time, state) VALUES (11, 1, 'c11', 10, 'edited text', 'B', 'b@mail.com', 2000, 4)");
+        assertEquals(0, count("SELECT COUNT(*) FROM comments_fts WHERE comments_fts MATCH 'second'"));
+        assertEquals(1, count("SELECT COUNT(*) FROM comments_fts WHERE comments_fts MATCH 'edited'"));
+    }
+
+    @Test
+    public void searchSurvivesFullVacuumOfUpgradedDatabase() {
+        openHelper.onUpgrade(db, 14, QiscusDb.DATABASE_VERSION);
+        db.execSQL("INSERT INTO comments (id, room_id, unique_id, comment_before_id, message, sender, "
+                + "sender_email, time, state) VALUES (12, 1, 'c12', 11, 'third one', 'A', 'a@mail.com', 3000, 3)");
+        // Leave a rowid gap so renumbering during vacuum would shift the remaining comments
+        db.execSQL("DELETE FROM comments WHERE unique_id = 'c10'");
+        assertTrue(count("PRAGMA auto_vacuum") != 2);
+
+        new QiscusRetentionEngine(db, new QiscusDbWriter(db, comments -> { })).vacuum();
+
+        assertEquals(2, count("PRAGMA auto_vacuum"));
+        assertEquals(0, count("SELECT COUNT(*) FROM comments_fts WHERE comments_fts MATCH 'hello'"));
+        assertEquals(11, count("SELECT comments.id FROM comments JOIN comments_fts "
+                + "ON comments_fts.docid = comments.rowid WHERE comments_fts MATCH 'second'"));
+        assertEquals(12, count("SELECT comments.id FROM comments JOIN comments_fts "
+                + "ON comments_fts.docid = comments.rowid WHERE comments_fts MATCH 'third'"));
+    }
+
+    @Test
+    public void upgradeBackfillsLastAccessOfFiles() {
+        openHelper.onUpgrade(db, 14, QiscusDb.DATABASE_VERSION);
+
+        assertTrue(count("SELECT last_access FROM files WHERE comment_id = 10") > 0);
+    }
+
+    @Test
+    public void upgradedSchemaMatchesFreshInstall() {
+        openHelper.onUpgrade(db, 14, QiscusDb.DATABASE_VERSION);
+
+        SQLiteDatabase fresh = SQLiteDatabase.create(null);
+        try {
+            openHelper.onCreate(fresh);
+            for (String table : new String[]{"rooms", "members", "room_members", "comments", "files"}) {
+                assertEquals(table, columns(fresh, table), columns(db, table));
+            }
+            assertEquals(names(fresh, "index"), names(db, "index"));
+            assertEquals(names(fresh, "trigger"), names(db, "trigger"));
+        } finally {
+            fresh.close();
+        }
+    }
+
+    @Test
+    public void cannotMigrateVersionsBeforeMigrations() {
+        assertFalse(QiscusDbMigrations.canMigrate(13, QiscusDb.DATABASE_VERSION));
+        assertFalse(QiscusDbMigrations.canMigrate(QiscusDb.DATABASE_VERSION + 1, QiscusDb.DATABASE_VERSION));
+    }
+
+    private long count(String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            assertTrue(sql, cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static Set<String> columns(SQLiteDatabase database, String table) {
+        Set<String> columns = new HashSet<>();
+        Cursor cursor = database.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+            while (cursor.moveToNext()) {
+                columns.add(cursor.getString(cursor.getColumnIndexOrThrow("name")));
+            }
+        } finally {
+            cursor.close();
+        }
+        return columns;
+    }
+
+    private static Set<String> names(SQLiteDatabase database, String type) {
+        Set<String> names = new HashSet<>();
+        Cursor cursor = database.rawQuery("SELECT name FROM sqlite_master WHERE type = ? AND name NOT LIKE 'sqlite_%'",
+                new String[]{type});
+        try {
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return names;
+    }
+}
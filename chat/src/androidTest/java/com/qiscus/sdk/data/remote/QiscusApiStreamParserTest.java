@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.remote;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.qiscus.sdk.data.model.QiscusChatRoom;
+import com.qiscus.sdk.data.model.QiscusComment;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decode recorded responses with {@link QiscusApiStreamParser} and with the json tree parser of
+ * {@link QiscusApiParser} it replaced, both must give the same comments and rooms.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QiscusApiStreamParserTest {
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    // Recorded load_comments response, with text, reply, buttons and custom comments
+    private static final String LOAD_COMMENTS = "{\"status\":200,\"results\":{\"comments\":["
+            + "{\"id\":103,\"comment_before_id\":102,\"message\":\"See you \\u2764\",\"username\":\"Alice\","
+            + "\"email\":\"alice@mail.com\",\"user_avatar_url\":\"https://qiscus.com/a.png\",\"room_id\":7,"
+            + "\"timestamp\":\"2018-03-05T09:15:30Z\",\"unique_temp_id\":\"android_1520241330\","
+            + "\"unix_timestamp\":1520241330,\"is_deleted\":false,\"room_name\":\"Team\",\"chat_type\":\"group\","
+            + "\"type\":\"text\",\"payload\":{},\"extras\":{\"pinned\":true,\"tags\":[\"a\",\"b\"]}},"
+            + "{\"id\":102,\"comment_before_id\":101,\"message\":\"old text\",\"username\":\"Bob\","
+            + "\"email\":\"bob@mail.com\",\"user_avatar_url\":\"https://qiscus.com/b.png\",\"room_id\":7,"
+            + "\"timestamp\":\"2018-03-05T09:14:02.123Z\",\"unique_id\":\"u102\",\"is_deleted\":false,"
+            + "\"room_name\":\"Team\",\"chat_type\":\"group\",\"type\":\"reply\",\"payload\":{\"text\":\" Sure \","
+            + "\"replied_comment_id\":100,\"replied_comment_message\":\"Lunch?\",\"replied_comment_type\":\"text\"},"
+            + "\"extras\":null},"
+            + "{\"id\":101,\"comment_before_id\":100,\"message\":\"Pick one\",\"username\":\"Bot\","
+            + "\"email\":\"bot@mail.com\",\"user_avatar_url\":\"https://qiscus.com/bot.png\",\"room_id\":7,"
+            + "\"timestamp\":\"2018-03-05T09:10:00Z\",\"unique_id\":\"u101\",\"is_deleted\":true,"
+            + "\"chat_type\":\"single\",\"type\":\"buttons\",\"payload\":{\"text\":\"Choose\",\"buttons\":"
+            + "[{\"label\":\"Yes\",\"type\":\"postback\",\"payload\":{\"url\":\"\",\"method\":\"get\"}}]}},"
+            + "{\"id\":100,\"comment_before_id\":0,\"message\":\"Lunch?\",\"username\":\"Alice\","
+            + "\"email\":\"alice@mail.com\",\"user_avatar_url\":\"https://qiscus.com/a.png\",\"room_id\":7,"
+            + "\"timestamp\":\"2018-03-05T09:00:00Z\",\"unique_id\":\"u100\",\"type\":\"custom\","
+            + "\"payload\":{\"type\":\"poll\",\"content\":{\"options\":[1,2.5,null]}}}"
+            + "]}}";
+
+    // Recorded rooms_info response
+    private static final String ROOMS_INFO = "{\"status\":200,\"results\":{\"rooms_info\":["
+            + "{\"id\":7,\"chat_type\":\"group\",\"room_name\":\"Team\",\"unique_id\":\"team-7\","
+            + "\"raw_room_name\":\"Team\",\"options\":\"{\\\"color\\\":\\\"red\\\"}\","
+            + "\"avatar_url\":\"https://qiscus.com/team.png\",\"unread_count\":3,\"last_comment\":"
+            + "{\"id\":103,\"comment_before_id\":102,\"message\":\"See you\",\"username\":\"Alice\","
+            + "\"email\":\"alice@mail.com\",\"user_avatar_url\":\"https://qiscus.com/a.png\","
+            + "\"timestamp\":\"2018-03-05T09:15:30Z\",\"unique_temp_id\":\"android_1520241330\","
+            + "\"type\":\"text\",\"payload\":{}}},"
+            + "{\"id\":8,\"chat_type\":\"single\",\"room_name\":\"Bob\",\"unique_id\":\"8a2f\","
+            + "\"raw_room_name\":\"alice@mail.com bob@mail.com\",\"options\":null,"
+            + "\"avatar_url\":\"https://qiscus.com/b.png\",\"unread_count\":0,\"last_comment\":"
+            + "{\"id\":90,\"comment_before_id\":89,\"message\":\"Hi\",\"username\":\"Bob\","
+            + "\"email\":\"bob@mail.com\",\"user_avatar_url\":\"https://qiscus.com/b.png\","
+            + "\"timestamp\":\"2018-03-01T01:02:03Z\",\"unique_id\":\"u90\"}}"
+            + "]}}";
+
+    @Test
+    public void commentsMatchTreeParser() {
+        List<QiscusComment> expected = new ArrayList<>();
+        for (JsonElement jsonComment : tree(LOAD_COMMENTS).get("comments").getAsJsonArray()) {
+            expected.add(QiscusApiParser.parseQiscusComment(jsonComment, 7));
+        }
+
+        List<QiscusComment> actual = QiscusApiStreamParser.parseComments(body(LOAD_COMMENTS), 7)
+                .toList().toBlocking().single();
+
+        assertEquals(4, actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertCommentEquals(expected.get(i), actual.get(i));
+        }
+        assertEquals("Sure", actual.get(1).getMessage());
+        assertEquals("Choose", actual.get(2).getMessage());
+    }
+
+    @Test
+    public void commentsTakeRoomIdFromEveryComment() {
+        List<QiscusComment> actual = QiscusApiStreamParser.parseComments(body(LOAD_COMMENTS))
+                .toList().toBlocking().single();
+
+        for (QiscusComment qiscusComment : actual) {
+            assertEquals(7, qiscusComment.getRoomId());
+        }
+    }
+
+    @Test
+    public void roomsMatchTreeParser() {
+        List<QiscusChatRoom> expected = QiscusApiParser.parseQiscusChatRoomInfo(new JsonParser().parse(ROOMS_INFO));
+
+        List<QiscusChatRoom> actual = QiscusApiStreamParser.parseChatRooms(body(ROOMS_INFO))
+                .toList().toBlocking().single();
+
+        assertEquals(2, actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            QiscusChatRoom expectedRoom = expected.get(i);
+            QiscusChatRoom actualRoom = actual.get(i);
+            assertEquals(expectedRoom.getId(), actualRoom.getId());
+            assertEquals(expectedRoom.isGroup(), actualRoom.isGroup());
+            assertEquals(expectedRoom.getName(), actualRoom.getName());
+            assertEquals(expectedRoom.getUniqueId(), actualRoom.getUniqueId());
+            assertEquals(expectedRoom.getDistinctId(), actualRoom.getDistinctId());
+            assertEquals(String.valueOf(expectedRoom.getOptions()), String.valueOf(actualRoom.getOptions()));
+            assertEquals(expectedRoom.getAvatarUrl(), actualRoom.getAvatarUrl());
+            assertEquals(expectedRoom.getUnreadCount(), actualRoom.getUnreadCount());
+            assertCommentEquals(expectedRoom.getLastComment(), actualRoom.getLastComment());
+        }
+    }
+
+    @Test
+    public void missingResultsGiveNoItems() {
+        assertTrue(QiscusApiStreamParser.parseComments(body("{\"status\":200,\"results\":{\"comments\":[]}}"))
+                .toList().toBlocking().single().isEmpty());
+        assertTrue(QiscusApiStreamParser.parseChatRooms(body("{\"status\":200,\"results\":{}}"))
+                .toList().toBlocking().single().isEmpty());
+    }
+
+    private static void assertCommentEquals(QiscusComment expected, QiscusComment actual) {
+        String id = expected.getUniqueId();
+        assertEquals(id, expected.getId(), actual.getId());
+        assertEquals(id, expected.getRoomId(), actual.getRoomId());
+        assertEquals(id, expected.getUniqueId(), actual.getUniqueId());
+        assertEquals(id, expected.getCommentBeforeId(), actual.getCommentBeforeId());
+        assertEquals(id, expected.getMessage(), actual.getMessage());
+        assertEquals(id, expected.getSender(), actual.getSender());
+        assertEquals(id, expected.getSenderEmail(), actual.getSenderEmail());
+        assertEquals(id, expected.getSenderAvatar(), actual.getSenderAvatar());
+        assertEquals(id, expected.getTime(), actual.getTime());
+        assertEquals(id, expected.getState(), actual.getState());
+        assertEquals(id, expected.isDeleted(), actual.isDeleted());
+        assertEquals(id, expected.getRoomName(), actual.getRoomName());
+        assertEquals(id, expected.isGroupMessage(), actual.isGroupMessage());
+        assertEquals(id, expected.getRawType(), actual.getRawType());
+        assertEquals(id, expected.getExtraPayload(), actual.getExtraPayload());
+        assertEquals(id, String.valueOf(expected.getExtras()), String.valueOf(actual.getExtras()));
+    }
+
+    private static JsonObject tree(String json) {
+        return new JsonParser().parse(json).getAsJsonObject().get("results").getAsJsonObject();
+    }
+
+    private static ResponseBody body(String json) {
+        return ResponseBody.create(JSON, json);
+    }
+}
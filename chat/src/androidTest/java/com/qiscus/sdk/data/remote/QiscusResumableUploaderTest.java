@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.remote;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.qiscus.sdk.data.model.QiscusUploadConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Run {@link QiscusResumableUploader} against a scripted tus server.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QiscusResumableUploaderTest {
+    private static final String UPLOAD_ID = "android_upload_test";
+    private static final byte[] CONTENT = "0123456789".getBytes();
+
+    private MockWebServer server;
+    private SharedPreferences sessions;
+    private File file;
+    private QiscusUploadConfig uploadConfig;
+    private List<Long> progress;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+
+        Context context = InstrumentationRegistry.getTargetContext();
+        sessions = context.getSharedPreferences("uploads.test", Context.MODE_PRIVATE);
+        sessions.edit().clear().commit();
+
+        file = new File(context.getCacheDir(), "upload.txt");
+        FileOutputStream outputStream = new FileOutputStream(file);
+        outputStream.write(CONTENT);
+        outputStream.close();
+
+        uploadConfig = new QiscusUploadConfig()
+                .setResumableUploadUrl(server.url("/files/").toString())
+                .setChunkSize(4)
+                .setMaxChunkRetry(3);
+        progress = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+        file.delete();
+    }
+
+    @Test
+    public void createAndUploadInChunks() throws Exception {
+        server.enqueue(created());
+        server.enqueue(offset(4));
+        server.enqueue(offset(8));
+        server.enqueue(offset(10));
+
+        Uri uri = upload();
+
+        assertEquals(server.url("/files/abc").toString(), uri.toString());
+        RecordedRequest create = server.takeRequest();
+        assertEquals("POST", create.getMethod());
+        assertEquals("10", create.getHeader("Upload-Length"));
+        assertEquals("1.0.0", create.getHeader("Tus-Resumable"));
+        assertPatch(server.takeRequest(), 0, "0123");
+        assertPatch(server.takeRequest(), 4, "4567");
+        assertPatch(server.takeRequest(), 8, "89");
+        assertEquals(100L, (long) progress.get(progress.size() - 1));
+    }
+
+    @Test
+    public void resyncOffsetAfterFailedChunk() throws Exception {
+        server.enqueue(created());
+        server.enqueue(offset(4));
+        server.enqueue(new MockResponse().setResponseCode(500));
+        // Server kept part of the failed chunk
+        server.enqueue(offset(6));
+        server.enqueue(offset(10));
+
+        upload();
+
+        server.takeRequest();
+        assertPatch(server.takeRequest(), 0, "0123");
+        assertPatch(server.takeRequest(), 4, "4567");
+        assertEquals("HEAD", server.takeRequest().getMethod());
+        assertPatch(server.takeRequest(), 6, "6789");
+        assertEquals(5, server.getRequestCount());
+    }
+
+    @Test
+    public void failedOffsetRequestCountsAsRetry() throws Exception {
+        server.enqueue(created());
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+        server.enqueue(offset(0));
+        server.enqueue(offset(4));
+        server.enqueue(offset(8));
+        server.enqueue(offset(10));
+
+        upload();
+
+        assertEquals(7, server.getRequestCount());
+    }
+
+    @Test
+    public void failAfterMaxRetry() throws Exception {
+        uploadConfig.setMaxChunkRetry(1);
+        server.enqueue(created());
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+
+        try {
+            upload();
+            fail("Upload should fail");
+        } catch (IOException expected) {
+            assertEquals(3, server.getRequestCount());
+        }
+    }
+
+    @Test
+    public void resumeUploadOfSameFile() throws Exception {
+        uploadConfig.setMaxChunkRetry(0);
+        server.enqueue(created());
+        server.enqueue(offset(4));
+        server.enqueue(new MockResponse().setResponseCode(500));
+        try {
+            upload();
+            fail("Upload should fail");
+        } catch (IOException expected) {
+            //Continue below
+        }
+        for (int i = 0; i < 3; i++) {
+            server.takeRequest();
+        }
+
+        server.enqueue(offset(4));
+        server.enqueue(offset(8));
+        server.enqueue(offset(10));
+        Uri uri = upload();
+
+        assertEquals(server.url("/files/abc").toString(), uri.toString());
+        RecordedRequest head = server.takeRequest();
+        assertEquals("HEAD", head.getMethod());
+        assertEquals("/files/abc", head.getPath());
+        assertPatch(server.takeRequest(), 4, "4567");
+        assertPatch(server.takeRequest(), 8, "89");
+        assertEquals(6, server.getRequestCount());
+    }
+
+    private Uri upload() throws IOException {
+        // Let every failure reach the uploader instead of being retried by OkHttp
+        OkHttpClient httpClient = new OkHttpClient.Builder().retryOnConnectionFailure(false).build();
+        return new QiscusResumableUploader(httpClient, uploadConfig, sessions).upload(file, UPLOAD_ID, progress::add);
+    }
+
+    private static MockResponse created() {
+        return new MockResponse().setResponseCode(201).setHeader("Location", "/files/abc");
+    }
+
+    private static MockResponse offset(long offset) {
+        return new MockResponse().setResponseCode(204).setHeader("Upload-Offset", offset);
+    }
+
+    private static void assertPatch(RecordedRequest request, long offset, String content) {
+        assertEquals("PATCH", request.getMethod());
+        assertEquals(String.valueOf(offset), request.getHeader("Upload-Offset"));
+        assertEquals("application/offset+octet-stream", request.getHeader("Content-Type"));
+        assertEquals(content, request.getBody().readUtf8());
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.remote;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.qiscus.sdk.event.QiscusTypingEvent;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check inbound typing of {@link QiscusTypingManager} is coalesced into one event per emit interval and that
+ * typers without a stop message expire.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QiscusTypingManagerTest {
+    private static final long ROOM_ID = 987654321L;
+    // Longer than the emit interval, shorter than the typing timeout
+    private static final long QUIET_PERIOD = 1500;
+    // Longer than the typing timeout
+    private static final long EXPIRY_PERIOD = 12000;
+
+    private final BlockingQueue<QiscusTypingEvent> typingEvents = new LinkedBlockingQueue<>();
+    private QiscusTypingManager typingManager;
+
+    @Before
+    public void setUp() {
+        typingManager = QiscusTypingManager.getInstance();
+        typingManager.clear();
+        EventBus.getDefault().register(this);
+    }
+
+    @After
+    public void tearDown() {
+        EventBus.getDefault().unregister(this);
+        typingManager.clear();
+    }
+
+    @Subscribe
+    public void onTypingEvent(QiscusTypingEvent event) {
+        if (event.getRoomId() == ROOM_ID) {
+            typingEvents.add(event);
+        }
+    }
+
+    @Test
+    public void coalesceTypingOfManyUsers() throws InterruptedException {
+        long emitCount = typingManager.getEmitCount();
+        // Holding the manager lock keeps the emit from running until every message is received
+        synchronized (typingManager) {
+            typingManager.onTypingReceived(ROOM_ID, "a@qiscus.com", true);
+            typingManager.onTypingReceived(ROOM_ID, "b@qiscus.com", true);
+            typingManager.onTypingReceived(ROOM_ID, "a@qiscus.com", true);
+            typingManager.onTypingReceived(ROOM_ID, "c@qiscus.com", true);
+        }
+
+        assertTypingUsers(nextEvent(QUIET_PERIOD), "a@qiscus.com", "b@qiscus.com", "c@qiscus.com");
+        long firstEmitTime = System.currentTimeMillis();
+        assertEquals(new HashSet<>(Arrays.asList("a@qiscus.com", "b@qiscus.com", "c@qiscus.com")),
+                typingManager.getTypingUsers(ROOM_ID));
+
+        // Messages right after an emit wait for the emit interval and are coalesced into one emit
+        typingManager.onTypingReceived(ROOM_ID, "b@qiscus.com", false);
+        typingManager.onTypingReceived(ROOM_ID, "c@qiscus.com", false);
+        typingManager.onTypingReceived(ROOM_ID, "c@qiscus.com", true);
+
+        assertTypingUsers(nextEvent(QUIET_PERIOD), "a@qiscus.com", "c@qiscus.com");
+        assertTrue(System.currentTimeMillis() - firstEmitTime >= 400);
+        assertNull(typingEvents.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS));
+        assertEquals(emitCount + 2, typingManager.getEmitCount());
+    }
+
+    @Test
+    public void refreshWithoutChangeIsNotEmitted() throws InterruptedException {
+        typingManager.onTypingReceived(ROOM_ID, "a@qiscus.com", true);
+        assertTypingUsers(nextEvent(QUIET_PERIOD), "a@qiscus.com");
+
+        typingManager.onTypingReceived(ROOM_ID, "a@qiscus.com", true);
+        typingManager.onTypingReceived(ROOM_ID, "unknown@qiscus.com", false);
+        assertNull(typingEvents.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void expireTyperWithoutStop() throws InterruptedException {
+        long receivedCount = typingManager.getReceivedCount();
+        typingManager.onTypingReceived(ROOM_ID, "a@qiscus.com", true);
+        assertTypingUsers(nextEvent(QUIET_PERIOD), "a@qiscus.com");
+
+        // The stop message is lost
+        assertTypingUsers(nextEvent(EXPIRY_PERIOD));
+        assertEquals(Collections.emptySet(), typingManager.getTypingUsers(ROOM_ID));
+        assertEquals(receivedCount + 1, typingManager.getReceivedCount());
+    }
+
+    @Test
+    public void refreshExtendsExpiry() throws InterruptedException {
+        typingManager.onTypingReceived(ROOM_ID, "a@qiscus.com", true);
+        assertTypingUsers(nextEvent(QUIET_PERIOD), "a@qiscus.com");
+
+        // Refresh before the timeout, the typer stays until a timeout after the last refresh
+        Thread.sleep(6000);
+        long refreshTime = System.currentTimeMillis();
+        typingManager.onTypingReceived(ROOM_ID, "a@qiscus.com", true);
+        assertNull(typingEvents.poll(6000, TimeUnit.MILLISECONDS));
+
+        assertTypingUsers(nextEvent(EXPIRY_PERIOD));
+        assertTrue(System.currentTimeMillis() - refreshTime >= 10000);
+    }
+
+    private QiscusTypingEvent nextEvent(long timeout) throws InterruptedException {
+        QiscusTypingEvent event = typingEvents.poll(timeout, TimeUnit.MILLISECONDS);
+        assertNotNull(event);
+        return event;
+    }
+
+    private static void assertTypingUsers(QiscusTypingEvent event, String... users) {
+        assertEquals(new HashSet<>(Arrays.asList(users)), event.getTypingUsers());
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.util;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.qiscus.sdk.data.model.QiscusComment;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Parsed payload cache of {@link QiscusRawDataExtractor}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QiscusRawDataExtractorTest {
+
+    @Test
+    public void samePayloadIsParsedOnce() throws JSONException {
+        // Two instances of the same comment, like one bound from memory and one re-read from database
+        JSONObject payload = QiscusRawDataExtractor.getPayload(comment("{\"url\":\"a.png\",\"caption\":\"hi\"}"));
+
+        assertEquals("a.png", payload.getString("url"));
+        assertSame(payload, QiscusRawDataExtractor.getPayload(comment("{\"url\":\"a.png\",\"caption\":\"hi\"}")));
+    }
+
+    @Test
+    public void changedPayloadIsParsedAgain() throws JSONException {
+        QiscusComment qiscusComment = comment("{\"url\":\"b.png\",\"caption\":\"\"}");
+        JSONObject payload = QiscusRawDataExtractor.getPayload(qiscusComment);
+
+        qiscusComment.setExtraPayload("{\"url\":\"b.png\",\"caption\":\"edited\"}");
+        JSONObject edited = QiscusRawDataExtractor.getPayload(qiscusComment);
+
+        assertNotSame(payload, edited);
+        assertEquals("", payload.getString("caption"));
+        assertEquals("edited", edited.getString("caption"));
+    }
+
+    @Test(expected = JSONException.class)
+    public void missingPayloadThrows() throws JSONException {
+        QiscusRawDataExtractor.getPayload(comment(null));
+    }
+
+    @Test(expected = JSONException.class)
+    public void invalidPayloadThrows() throws JSONException {
+        QiscusRawDataExtractor.getPayload(comment("not a json"));
+    }
+
+    private static QiscusComment comment(String payload) {
+        QiscusComment qiscusComment = new QiscusComment();
+        qiscusComment.setExtraPayload(payload);
+        return qiscusComment;
+    }
+}
@@ -23,17 +23,26 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Handler;
 
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.integration.okhttp3.OkHttpUrlLoader;
+import com.bumptech.glide.load.model.GlideUrl;
 import com.google.firebase.iid.FirebaseInstanceId;
 import com.google.gson.Gson;
 import com.qiscus.jupuk.Jupuk;
+import com.qiscus.sdk.data.local.QiscusCacheDataStore;
 import com.qiscus.sdk.data.local.QiscusCacheManager;
 import com.qiscus.sdk.data.local.QiscusDataBaseHelper;
 import com.qiscus.sdk.data.local.QiscusDataStore;
+import com.qiscus.sdk.data.local.QiscusSyncCursor;
 import com.qiscus.sdk.data.model.QiscusAccount;
 import com.qiscus.sdk.data.model.QiscusChatConfig;
 import com.qiscus.sdk.data.model.QiscusChatRoom;
 import com.qiscus.sdk.data.model.QiscusComment;
 import com.qiscus.sdk.data.remote.QiscusApi;
+import com.qiscus.sdk.data.remote.QiscusHttpEngine;
+import com.qiscus.sdk.data.remote.QiscusOutbox;
+import com.qiscus.sdk.data.remote.QiscusReceiptBatcher;
+import com.qiscus.sdk.data.remote.QiscusTypingManager;
 import com.qiscus.sdk.event.QiscusUserEvent;
 import com.qiscus.sdk.service.QiscusSyncJobService;
 import com.qiscus.sdk.service.QiscusSyncService;
@@ -50,6 +59,7 @@ import org.json.JSONObject;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -134,13 +144,15 @@ public class Qiscus {
         appHandler = new Handler(appInstance.getApplicationContext().getMainLooper());
         taskExecutor = new ScheduledThreadPoolExecutor(5);
         localDataManager = new LocalDataManager();
-        dataStore = new QiscusDataBaseHelper();
         chatConfig = new QiscusChatConfig();
+        dataStore = new QiscusCacheDataStore(new QiscusDataBaseHelper(), chatConfig.getCommentCacheSize());
         heartBeat = 60000;
         appInstance.registerActivityLifecycleCallbacks(QiscusActivityCallback.INSTANCE);
         authorities = appInstance.getPackageName() + ".qiscus.sdk.provider";
 
         Jupuk.init(application);
+        Glide.get(application).register(GlideUrl.class, InputStream.class,
+                new OkHttpUrlLoader.Factory(request -> QiscusHttpEngine.getInstance().getClient().newCall(request)));
 
         startPusherService();
         QiscusCacheManager.getInstance().setLastChatActivity(false, 0);
@@ -352,10 +364,18 @@ public class Qiscus {
      * Use this method if you want to use your own data store implementation, e.g using Realm, your own table,
      * your own orm, etc
      *
-     * @param dataStore Your own chat datastore
+     * @param dataStore Your own chat datastore, it will be wrapped with in memory comment cache
      */
     public static void setDataStore(QiscusDataStore dataStore) {
-        Qiscus.dataStore = dataStore;
+        checkAppIdSetup();
+        if (Qiscus.dataStore == dataStore) {
+            return;
+        }
+        if (Qiscus.dataStore instanceof QiscusCacheDataStore) {
+            ((QiscusCacheDataStore) Qiscus.dataStore).release();
+        }
+        Qiscus.dataStore = dataStore instanceof QiscusCacheDataStore ? dataStore
+                : new QiscusCacheDataStore(dataStore, chatConfig.getCommentCacheSize());
     }
 
     /**
@@ -537,6 +557,11 @@ public class Qiscus {
         localDataManager.clearData();
         dataStore.clear();
         QiscusCacheManager.getInstance().clearData();
+        QiscusReceiptBatcher.getInstance().clear();
+        QiscusOutbox.getInstance().clear();
+        QiscusTypingManager.getInstance().clear();
+        QiscusSyncCursor.getInstance().clear();
+        QiscusApi.getInstance().getRoomCache().clear();
         EventBus.getDefault().post(QiscusUserEvent.LOGOUT);
     }
 
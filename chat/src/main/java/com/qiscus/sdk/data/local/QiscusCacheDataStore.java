@@ -0,0 +1,679 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.local;
+
+import android.support.v4.util.LruCache;
+
+import com.qiscus.sdk.Qiscus;
+import com.qiscus.sdk.data.model.QiscusChatRoom;
+import com.qiscus.sdk.data.model.QiscusComment;
+import com.qiscus.sdk.data.model.QiscusRoomMember;
+import com.qiscus.sdk.event.QiscusRetentionEvent;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import rx.Observable;
+
+/**
+ * Size bounded LRU cache of comments keyed by unique id in front of any {@link QiscusDataStore}.
+ * Comment writes go through to the wrapped data store and update the cache, deletes and clear invalidate it,
+ * so duplicate checks of {@link #getComment(String)} and {@link #isContains(QiscusComment)} for recently seen
+ * comments never touch the wrapped data store.
+ * <p>
+ * Local files of attachments are indexed per room, the whole room is loaded with one query off the main thread,
+ * then {@link #getLocalPath(long, long)} is answered from memory so binding a message never waits for disk.
+ * <p>
+ * The cache keeps its own copy of every comment and hands out copies too, so callers can compare or modify the
+ * comments they hold without touching what is cached, just like reading from database.
+ * <p>
+ * Cache updates happen after the write reached the wrapped data store. A comment loaded on a cache miss is only
+ * cached when no write of the same comment happened while it was being loaded, so a stale row never replaces
+ * a newer write.
+ */
+public class QiscusCacheDataStore implements QiscusDataStore {
+    private final QiscusDataStore dataStore;
+    private final LruCache<String, QiscusComment> commentCache;
+    // Unique ids being loaded on cache miss, mapped to false once a write makes the loaded row stale
+    private final Map<String, Boolean> pendingLoads = new HashMap<>();
+    private final Map<Long, Map<Long, File>> localPathIndex = new ConcurrentHashMap<>();
+    private final Set<Long> indexingRooms = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    public QiscusCacheDataStore(QiscusDataStore dataStore, int capacity) {
+        this.dataStore = dataStore;
+        commentCache = new LruCache<>(capacity);
+        EventBus.getDefault().register(this);
+    }
+
+    /**
+     * Stop listening to retention, call it when this data store is replaced.
+     */
+    public void release() {
+        if (EventBus.getDefault().isRegistered(this)) {
+            EventBus.getDefault().unregister(this);
+        }
+    }
+
+    @Subscribe
+    public void onRetention(QiscusRetentionEvent event) {
+        // Retention removes rows directly from the wrapped store, drop everything that may point to them
+        evictAll();
+        synchronized (localPathIndex) {
+            localPathIndex.clear();
+            indexingRooms.clear();
+        }
+    }
+
+    /**
+     * @return the wrapped data store
+     */
+    public QiscusDataStore getDataStore() {
+        return dataStore;
+    }
+
+    public int getCapacity() {
+        return commentCache.maxSize();
+    }
+
+    public void setCapacity(int capacity) {
+        commentCache.resize(capacity);
+    }
+
+    public int getHitCount() {
+        return commentCache.hitCount();
+    }
+
+    public int getMissCount() {
+        return commentCache.missCount();
+    }
+
+    private void cache(QiscusComment qiscusComment) {
+        if (qiscusComment != null && qiscusComment.getUniqueId() != null) {
+            synchronized (pendingLoads) {
+                markStale(qiscusComment.getUniqueId());
+                commentCache.put(qiscusComment.getUniqueId(), QiscusDb.CommentTable.copy(qiscusComment));
+            }
+        }
+    }
+
+    private void refresh(QiscusComment qiscusComment) {
+        if (qiscusComment.getUniqueId() != null) {
+            synchronized (pendingLoads) {
+                markStale(qiscusComment.getUniqueId());
+                if (commentCache.snapshot().containsKey(qiscusComment.getUniqueId())) {
+                    commentCache.put(qiscusComment.getUniqueId(), QiscusDb.CommentTable.copy(qiscusComment));
+                }
+            }
+        }
+    }
+
+    private void markStale(String uniqueId) {
+        if (pendingLoads.containsKey(uniqueId)) {
+            pendingLoads.put(uniqueId, false);
+        }
+    }
+
+    private void markAllStale() {
+        for (Map.Entry<String, Boolean> entry : pendingLoads.entrySet()) {
+            entry.setValue(false);
+        }
+    }
+
+    private void evictAll() {
+        synchronized (pendingLoads) {
+            markAllStale();
+            commentCache.evictAll();
+        }
+    }
+
+    private void cacheLastComment(QiscusChatRoom qiscusChatRoom) {
+        QiscusComment lastComment = qiscusChatRoom.getLastComment();
+        if (lastComment != null && lastComment.getId() > 0) {
+            cache(lastComment);
+        }
+    }
+
+    private void invalidate(String uniqueId) {
+        if (uniqueId != null) {
+            synchronized (pendingLoads) {
+                markStale(uniqueId);
+                commentCache.remove(uniqueId);
+            }
+        }
+    }
+
+    private void invalidateRoom(long roomId) {
+        synchronized (pendingLoads) {
+            // Room of a comment still being loaded is unknown yet
+            markAllStale();
+            for (Map.Entry<String, QiscusComment> entry : commentCache.snapshot().entrySet()) {
+                if (entry.getValue().getRoomId() == roomId) {
+                    commentCache.remove(entry.getKey());
+                }
+            }
+        }
+    }
+
+    private void updateCachedState(long roomId, long commentId, int state) {
+        synchronized (pendingLoads) {
+            markAllStale();
+            for (QiscusComment qiscusComment : commentCache.snapshot().values()) {
+                if (qiscusComment.getRoomId() == roomId && qiscusComment.getId() != -1
+                        && qiscusComment.getId() <= commentId && qiscusComment.getState() < state) {
+                    qiscusComment.setState(state);
+                }
+            }
+        }
+    }
+
+    private void indexLocalPaths(long roomId) {
+        synchronized (localPathIndex) {
+            localPathIndex.put(roomId, new ConcurrentHashMap<>(dataStore.getLocalPaths(roomId)));
+        }
+    }
+
+    private void indexLocalPath(long roomId, long commentId, String localPath) {
+        synchronized (localPathIndex) {
+            Map<Long, File> localPaths = localPathIndex.get(roomId);
+            if (localPaths != null) {
+                localPaths.put(commentId, new File(localPath));
+            }
+        }
+    }
+
+    private void unindexLocalPath(long commentId) {
+        synchronized (localPathIndex) {
+            for (Map<Long, File> localPaths : localPathIndex.values()) {
+                localPaths.remove(commentId);
+            }
+        }
+    }
+
+    private void unindexRoom(long roomId) {
+        synchronized (localPathIndex) {
+            localPathIndex.remove(roomId);
+            indexingRooms.remove(roomId);
+        }
+    }
+
+    @Override
+    public void add(QiscusChatRoom qiscusChatRoom) {
+        dataStore.add(qiscusChatRoom);
+        cacheLastComment(qiscusChatRoom);
+    }
+
+    @Override
+    public boolean isContains(QiscusChatRoom qiscusChatRoom) {
+        return dataStore.isContains(qiscusChatRoom);
+    }
+
+    @Override
+    public void update(QiscusChatRoom qiscusChatRoom) {
+        dataStore.update(qiscusChatRoom);
+        cacheLastComment(qiscusChatRoom);
+    }
+
+    @Override
+    public void addOrUpdate(QiscusChatRoom qiscusChatRoom) {
+        dataStore.addOrUpdate(qiscusChatRoom);
+        cacheLastComment(qiscusChatRoom);
+    }
+
+    @Override
+    public void addOrUpdateRooms(List<QiscusChatRoom> qiscusChatRooms) {
+        dataStore.addOrUpdateRooms(qiscusChatRooms);
+        for (QiscusChatRoom qiscusChatRoom : qiscusChatRooms) {
+            cacheLastComment(qiscusChatRoom);
+        }
+    }
+
+    @Override
+    public QiscusChatRoom getChatRoom(long roomId) {
+        return dataStore.getChatRoom(roomId);
+    }
+
+    @Override
+    public QiscusChatRoom getChatRoom(String email) {
+        return dataStore.getChatRoom(email);
+    }
+
+    @Override
+    public QiscusChatRoom getChatRoom(String email, String distinctId) {
+        return dataStore.getChatRoom(email, distinctId);
+    }
+
+    @Override
+    public QiscusChatRoom getChatRoomWithUniqueId(String uniqueId) {
+        return dataStore.getChatRoomWithUniqueId(uniqueId);
+    }
+
+    @Override
+    public List<QiscusChatRoom> getChatRooms(int limit) {
+        return dataStore.getChatRooms(limit);
+    }
+
+    @Override
+    public Observable<List<QiscusChatRoom>> getObservableChatRooms(int limit) {
+        return dataStore.getObservableChatRooms(limit);
+    }
+
+    @Override
+    public List<QiscusChatRoom> getChatRooms(int limit, int offset) {
+        return dataStore.getChatRooms(limit, offset);
+    }
+
+    @Override
+    public Observable<List<QiscusChatRoom>> getObservableChatRooms(int limit, int offset) {
+        return dataStore.getObservableChatRooms(limit, offset);
+    }
+
+    @Override
+    public List<QiscusChatRoom> getChatRooms(List<Long> roomIds, List<String> uniqueIds) {
+        return dataStore.getChatRooms(roomIds, uniqueIds);
+    }
+
+    @Override
+    public void deleteChatRoom(long roomId) {
+        dataStore.deleteChatRoom(roomId);
+    }
+
+    @Override
+    public void addRoomMember(long roomId, QiscusRoomMember qiscusRoomMember, String distinctId) {
+        dataStore.addRoomMember(roomId, qiscusRoomMember, distinctId);
+    }
+
+    @Override
+    public boolean isContainsRoomMember(long roomId, String email) {
+        return dataStore.isContainsRoomMember(roomId, email);
+    }
+
+    @Override
+    public void updateRoomMember(long roomId, QiscusRoomMember qiscusRoomMember, String distinctId) {
+        dataStore.updateRoomMember(roomId, qiscusRoomMember, distinctId);
+    }
+
+    @Override
+    public void addOrUpdateRoomMember(long roomId, QiscusRoomMember qiscusRoomMember, String distinctId) {
+        dataStore.addOrUpdateRoomMember(roomId, qiscusRoomMember, distinctId);
+    }
+
+    @Override
+    public void addOrUpdateRoomMembers(long roomId, List<QiscusRoomMember> qiscusRoomMembers, String distinctId) {
+        dataStore.addOrUpdateRoomMembers(roomId, qiscusRoomMembers, distinctId);
+    }
+
+    @Override
+    public List<QiscusRoomMember> getRoomMembers(long roomId) {
+        return dataStore.getRoomMembers(roomId);
+    }
+
+    @Override
+    public void deleteRoomMember(long roomId, String email) {
+        dataStore.deleteRoomMember(roomId, email);
+    }
+
+    @Override
+    public void deleteRoomMembers(long roomId) {
+        dataStore.deleteRoomMembers(roomId);
+    }
+
+    @Override
+    public void add(QiscusRoomMember qiscusRoomMember) {
+        dataStore.add(qiscusRoomMember);
+    }
+
+    @Override
+    public boolean isContains(QiscusRoomMember qiscusRoomMember) {
+        return dataStore.isContains(qiscusRoomMember);
+    }
+
+    @Override
+    public void update(QiscusRoomMember qiscusRoomMember) {
+        dataStore.update(qiscusRoomMember);
+    }
+
+    @Override
+    public void addOrUpdate(QiscusRoomMember qiscusRoomMember) {
+        dataStore.addOrUpdate(qiscusRoomMember);
+    }
+
+    @Override
+    public void addOrUpdateMembers(List<QiscusRoomMember> qiscusRoomMembers) {
+        dataStore.addOrUpdateMembers(qiscusRoomMembers);
+    }
+
+    @Override
+    public QiscusRoomMember getMember(String email) {
+        return dataStore.getMember(email);
+    }
+
+    @Override
+    public void add(QiscusComment qiscusComment) {
+        dataStore.add(qiscusComment);
+        // Insert is ignored when the comment already exist, so the saved one may differ from this one
+        invalidate(qiscusComment.getUniqueId());
+    }
+
+    @Override
+    public boolean isContains(QiscusComment qiscusComment) {
+        return qiscusComment.getUniqueId() != null && commentCache.get(qiscusComment.getUniqueId()) != null
+                || dataStore.isContains(qiscusComment);
+    }
+
+    @Override
+    public void update(QiscusComment qiscusComment) {
+        dataStore.update(qiscusComment);
+        // Update does nothing when the comment is not saved yet, so only refresh comment that already cached
+        refresh(qiscusComment);
+    }
+
+    @Override
+    public void addOrUpdate(QiscusComment qiscusComment) {
+        dataStore.addOrUpdate(qiscusComment);
+        cache(qiscusComment);
+    }
+
+    @Override
+    public void addOrUpdate(List<QiscusComment> qiscusComments) {
+        dataStore.addOrUpdate(qiscusComments);
+        for (QiscusComment qiscusComment : qiscusComments) {
+            cache(qiscusComment);
+        }
+    }
+
+    @Override
+    public void flush() {
+        dataStore.flush();
+    }
+
+    @Override
+    public void delete(QiscusComment qiscusComment) {
+        dataStore.delete(qiscusComment);
+        invalidate(qiscusComment.getUniqueId());
+        unindexLocalPath(qiscusComment.getId());
+    }
+
+    @Override
+    public void delete(List<QiscusComment> qiscusComments) {
+        dataStore.delete(qiscusComments);
+        for (QiscusComment qiscusComment : qiscusComments) {
+            invalidate(qiscusComment.getUniqueId());
+            unindexLocalPath(qiscusComment.getId());
+        }
+    }
+
+    @Override
+    public boolean deleteCommentsByRoomId(long roomId) {
+        boolean deleted = dataStore.deleteCommentsByRoomId(roomId);
+        invalidateRoom(roomId);
+        unindexRoom(roomId);
+        return deleted;
+    }
+
+    @Override
+    public boolean deleteCommentsByRoomId(long roomId, long timestampOffset) {
+        boolean deleted = dataStore.deleteCommentsByRoomId(roomId, timestampOffset);
+        invalidateRoom(roomId);
+        unindexRoom(roomId);
+        return deleted;
+    }
+
+    @Override
+    public List<Long> deleteCommentsByRoomIds(Map<Long, Long> timestampOffsets) {
+        List<Long> clearedRoomIds = dataStore.deleteCommentsByRoomIds(timestampOffsets);
+        for (long roomId : timestampOffsets.keySet()) {
+            invalidateRoom(roomId);
+        }
+        for (long roomId : clearedRoomIds) {
+            unindexRoom(roomId);
+        }
+        return clearedRoomIds;
+    }
+
+    @Override
+    public void updateLastDeliveredComment(long roomId, long commentId) {
+        dataStore.updateLastDeliveredComment(roomId, commentId);
+        updateCachedState(roomId, commentId, QiscusComment.STATE_DELIVERED);
+    }
+
+    @Override
+    public void updateLastReadComment(long roomId, long commentId) {
+        dataStore.updateLastReadComment(roomId, commentId);
+        updateCachedState(roomId, commentId, QiscusComment.STATE_READ);
+    }
+
+    @Override
+    public QiscusComment getComment(String uniqueId) {
+        if (uniqueId == null) {
+            return dataStore.getComment(null);
+        }
+
+        QiscusComment qiscusComment = commentCache.get(uniqueId);
+        if (qiscusComment != null) {
+            return QiscusDb.CommentTable.copy(qiscusComment);
+        }
+
+        // Only one concurrent load of a comment fills the cache, the others just read through
+        boolean filling;
+        synchronized (pendingLoads) {
+            filling = !pendingLoads.containsKey(uniqueId);
+            if (filling) {
+                pendingLoads.put(uniqueId, true);
+            }
+        }
+        try {
+            qiscusComment = dataStore.getComment(uniqueId);
+            return qiscusComment;
+        } finally {
+            if (filling) {
+                synchronized (pendingLoads) {
+                    if (pendingLoads.remove(uniqueId) && qiscusComment != null) {
+                        commentCache.put(uniqueId, QiscusDb.CommentTable.copy(qiscusComment));
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public QiscusComment getCommentByBeforeId(long beforeId) {
+        return dataStore.getCommentByBeforeId(beforeId);
+    }
+
+    @Override
+    public List<QiscusComment> getComments(long roomId) {
+        return dataStore.getComments(roomId);
+    }
+
+    @Override
+    public List<QiscusComment> getComments(long roomId, int limit) {
+        return dataStore.getComments(roomId, limit);
+    }
+
+    @Override
+    public List<QiscusComment> getComments(long roomId, long timestampOffset) {
+        return dataStore.getComments(roomId, timestampOffset);
+    }
+
+    @Override
+    public Observable<List<QiscusComment>> getObservableComments(long roomId) {
+        return dataStore.getObservableComments(roomId);
+    }
+
+    @Override
+    public Observable<List<QiscusComment>> getObservableComments(long roomId, int limit) {
+        return dataStore.getObservableComments(roomId, limit);
+    }
+
+    @Override
+    public List<QiscusComment> getOlderCommentsThan(QiscusComment qiscusComment, long roomId, int limit) {
+        return dataStore.getOlderCommentsThan(qiscusComment, roomId, limit);
+    }
+
+    @Override
+    public Observable<List<QiscusComment>> getObservableOlderCommentsThan(QiscusComment qiscusComment, long roomId, int limit) {
+        return dataStore.getObservableOlderCommentsThan(qiscusComment, roomId, limit);
+    }
+
+    @Override
+    public List<QiscusComment> getCommentsAfter(QiscusComment qiscusComment, long roomId) {
+        return dataStore.getCommentsAfter(qiscusComment, roomId);
+    }
+
+    @Override
+    public Observable<List<QiscusComment>> getObservableCommentsAfter(QiscusComment qiscusComment, long roomId) {
+        return dataStore.getObservableCommentsAfter(qiscusComment, roomId);
+    }
+
+    @Override
+    public QiscusComment getLatestComment() {
+        return dataStore.getLatestComment();
+    }
+
+    @Override
+    public QiscusComment getLatestComment(long roomId) {
+        return dataStore.getLatestComment(roomId);
+    }
+
+    @Override
+    public QiscusComment getLatestDeliveredComment(long roomId) {
+        return dataStore.getLatestDeliveredComment(roomId);
+    }
+
+    @Override
+    public QiscusComment getLatestReadComment(long roomId) {
+        return dataStore.getLatestReadComment(roomId);
+    }
+
+    @Override
+    public List<QiscusComment> getPendingComments() {
+        return dataStore.getPendingComments();
+    }
+
+    @Override
+    public Observable<List<QiscusComment>> getObservablePendingComments() {
+        return dataStore.getObservablePendingComments();
+    }
+
+    @Override
+    public List<QiscusComment> searchComments(String query, long roomId, int limit, int offset) {
+        return dataStore.searchComments(query, roomId, limit, offset);
+    }
+
+    @Override
+    public void saveLocalPath(long roomId, long commentId, String localPath) {
+        dataStore.saveLocalPath(roomId, commentId, localPath);
+        indexLocalPath(roomId, commentId, localPath);
+    }
+
+    @Override
+    public boolean isContainsFileOfComment(long commentId) {
+        return dataStore.isContainsFileOfComment(commentId);
+    }
+
+    @Override
+    public void updateLocalPath(long roomId, long commentId, String localPath) {
+        dataStore.updateLocalPath(roomId, commentId, localPath);
+        indexLocalPath(roomId, commentId, localPath);
+    }
+
+    @Override
+    public void addOrUpdateLocalPath(long roomId, long commentId, String localPath) {
+        dataStore.addOrUpdateLocalPath(roomId, commentId, localPath);
+        indexLocalPath(roomId, commentId, localPath);
+    }
+
+    @Override
+    public File getLocalPath(long commentId) {
+        return dataStore.getLocalPath(commentId);
+    }
+
+    /**
+     * Answered from memory once the room is indexed. The first call of a room not indexed yet starts indexing it
+     * in background and falls back to the wrapped data store. An indexed file removed from disk by user or other
+     * apps is dropped from the index and from the wrapped data store.
+     */
+    @Override
+    public File getLocalPath(long roomId, long commentId) {
+        Map<Long, File> localPaths = localPathIndex.get(roomId);
+        if (localPaths != null) {
+            File localPath = localPaths.get(commentId);
+            if (localPath != null && !localPath.exists()) {
+                dropMissingLocalPath(localPaths, commentId, localPath);
+                return null;
+            }
+            return localPath;
+        }
+
+        if (indexingRooms.add(roomId)) {
+            Qiscus.getTaskExecutor().execute(() -> indexLocalPaths(roomId));
+        }
+        return dataStore.getLocalPath(roomId, commentId);
+    }
+
+    private void dropMissingLocalPath(Map<Long, File> localPaths, long commentId, File localPath) {
+        synchronized (localPathIndex) {
+            if (localPath.equals(localPaths.get(commentId))) {
+                localPaths.remove(commentId);
+            }
+        }
+        Qiscus.getTaskExecutor().execute(() -> {
+            // Skip when the file was downloaded again meanwhile, the wrapped store also checks the file exists
+            if (dataStore.getLocalPath(commentId) == null) {
+                dataStore.deleteLocalPath(commentId);
+            }
+        });
+    }
+
+    /**
+     * Load and index local files of the room, call it off the main thread when a room is opened.
+     */
+    @Override
+    public Map<Long, File> getLocalPaths(long roomId) {
+        Map<Long, File> localPaths = localPathIndex.get(roomId);
+        if (localPaths == null) {
+            indexingRooms.add(roomId);
+            indexLocalPaths(roomId);
+            localPaths = localPathIndex.get(roomId);
+        }
+        return localPaths == null ? new HashMap<>() : new HashMap<>(localPaths);
+    }
+
+    @Override
+    public void deleteLocalPath(long commentId) {
+        dataStore.deleteLocalPath(commentId);
+        unindexLocalPath(commentId);
+    }
+
+    @Override
+    public void clear() {
+        dataStore.clear();
+        evictAll();
+        synchronized (localPathIndex) {
+            localPathIndex.clear();
+            indexingRooms.clear();
+        }
+    }
+}
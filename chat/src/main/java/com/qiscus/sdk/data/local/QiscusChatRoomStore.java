@@ -38,6 +38,8 @@ public interface QiscusChatRoomStore {
 
     void addOrUpdate(QiscusChatRoom qiscusChatRoom);
 
+    void addOrUpdateRooms(List<QiscusChatRoom> qiscusChatRooms);
+
     QiscusChatRoom getChatRoom(long roomId);
 
     QiscusChatRoom getChatRoom(String email);
@@ -50,6 +52,10 @@ public interface QiscusChatRoomStore {
 
     Observable<List<QiscusChatRoom>> getObservableChatRooms(int limit);
 
+    List<QiscusChatRoom> getChatRooms(int limit, int offset);
+
+    Observable<List<QiscusChatRoom>> getObservableChatRooms(int limit, int offset);
+
     List<QiscusChatRoom> getChatRooms(List<Long> roomIds, List<String> uniqueIds);
 
     void deleteChatRoom(long roomId);
@@ -62,6 +68,8 @@ public interface QiscusChatRoomStore {
 
     void addOrUpdateRoomMember(long roomId, QiscusRoomMember qiscusRoomMember, String distinctId);
 
+    void addOrUpdateRoomMembers(long roomId, List<QiscusRoomMember> qiscusRoomMembers, String distinctId);
+
     List<QiscusRoomMember> getRoomMembers(long roomId);
 
     void deleteRoomMember(long roomId, String email);
@@ -19,6 +19,7 @@ package com.qiscus.sdk.data.local;
 import com.qiscus.sdk.data.model.QiscusComment;
 
 import java.util.List;
+import java.util.Map;
 
 import rx.Observable;
 
@@ -37,12 +38,33 @@ public interface QiscusCommentStore {
 
     void addOrUpdate(QiscusComment qiscusComment);
 
+    void addOrUpdate(List<QiscusComment> qiscusComments);
+
+    /**
+     * Block until every comment write made before the call is stored, writes may otherwise be committed
+     * shortly after they return. Do not call it from main thread.
+     */
+    void flush();
+
     void delete(QiscusComment qiscusComment);
 
+    /**
+     * Delete the comments in one transaction.
+     */
+    void delete(List<QiscusComment> qiscusComments);
+
     boolean deleteCommentsByRoomId(long roomId);
 
     boolean deleteCommentsByRoomId(long roomId, long timestampOffset);
 
+    /**
+     * Delete comments of many rooms in one transaction.
+     *
+     * @param timestampOffsets timestamp offset of every room id, comments older than or at the offset are deleted
+     * @return ids of rooms which had comments deleted
+     */
+    List<Long> deleteCommentsByRoomIds(Map<Long, Long> timestampOffsets);
+
     void updateLastDeliveredComment(long roomId, long commentId);
 
     void updateLastReadComment(long roomId, long commentId);
@@ -80,4 +102,15 @@ public interface QiscusCommentStore {
     List<QiscusComment> getPendingComments();
 
     Observable<List<QiscusComment>> getObservablePendingComments();
+
+    /**
+     * Full text search of local comments, newest match first.
+     *
+     * @param query  words to search, every word is matched as a prefix
+     * @param roomId room to search in, or 0 to search all rooms
+     * @param limit  max comments to return
+     * @param offset number of matched comments to skip
+     * @return matched comments with {@link QiscusComment#getSearchSnippet()} filled
+     */
+    List<QiscusComment> searchComments(String query, long roomId, int limit, int offset);
 }
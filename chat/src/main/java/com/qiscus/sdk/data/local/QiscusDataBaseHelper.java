@@ -19,6 +19,7 @@ package com.qiscus.sdk.data.local;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import com.qiscus.sdk.Qiscus;
 import com.qiscus.sdk.data.model.QiscusAccount;
@@ -30,22 +31,60 @@ import com.qiscus.sdk.util.QiscusErrorLogger;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import rx.Emitter;
 import rx.Observable;
 
 public class QiscusDataBaseHelper implements QiscusDataStore {
+    private static final String LAST_COMMENT_PREFIX = "lc_";
+    private static final String LAST_COMMENT_SENDER_EMAIL = "last_comment_member_email";
+    private static final String LAST_COMMENT_SENDER_NAME = "last_comment_member_name";
+    private static final String LAST_COMMENT_SENDER_AVATAR = "last_comment_member_avatar";
 
     protected final SQLiteDatabase sqLiteDatabase;
+    private final QiscusDbWriter writer;
+    private final QiscusRetentionEngine retentionEngine;
 
     public QiscusDataBaseHelper() {
-        QiscusDbOpenHelper qiscusDbOpenHelper = new QiscusDbOpenHelper(Qiscus.getApps());
-        sqLiteDatabase = qiscusDbOpenHelper.getReadableDatabase();
+        this(new QiscusDbOpenHelper(Qiscus.getApps()).getWritableDatabase());
+        retentionEngine.schedule();
+    }
+
+    /**
+     * Use an already opened database without scheduling retention, used by tests.
+     */
+    QiscusDataBaseHelper(SQLiteDatabase sqLiteDatabase) {
+        this.sqLiteDatabase = sqLiteDatabase;
+        writer = new QiscusDbWriter(sqLiteDatabase, this::insertOrReplaceComments);
+        retentionEngine = new QiscusRetentionEngine(sqLiteDatabase, writer);
+    }
+
+    /**
+     * @return the serial comment writer of this database, exposes queue depth and commit latency metrics
+     */
+    public QiscusDbWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * Trim local storage now based on {@link com.qiscus.sdk.data.model.QiscusRetentionConfig}, it also runs
+     * periodically in background. Call it from background thread.
+     *
+     * @return reclaimed bytes of database and downloaded media
+     */
+    public long runRetention() {
+        return retentionEngine.run();
     }
 
     @Override
     public void add(QiscusChatRoom qiscusChatRoom) {
+        writer.flush();
+
         sqLiteDatabase.beginTransaction();
         try {
             sqLiteDatabase.insertWithOnConflict(QiscusDb.RoomTable.TABLE_NAME, null,
@@ -83,6 +122,8 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public void update(QiscusChatRoom qiscusChatRoom) {
+        writer.flush();
+
         String where = QiscusDb.RoomTable.COLUMN_ID + " = " + qiscusChatRoom.getId();
 
         sqLiteDatabase.beginTransaction();
@@ -110,36 +151,57 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public void addOrUpdate(QiscusChatRoom qiscusChatRoom) {
-        if (!isContains(qiscusChatRoom)) {
-            add(qiscusChatRoom);
-        } else {
-            update(qiscusChatRoom);
-        }
+        addOrUpdateRooms(Collections.singletonList(qiscusChatRoom));
     }
 
     @Override
-    public QiscusChatRoom getChatRoom(long id) {
-        String query = "SELECT * FROM "
-                + QiscusDb.RoomTable.TABLE_NAME + " WHERE "
-                + QiscusDb.RoomTable.COLUMN_ID + " = " + id;
+    public void addOrUpdateRooms(List<QiscusChatRoom> qiscusChatRooms) {
+        writer.flush();
 
-        Cursor cursor = sqLiteDatabase.rawQuery(query, null);
+        if (qiscusChatRooms.isEmpty()) {
+            return;
+        }
 
-        if (cursor.moveToNext()) {
-            QiscusChatRoom qiscusChatRoom = QiscusDb.RoomTable.parseCursor(cursor);
-            qiscusChatRoom.setMember(getRoomMembers(id));
-            QiscusComment latestComment = getLatestComment(id);
-            if (latestComment != null) {
-                qiscusChatRoom.setLastComment(latestComment);
+        List<QiscusComment> lastComments = new ArrayList<>();
+        sqLiteDatabase.beginTransaction();
+        try {
+            SQLiteStatement statement = sqLiteDatabase.compileStatement(QiscusDb.RoomTable.INSERT_OR_REPLACE);
+            try {
+                for (QiscusChatRoom qiscusChatRoom : qiscusChatRooms) {
+                    QiscusDb.RoomTable.bind(statement, qiscusChatRoom);
+                    statement.executeInsert();
+
+                    if (qiscusChatRoom.getMember() != null && !qiscusChatRoom.getMember().isEmpty()) {
+                        sqLiteDatabase.delete(QiscusDb.RoomMemberTable.TABLE_NAME,
+                                QiscusDb.RoomMemberTable.COLUMN_ROOM_ID + " = " + qiscusChatRoom.getId(), null);
+                        insertOrReplaceRoomMembers(qiscusChatRoom.getId(), qiscusChatRoom.getMember(),
+                                qiscusChatRoom.getDistinctId());
+                    }
+
+                    QiscusComment comment = qiscusChatRoom.getLastComment();
+                    if (comment != null && comment.getId() > 0) {
+                        lastComments.add(comment);
+                    }
+                }
+            } finally {
+                statement.close();
             }
-            cursor.close();
-            return qiscusChatRoom;
-        } else {
-            cursor.close();
-            return null;
+
+            insertOrReplaceComments(lastComments);
+            sqLiteDatabase.setTransactionSuccessful();
+        } catch (Exception e) {
+            QiscusErrorLogger.print(e);
+        } finally {
+            sqLiteDatabase.endTransaction();
         }
     }
 
+    @Override
+    public QiscusChatRoom getChatRoom(long id) {
+        List<QiscusChatRoom> qiscusChatRooms = queryChatRooms("r." + QiscusDb.RoomTable.COLUMN_ID + " = " + id, 1, 0);
+        return qiscusChatRooms.isEmpty() ? null : qiscusChatRooms.get(0);
+    }
+
     @Override
     public QiscusChatRoom getChatRoom(String email) {
         QiscusAccount account = Qiscus.getQiscusAccount();
@@ -178,98 +240,155 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public QiscusChatRoom getChatRoomWithUniqueId(String uniqueId) {
-        String query = "SELECT * FROM "
-                + QiscusDb.RoomTable.TABLE_NAME + " WHERE "
-                + QiscusDb.RoomTable.COLUMN_UNIQUE_ID + " = " + DatabaseUtils.sqlEscapeString(uniqueId);
-
-        Cursor cursor = sqLiteDatabase.rawQuery(query, null);
-
-        if (cursor.moveToNext()) {
-            QiscusChatRoom qiscusChatRoom = QiscusDb.RoomTable.parseCursor(cursor);
-            qiscusChatRoom.setMember(getRoomMembers(qiscusChatRoom.getId()));
-            QiscusComment latestComment = getLatestComment(qiscusChatRoom.getId());
-            if (latestComment != null) {
-                qiscusChatRoom.setLastComment(latestComment);
-            }
-            cursor.close();
-            return qiscusChatRoom;
-        } else {
-            cursor.close();
-            return null;
-        }
+        List<QiscusChatRoom> qiscusChatRooms = queryChatRooms("r." + QiscusDb.RoomTable.COLUMN_UNIQUE_ID
+                + " = " + DatabaseUtils.sqlEscapeString(uniqueId), 1, 0);
+        return qiscusChatRooms.isEmpty() ? null : qiscusChatRooms.get(0);
     }
 
     @Override
     public List<QiscusChatRoom> getChatRooms(int limit) {
-        String query = "SELECT * FROM "
-                + QiscusDb.RoomTable.TABLE_NAME
-                + " LIMIT " + limit;
+        return getChatRooms(limit, 0);
+    }
 
-        Cursor cursor = sqLiteDatabase.rawQuery(query, null);
-        List<QiscusChatRoom> qiscusChatRooms = new ArrayList<>();
-        while (cursor.moveToNext()) {
-            QiscusChatRoom qiscusChatRoom = QiscusDb.RoomTable.parseCursor(cursor);
-            qiscusChatRoom.setMember(getRoomMembers(qiscusChatRoom.getId()));
-            QiscusComment latestComment = getLatestComment(qiscusChatRoom.getId());
-            if (latestComment != null) {
-                qiscusChatRoom.setLastComment(latestComment);
-            }
-            qiscusChatRooms.add(qiscusChatRoom);
-        }
-        cursor.close();
-        sortRooms(qiscusChatRooms);
-        return qiscusChatRooms;
+    @Override
+    public List<QiscusChatRoom> getChatRooms(int limit, int offset) {
+        return queryChatRooms(null, limit, offset);
     }
 
     @Override
     public Observable<List<QiscusChatRoom>> getObservableChatRooms(int limit) {
+        return getObservableChatRooms(limit, 0);
+    }
+
+    @Override
+    public Observable<List<QiscusChatRoom>> getObservableChatRooms(int limit, int offset) {
         return Observable.create(subscriber -> {
-            subscriber.onNext(getChatRooms(limit));
+            subscriber.onNext(getChatRooms(limit, offset));
             subscriber.onCompleted();
         }, Emitter.BackpressureMode.BUFFER);
     }
 
     @Override
     public List<QiscusChatRoom> getChatRooms(List<Long> roomIds, List<String> uniqueIds) {
-        List<QiscusChatRoom> qiscusChatRooms = new ArrayList<>();
         if (roomIds.isEmpty() && uniqueIds.isEmpty()) {
-            return qiscusChatRooms;
+            return new ArrayList<>();
         }
 
-        StringBuilder query = new StringBuilder("SELECT * FROM ").append(QiscusDb.RoomTable.TABLE_NAME).append(" WHERE ");
+        StringBuilder where = new StringBuilder();
         for (int i = 0; i < roomIds.size(); i++) {
-            query.append(QiscusDb.RoomTable.COLUMN_ID).append(" = ").append(roomIds.get(i));
+            where.append("r.").append(QiscusDb.RoomTable.COLUMN_ID).append(" = ").append(roomIds.get(i));
             if (i < roomIds.size() - 1) {
-                query.append(" OR ");
+                where.append(" OR ");
             }
         }
 
         if (!roomIds.isEmpty() && !uniqueIds.isEmpty()) {
-            query.append(" OR ");
+            where.append(" OR ");
         }
 
         for (int i = 0; i < uniqueIds.size(); i++) {
-            query.append(QiscusDb.RoomTable.COLUMN_UNIQUE_ID).append(" = ").append(DatabaseUtils.sqlEscapeString(uniqueIds.get(i)));
+            where.append("r.").append(QiscusDb.RoomTable.COLUMN_UNIQUE_ID).append(" = ")
+                    .append(DatabaseUtils.sqlEscapeString(uniqueIds.get(i)));
             if (i < uniqueIds.size() - 1) {
-                query.append(" OR ");
+                where.append(" OR ");
             }
         }
 
-        Cursor cursor = sqLiteDatabase.rawQuery(query.toString(), null);
+        return queryChatRooms(where.toString(), -1, 0);
+    }
+
+    /**
+     * Load rooms together with their latest comment with one joined query ordered by last activity,
+     * then load members of all those rooms with one more query.
+     *
+     * @param where  filter of rooms table aliased as r, or null to load all rooms
+     * @param limit  max rooms to load, negative value means no limit
+     * @param offset number of rooms to skip
+     * @return rooms ordered by the newest comment first
+     */
+    private List<QiscusChatRoom> queryChatRooms(String where, int limit, int offset) {
+        writer.flush();
+
+        String query = "SELECT r.*, "
+                + QiscusDb.CommentTable.selectColumns("c", LAST_COMMENT_PREFIX) + ", "
+                + "m." + QiscusDb.MemberTable.COLUMN_USER_EMAIL + " AS " + LAST_COMMENT_SENDER_EMAIL + ", "
+                + "m." + QiscusDb.MemberTable.COLUMN_USER_NAME + " AS " + LAST_COMMENT_SENDER_NAME + ", "
+                + "m." + QiscusDb.MemberTable.COLUMN_USER_AVATAR + " AS " + LAST_COMMENT_SENDER_AVATAR
+                + " FROM " + QiscusDb.RoomTable.TABLE_NAME + " r"
+                + " LEFT JOIN " + QiscusDb.CommentTable.TABLE_NAME + " c ON c." + QiscusDb.CommentTable.COLUMN_UNIQUE_ID
+                + " = (SELECT " + QiscusDb.CommentTable.COLUMN_UNIQUE_ID + " FROM " + QiscusDb.CommentTable.TABLE_NAME
+                + " WHERE " + QiscusDb.CommentTable.COLUMN_ROOM_ID + " = r." + QiscusDb.RoomTable.COLUMN_ID
+                + " ORDER BY " + QiscusDb.CommentTable.COLUMN_TIME + " DESC LIMIT 1)"
+                + " LEFT JOIN " + QiscusDb.MemberTable.TABLE_NAME + " m ON m." + QiscusDb.MemberTable.COLUMN_USER_EMAIL
+                + " = c." + QiscusDb.CommentTable.COLUMN_SENDER_EMAIL
+                + (where == null ? "" : " WHERE " + where)
+                + " ORDER BY r." + QiscusDb.RoomTable.COLUMN_LAST_COMMENT_TIME + " DESC"
+                + " LIMIT " + limit + " OFFSET " + offset;
+
+        Cursor cursor = sqLiteDatabase.rawQuery(query, null);
+        List<QiscusChatRoom> qiscusChatRooms = new ArrayList<>();
+        Map<Long, QiscusChatRoom> roomMap = new HashMap<>();
+        int lastCommentIndex = cursor.getColumnIndexOrThrow(LAST_COMMENT_PREFIX + QiscusDb.CommentTable.COLUMN_UNIQUE_ID);
+        int senderEmailIndex = cursor.getColumnIndexOrThrow(LAST_COMMENT_SENDER_EMAIL);
         while (cursor.moveToNext()) {
             QiscusChatRoom qiscusChatRoom = QiscusDb.RoomTable.parseCursor(cursor);
-            qiscusChatRoom.setMember(getRoomMembers(qiscusChatRoom.getId()));
-            QiscusComment latestComment = getLatestComment(qiscusChatRoom.getId());
-            if (latestComment != null) {
+            qiscusChatRoom.setMember(new ArrayList<>());
+            if (!cursor.isNull(lastCommentIndex)) {
+                QiscusComment latestComment = QiscusDb.CommentTable.parseCursor(cursor, LAST_COMMENT_PREFIX);
+                if (!cursor.isNull(senderEmailIndex)) {
+                    latestComment.setSender(cursor.getString(cursor.getColumnIndexOrThrow(LAST_COMMENT_SENDER_NAME)));
+                    latestComment.setSenderAvatar(cursor.getString(cursor.getColumnIndexOrThrow(LAST_COMMENT_SENDER_AVATAR)));
+                }
                 qiscusChatRoom.setLastComment(latestComment);
             }
             qiscusChatRooms.add(qiscusChatRoom);
+            roomMap.put(qiscusChatRoom.getId(), qiscusChatRoom);
         }
         cursor.close();
-        sortRooms(qiscusChatRooms);
+
+        if (!roomMap.isEmpty()) {
+            queryRoomMembers(roomMap);
+        }
         return qiscusChatRooms;
     }
 
+    private void queryRoomMembers(Map<Long, QiscusChatRoom> roomMap) {
+        StringBuilder roomIds = new StringBuilder();
+        for (Long roomId : roomMap.keySet()) {
+            if (roomIds.length() > 0) {
+                roomIds.append(", ");
+            }
+            roomIds.append(roomId);
+        }
+
+        Cursor cursor = sqLiteDatabase.rawQuery(roomMembersQuery("rm." + QiscusDb.RoomMemberTable.COLUMN_ROOM_ID
+                + " IN (" + roomIds + ")"), null);
+        while (cursor.moveToNext()) {
+            QiscusChatRoom qiscusChatRoom = roomMap.get(QiscusDb.RoomMemberTable.getRoomId(cursor));
+            if (qiscusChatRoom != null) {
+                qiscusChatRoom.getMember().add(parseRoomMember(cursor));
+            }
+        }
+        cursor.close();
+    }
+
+    private String roomMembersQuery(String where) {
+        return "SELECT rm." + QiscusDb.RoomMemberTable.COLUMN_ROOM_ID + ", "
+                + "rm." + QiscusDb.RoomMemberTable.COLUMN_LAST_DELIVERED + ", "
+                + "rm." + QiscusDb.RoomMemberTable.COLUMN_LAST_READ + ", "
+                + "m.* FROM " + QiscusDb.RoomMemberTable.TABLE_NAME + " rm"
+                + " INNER JOIN " + QiscusDb.MemberTable.TABLE_NAME + " m ON m." + QiscusDb.MemberTable.COLUMN_USER_EMAIL
+                + " = rm." + QiscusDb.RoomMemberTable.COLUMN_USER_EMAIL
+                + " WHERE " + where;
+    }
+
+    private QiscusRoomMember parseRoomMember(Cursor cursor) {
+        QiscusRoomMember member = QiscusDb.MemberTable.getMember(cursor);
+        member.setLastDeliveredCommentId(QiscusDb.RoomMemberTable.getLastDeliveredCommentId(cursor));
+        member.setLastReadCommentId(QiscusDb.RoomMemberTable.getLastReadCommentId(cursor));
+        return member;
+    }
+
     @Override
     public void deleteChatRoom(long roomId) {
         String where = QiscusDb.RoomTable.COLUMN_ID + " = " + roomId;
@@ -352,20 +471,43 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
     }
 
     @Override
-    public List<QiscusRoomMember> getRoomMembers(long roomId) {
-        String query = "SELECT * FROM "
-                + QiscusDb.RoomMemberTable.TABLE_NAME + " WHERE "
-                + QiscusDb.RoomMemberTable.COLUMN_ROOM_ID + " = " + roomId;
+    public void addOrUpdateRoomMembers(long roomId, List<QiscusRoomMember> qiscusRoomMembers, String distinctId) {
+        if (qiscusRoomMembers.isEmpty()) {
+            return;
+        }
 
-        Cursor cursor = sqLiteDatabase.rawQuery(query, null);
+        sqLiteDatabase.beginTransaction();
+        try {
+            insertOrReplaceRoomMembers(roomId, qiscusRoomMembers, distinctId);
+            sqLiteDatabase.setTransactionSuccessful();
+        } catch (Exception e) {
+            QiscusErrorLogger.print(e);
+        } finally {
+            sqLiteDatabase.endTransaction();
+        }
+    }
+
+    private void insertOrReplaceRoomMembers(long roomId, List<QiscusRoomMember> qiscusRoomMembers, String distinctId) {
+        distinctId = distinctId == null ? "default" : distinctId;
+        SQLiteStatement statement = sqLiteDatabase.compileStatement(QiscusDb.RoomMemberTable.INSERT_OR_REPLACE);
+        try {
+            for (QiscusRoomMember qiscusRoomMember : qiscusRoomMembers) {
+                QiscusDb.RoomMemberTable.bind(statement, roomId, distinctId, qiscusRoomMember);
+                statement.executeInsert();
+            }
+        } finally {
+            statement.close();
+        }
+        insertOrReplaceMembers(qiscusRoomMembers);
+    }
+
+    @Override
+    public List<QiscusRoomMember> getRoomMembers(long roomId) {
+        Cursor cursor = sqLiteDatabase.rawQuery(roomMembersQuery("rm." + QiscusDb.RoomMemberTable.COLUMN_ROOM_ID
+                + " = " + roomId), null);
         List<QiscusRoomMember> members = new ArrayList<>();
         while (cursor.moveToNext()) {
-            QiscusRoomMember member = getMember(QiscusDb.RoomMemberTable.getUserEmail(cursor));
-            if (member != null) {
-                member.setLastDeliveredCommentId(QiscusDb.RoomMemberTable.getLastDeliveredCommentId(cursor));
-                member.setLastReadCommentId(QiscusDb.RoomMemberTable.getLastReadCommentId(cursor));
-                members.add(member);
-            }
+            members.add(parseRoomMember(cursor));
         }
         cursor.close();
         return members;
@@ -457,6 +599,35 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
         }
     }
 
+    @Override
+    public void addOrUpdateMembers(List<QiscusRoomMember> qiscusRoomMembers) {
+        if (qiscusRoomMembers.isEmpty()) {
+            return;
+        }
+
+        sqLiteDatabase.beginTransaction();
+        try {
+            insertOrReplaceMembers(qiscusRoomMembers);
+            sqLiteDatabase.setTransactionSuccessful();
+        } catch (Exception e) {
+            QiscusErrorLogger.print(e);
+        } finally {
+            sqLiteDatabase.endTransaction();
+        }
+    }
+
+    private void insertOrReplaceMembers(List<QiscusRoomMember> qiscusRoomMembers) {
+        SQLiteStatement statement = sqLiteDatabase.compileStatement(QiscusDb.MemberTable.INSERT_OR_REPLACE);
+        try {
+            for (QiscusRoomMember qiscusRoomMember : qiscusRoomMembers) {
+                QiscusDb.MemberTable.bind(statement, qiscusRoomMember);
+                statement.executeInsert();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
     @Override
     public QiscusRoomMember getMember(String email) {
         String query = "SELECT * FROM "
@@ -477,10 +648,13 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public void add(QiscusComment qiscusComment) {
+        writer.flush();
+
         sqLiteDatabase.beginTransaction();
         try {
             sqLiteDatabase.insertWithOnConflict(QiscusDb.CommentTable.TABLE_NAME, null,
                     QiscusDb.CommentTable.toContentValues(qiscusComment), SQLiteDatabase.CONFLICT_ABORT);
+            updateLastCommentTime(qiscusComment);
             sqLiteDatabase.setTransactionSuccessful();
         } catch (Exception e) {
             QiscusErrorLogger.print(e);
@@ -505,6 +679,8 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public boolean isContains(QiscusComment qiscusComment) {
+        writer.flush();
+
         String query = "SELECT * FROM "
                 + QiscusDb.CommentTable.TABLE_NAME + " WHERE "
                 + QiscusDb.CommentTable.COLUMN_UNIQUE_ID + " = " + DatabaseUtils.sqlEscapeString(qiscusComment.getUniqueId());
@@ -529,11 +705,14 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public void update(QiscusComment qiscusComment) {
+        writer.flush();
+
         String where = QiscusDb.CommentTable.COLUMN_UNIQUE_ID + " = " + DatabaseUtils.sqlEscapeString(qiscusComment.getUniqueId());
 
         sqLiteDatabase.beginTransaction();
         try {
             sqLiteDatabase.update(QiscusDb.CommentTable.TABLE_NAME, QiscusDb.CommentTable.toContentValues(qiscusComment), where, null);
+            updateLastCommentTime(qiscusComment);
             sqLiteDatabase.setTransactionSuccessful();
         } catch (Exception e) {
             QiscusErrorLogger.print(e);
@@ -560,18 +739,50 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public void addOrUpdate(QiscusComment qiscusComment) {
-        sqLiteDatabase.beginTransaction();
+        writer.enqueue(Collections.singletonList(qiscusComment));
+    }
+
+    @Override
+    public void addOrUpdate(List<QiscusComment> qiscusComments) {
+        if (qiscusComments.isEmpty()) {
+            return;
+        }
+
+        writer.enqueue(qiscusComments);
+    }
+
+    @Override
+    public void flush() {
+        writer.flush();
+    }
+
+    private void insertOrReplaceComments(List<QiscusComment> qiscusComments) {
+        SQLiteStatement statement = sqLiteDatabase.compileStatement(QiscusDb.CommentTable.INSERT_OR_REPLACE);
+        SQLiteStatement lastCommentTimeStatement = sqLiteDatabase.compileStatement(QiscusDb.RoomTable.UPDATE_LAST_COMMENT_TIME);
         try {
-            sqLiteDatabase.insertWithOnConflict(QiscusDb.CommentTable.TABLE_NAME, null,
-                    QiscusDb.CommentTable.toContentValues(qiscusComment), SQLiteDatabase.CONFLICT_REPLACE);
-            sqLiteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
+            for (QiscusComment qiscusComment : qiscusComments) {
+                QiscusDb.CommentTable.bind(statement, qiscusComment);
+                statement.executeInsert();
+                lastCommentTimeStatement.bindLong(1, qiscusComment.getTime().getTime());
+                lastCommentTimeStatement.bindLong(2, qiscusComment.getRoomId());
+                lastCommentTimeStatement.executeUpdateDelete();
+            }
         } finally {
-            sqLiteDatabase.endTransaction();
+            statement.close();
+            lastCommentTimeStatement.close();
         }
     }
 
+    private void updateLastCommentTime(QiscusComment qiscusComment) {
+        sqLiteDatabase.execSQL(QiscusDb.RoomTable.UPDATE_LAST_COMMENT_TIME,
+                new Object[]{qiscusComment.getTime().getTime(), qiscusComment.getRoomId()});
+    }
+
+    private void recalculateLastCommentTime(long roomId) {
+        sqLiteDatabase.execSQL(QiscusDb.RoomTable.RECALCULATE_LAST_COMMENT_TIME
+                + " WHERE " + QiscusDb.RoomTable.COLUMN_ID + " = " + roomId);
+    }
+
     @Override
     public void addOrUpdateLocalPath(long roomId, long commentId, String localPath) {
         sqLiteDatabase.beginTransaction();
@@ -588,11 +799,14 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public void delete(QiscusComment qiscusComment) {
+        writer.flush();
+
         String where = QiscusDb.CommentTable.COLUMN_UNIQUE_ID + " = " + DatabaseUtils.sqlEscapeString(qiscusComment.getUniqueId());
 
         sqLiteDatabase.beginTransaction();
         try {
             sqLiteDatabase.delete(QiscusDb.CommentTable.TABLE_NAME, where, null);
+            recalculateLastCommentTime(qiscusComment.getRoomId());
             sqLiteDatabase.setTransactionSuccessful();
         } catch (Exception e) {
             QiscusErrorLogger.print(e);
@@ -602,8 +816,39 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
         deleteLocalPath(qiscusComment.getId());
     }
 
+    @Override
+    public void delete(List<QiscusComment> qiscusComments) {
+        if (qiscusComments.isEmpty()) {
+            return;
+        }
+
+        writer.flush();
+
+        Set<Long> roomIds = new HashSet<>();
+        sqLiteDatabase.beginTransaction();
+        try {
+            for (QiscusComment qiscusComment : qiscusComments) {
+                String where = QiscusDb.CommentTable.COLUMN_UNIQUE_ID + " = "
+                        + DatabaseUtils.sqlEscapeString(qiscusComment.getUniqueId());
+                sqLiteDatabase.delete(QiscusDb.CommentTable.TABLE_NAME, where, null);
+                deleteLocalPath(qiscusComment.getId());
+                roomIds.add(qiscusComment.getRoomId());
+            }
+            for (long roomId : roomIds) {
+                recalculateLastCommentTime(roomId);
+            }
+            sqLiteDatabase.setTransactionSuccessful();
+        } catch (Exception e) {
+            QiscusErrorLogger.print(e);
+        } finally {
+            sqLiteDatabase.endTransaction();
+        }
+    }
+
     @Override
     public boolean deleteCommentsByRoomId(long roomId) {
+        writer.flush();
+
         List<QiscusComment> comments = getComments(roomId);
 
         if (comments.isEmpty()) {
@@ -618,6 +863,7 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
         sqLiteDatabase.beginTransaction();
         try {
             sqLiteDatabase.delete(QiscusDb.CommentTable.TABLE_NAME, where, null);
+            recalculateLastCommentTime(roomId);
             sqLiteDatabase.setTransactionSuccessful();
         } catch (Exception e) {
             QiscusErrorLogger.print(e);
@@ -630,6 +876,8 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public boolean deleteCommentsByRoomId(long roomId, long timestampOffset) {
+        writer.flush();
+
         List<QiscusComment> comments = getComments(roomId, timestampOffset);
 
         if (comments.isEmpty()) {
@@ -646,6 +894,7 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
         sqLiteDatabase.beginTransaction();
         try {
             sqLiteDatabase.delete(QiscusDb.CommentTable.TABLE_NAME, where, null);
+            recalculateLastCommentTime(roomId);
             sqLiteDatabase.setTransactionSuccessful();
         } catch (Exception e) {
             QiscusErrorLogger.print(e);
@@ -656,8 +905,74 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
         return true;
     }
 
+    @Override
+    public List<Long> deleteCommentsByRoomIds(Map<Long, Long> timestampOffsets) {
+        writer.flush();
+
+        // Read everything before the transaction, reads wait for the writer which can not commit inside it
+        List<Long> clearedRoomIds = new ArrayList<>();
+        List<Long> fileCommentIds = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        for (Map.Entry<Long, Long> timestampOffset : timestampOffsets.entrySet()) {
+            long roomId = timestampOffset.getKey();
+            String where = QiscusDb.CommentTable.COLUMN_ROOM_ID + " = " + roomId + " AND "
+                    + QiscusDb.CommentTable.COLUMN_TIME + " <= " + timestampOffset.getValue();
+            if (DatabaseUtils.queryNumEntries(sqLiteDatabase, QiscusDb.CommentTable.TABLE_NAME, where) == 0) {
+                continue;
+            }
+            clearedRoomIds.add(roomId);
+
+            String query = "SELECT f." + QiscusDb.FilesTable.COLUMN_COMMENT_ID
+                    + ", f." + QiscusDb.FilesTable.COLUMN_LOCAL_PATH
+                    + " FROM " + QiscusDb.FilesTable.TABLE_NAME + " f JOIN " + QiscusDb.CommentTable.TABLE_NAME + " c"
+                    + " ON c." + QiscusDb.CommentTable.COLUMN_ID + " = f." + QiscusDb.FilesTable.COLUMN_COMMENT_ID
+                    + " WHERE c." + QiscusDb.CommentTable.COLUMN_ROOM_ID + " = " + roomId
+                    + " AND c." + QiscusDb.CommentTable.COLUMN_TIME + " <= " + timestampOffset.getValue();
+            Cursor cursor = sqLiteDatabase.rawQuery(query, null);
+            while (cursor.moveToNext()) {
+                fileCommentIds.add(cursor.getLong(0));
+                files.add(new File(cursor.getString(1)));
+            }
+            cursor.close();
+        }
+
+        if (clearedRoomIds.isEmpty()) {
+            return clearedRoomIds;
+        }
+
+        sqLiteDatabase.beginTransaction();
+        try {
+            for (long commentId : fileCommentIds) {
+                String where = QiscusDb.FilesTable.COLUMN_COMMENT_ID + " = " + commentId;
+                sqLiteDatabase.delete(QiscusDb.FilesTable.TABLE_NAME, where, null);
+            }
+
+            for (long roomId : clearedRoomIds) {
+                String where = QiscusDb.CommentTable.COLUMN_ROOM_ID + " = " + roomId + " AND "
+                        + QiscusDb.CommentTable.COLUMN_TIME + " <= " + timestampOffsets.get(roomId);
+                sqLiteDatabase.delete(QiscusDb.CommentTable.TABLE_NAME, where, null);
+                recalculateLastCommentTime(roomId);
+            }
+            sqLiteDatabase.setTransactionSuccessful();
+        } catch (Exception e) {
+            QiscusErrorLogger.print(e);
+            return new ArrayList<>();
+        } finally {
+            sqLiteDatabase.endTransaction();
+        }
+
+        for (File file : files) {
+            if (file.exists()) {
+                file.delete();
+            }
+        }
+        return clearedRoomIds;
+    }
+
     @Override
     public void updateLastDeliveredComment(long roomId, long commentId) {
+        writer.flush();
+
         String sql = "UPDATE " + QiscusDb.CommentTable.TABLE_NAME
                 + " SET " + QiscusDb.CommentTable.COLUMN_STATE + " = " + QiscusComment.STATE_DELIVERED
                 + " WHERE " + QiscusDb.CommentTable.COLUMN_ROOM_ID + " = " + roomId
@@ -678,6 +993,8 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public void updateLastReadComment(long roomId, long commentId) {
+        writer.flush();
+
         String sql = "UPDATE " + QiscusDb.CommentTable.TABLE_NAME
                 + " SET " + QiscusDb.CommentTable.COLUMN_STATE + " = " + QiscusComment.STATE_READ
                 + " WHERE " + QiscusDb.CommentTable.COLUMN_ROOM_ID + " = " + roomId
@@ -716,6 +1033,31 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
         }
     }
 
+    @Override
+    public File getLocalPath(long roomId, long commentId) {
+        return getLocalPath(commentId);
+    }
+
+    @Override
+    public Map<Long, File> getLocalPaths(long roomId) {
+        String query = "SELECT * FROM "
+                + QiscusDb.FilesTable.TABLE_NAME + " WHERE "
+                + QiscusDb.FilesTable.COLUMN_ROOM_ID + " = " + roomId;
+
+        sqLiteDatabase.execSQL(QiscusDb.FilesTable.TOUCH_ROOM, new Object[]{System.currentTimeMillis(), roomId});
+
+        Cursor cursor = sqLiteDatabase.rawQuery(query, null);
+        Map<Long, File> localPaths = new HashMap<>();
+        while (cursor.moveToNext()) {
+            File file = new File(QiscusDb.FilesTable.parseCursor(cursor));
+            if (file.exists()) {
+                localPaths.put(QiscusDb.FilesTable.getCommentId(cursor), file);
+            }
+        }
+        cursor.close();
+        return localPaths;
+    }
+
     @Override
     public void deleteLocalPath(long commentId) {
         File file = getLocalPath(commentId);
@@ -737,6 +1079,8 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public QiscusComment getComment(String uniqueId) {
+        writer.flush();
+
         String query = "SELECT * FROM "
                 + QiscusDb.CommentTable.TABLE_NAME + " WHERE "
                 + QiscusDb.CommentTable.COLUMN_UNIQUE_ID + " = " + DatabaseUtils.sqlEscapeString(uniqueId);
@@ -759,6 +1103,8 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public QiscusComment getCommentByBeforeId(long beforeId) {
+        writer.flush();
+
         String query = "SELECT * FROM "
                 + QiscusDb.CommentTable.TABLE_NAME + " WHERE "
                 + QiscusDb.CommentTable.COLUMN_COMMENT_BEFORE_ID + " = " + beforeId;
@@ -781,6 +1127,8 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public List<QiscusComment> getComments(long roomId) {
+        writer.flush();
+
         String query = "SELECT * FROM "
                 + QiscusDb.CommentTable.TABLE_NAME + " WHERE "
                 + QiscusDb.CommentTable.COLUMN_ROOM_ID + " = " + roomId
@@ -803,6 +1151,8 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public List<QiscusComment> getComments(long roomId, int limit) {
+        writer.flush();
+
         String query = "SELECT * FROM "
                 + QiscusDb.CommentTable.TABLE_NAME + " WHERE "
                 + QiscusDb.CommentTable.COLUMN_ROOM_ID + " = " + roomId
@@ -826,6 +1176,8 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public List<QiscusComment> getComments(long roomId, long timestampOffset) {
+        writer.flush();
+
         String query = "SELECT * FROM "
                 + QiscusDb.CommentTable.TABLE_NAME + " WHERE "
                 + QiscusDb.CommentTable.COLUMN_ROOM_ID + " = " + roomId + " AND "
@@ -865,6 +1217,8 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public List<QiscusComment> getOlderCommentsThan(QiscusComment qiscusComment, long roomId, int limit) {
+        writer.flush();
+
         String query = "SELECT * FROM "
                 + QiscusDb.CommentTable.TABLE_NAME + " WHERE "
                 + QiscusDb.CommentTable.COLUMN_ROOM_ID + " = " + roomId + " AND "
@@ -897,6 +1251,8 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public List<QiscusComment> getCommentsAfter(QiscusComment qiscusComment, long roomId) {
+        writer.flush();
+
         String query = "SELECT * FROM "
                 + QiscusDb.CommentTable.TABLE_NAME + " WHERE "
                 + QiscusDb.CommentTable.COLUMN_ROOM_ID + " = " + roomId + " AND ("
@@ -929,6 +1285,8 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public QiscusComment getLatestComment() {
+        writer.flush();
+
         String query = "SELECT * FROM "
                 + QiscusDb.CommentTable.TABLE_NAME + " WHERE "
                 + QiscusDb.CommentTable.COLUMN_ID + " != -1 "
@@ -951,6 +1309,8 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public QiscusComment getLatestComment(long roomId) {
+        writer.flush();
+
         String query = "SELECT * FROM "
                 + QiscusDb.CommentTable.TABLE_NAME
                 + " WHERE " + QiscusDb.CommentTable.COLUMN_ROOM_ID + " = " + roomId
@@ -973,6 +1333,8 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public QiscusComment getLatestDeliveredComment(long roomId) {
+        writer.flush();
+
         String query = "SELECT * FROM "
                 + QiscusDb.CommentTable.TABLE_NAME + " WHERE "
                 + QiscusDb.CommentTable.COLUMN_ID + " != -1 "
@@ -997,6 +1359,8 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public QiscusComment getLatestReadComment(long roomId) {
+        writer.flush();
+
         String query = "SELECT * FROM "
                 + QiscusDb.CommentTable.TABLE_NAME + " WHERE "
                 + QiscusDb.CommentTable.COLUMN_ID + " != -1 "
@@ -1021,6 +1385,8 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public List<QiscusComment> getPendingComments() {
+        writer.flush();
+
         String query = "SELECT * FROM "
                 + QiscusDb.CommentTable.TABLE_NAME + " WHERE "
                 + QiscusDb.CommentTable.COLUMN_STATE + " = " + QiscusComment.STATE_PENDING
@@ -1049,8 +1415,49 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
         }, Emitter.BackpressureMode.BUFFER);
     }
 
+    @Override
+    public List<QiscusComment> searchComments(String query, long roomId, int limit, int offset) {
+        String matchQuery = QiscusDb.CommentSearchTable.toMatchQuery(query);
+        if (matchQuery == null) {
+            return new ArrayList<>();
+        }
+        writer.flush();
+
+        String sql = "SELECT c.*, " + QiscusDb.CommentSearchTable.snippet("<b>", "</b>")
+                + " AS " + QiscusDb.CommentSearchTable.COLUMN_SNIPPET
+                + " FROM " + QiscusDb.CommentSearchTable.TABLE_NAME
+                + " INNER JOIN " + QiscusDb.CommentTable.TABLE_NAME + " c ON c.rowid = "
+                + QiscusDb.CommentSearchTable.TABLE_NAME + "." + QiscusDb.CommentSearchTable.COLUMN_DOC_ID
+                + " WHERE " + QiscusDb.CommentSearchTable.TABLE_NAME + " MATCH ?"
+                + " AND c." + QiscusDb.CommentTable.COLUMN_DELETED + " = 0"
+                + (roomId > 0 ? " AND c." + QiscusDb.CommentTable.COLUMN_ROOM_ID + " = " + roomId : "")
+                + " ORDER BY c." + QiscusDb.CommentTable.COLUMN_TIME + " DESC"
+                + " LIMIT " + limit + " OFFSET " + offset;
+
+        List<QiscusComment> qiscusComments = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = sqLiteDatabase.rawQuery(sql, new String[]{matchQuery});
+            int snippetIndex = cursor.getColumnIndexOrThrow(QiscusDb.CommentSearchTable.COLUMN_SNIPPET);
+            while (cursor.moveToNext()) {
+                QiscusComment qiscusComment = QiscusDb.CommentTable.parseCursor(cursor);
+                qiscusComment.setSearchSnippet(cursor.getString(snippetIndex));
+                qiscusComments.add(qiscusComment);
+            }
+        } catch (Exception e) {
+            QiscusErrorLogger.print(e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return qiscusComments;
+    }
+
     @Override
     public void clear() {
+        writer.clear();
+        writer.flush();
         sqLiteDatabase.beginTransaction();
         try {
             sqLiteDatabase.delete(QiscusDb.RoomTable.TABLE_NAME, null, null);
@@ -1065,17 +1472,4 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
             sqLiteDatabase.endTransaction();
         }
     }
-
-    private void sortRooms(List<QiscusChatRoom> qiscusChatRooms) {
-        Collections.sort(qiscusChatRooms, (room1, room2) -> {
-            if (room1.getLastComment() != null && room2.getLastComment() != null) {
-                return room2.getLastComment().getTime().compareTo(room1.getLastComment().getTime());
-            } else if (room1.getLastComment() == null && room2.getLastComment() != null) {
-                return 1;
-            } else if (room1.getLastComment() != null && room2.getLastComment() == null) {
-                return -1;
-            }
-            return 0;
-        });
-    }
 }
@@ -18,6 +18,8 @@ package com.qiscus.sdk.data.local;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteStatement;
 
 import com.qiscus.sdk.data.model.QiscusChatRoom;
 import com.qiscus.sdk.data.model.QiscusComment;
@@ -30,7 +32,15 @@ import java.util.Date;
 
 final class QiscusDb {
     static final String DATABASE_NAME = "qiscus.db";
-    static final int DATABASE_VERSION = 14;
+    static final int DATABASE_VERSION = 18;
+
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
 
     abstract static class RoomTable {
         static final String TABLE_NAME = "rooms";
@@ -42,6 +52,7 @@ final class QiscusDb {
         static final String COLUMN_OPTIONS = "options";
         static final String COLUMN_AVATAR_URL = "avatar_url";
         static final String COLUMN_UNREAD_COUNT = "unread_count";
+        static final String COLUMN_LAST_COMMENT_TIME = "last_comment_time";
 
         static final String CREATE =
                 "CREATE TABLE " + TABLE_NAME + " (" +
@@ -52,9 +63,41 @@ final class QiscusDb {
                         COLUMN_IS_GROUP + " INTEGER DEFAULT 0," +
                         COLUMN_OPTIONS + " TEXT," +
                         COLUMN_AVATAR_URL + " TEXT," +
-                        COLUMN_UNREAD_COUNT + " INTEGER DEFAULT 0" +
+                        COLUMN_UNREAD_COUNT + " INTEGER DEFAULT 0," +
+                        COLUMN_LAST_COMMENT_TIME + " LONG DEFAULT 0" +
                         " ); ";
 
+        static final String CREATE_INDEX_LAST_COMMENT_TIME =
+                "CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_last_comment_time_idx ON " + TABLE_NAME +
+                        " (" + COLUMN_LAST_COMMENT_TIME + ");";
+
+        //Time of the newest stored comment of the room, used to order and page the room list
+        static final String SELECT_LAST_COMMENT_TIME =
+                "COALESCE((SELECT MAX(" + CommentTable.COLUMN_TIME + ") FROM " + CommentTable.TABLE_NAME +
+                        " WHERE " + CommentTable.TABLE_NAME + "." + CommentTable.COLUMN_ROOM_ID + " = " +
+                        TABLE_NAME + "." + COLUMN_ID + "), 0)";
+
+        static final String INSERT_OR_REPLACE =
+                "INSERT OR REPLACE INTO " + TABLE_NAME + " (" +
+                        COLUMN_ID + ", " +
+                        COLUMN_DISTINCT_ID + ", " +
+                        COLUMN_UNIQUE_ID + ", " +
+                        COLUMN_NAME + ", " +
+                        COLUMN_IS_GROUP + ", " +
+                        COLUMN_OPTIONS + ", " +
+                        COLUMN_AVATAR_URL + ", " +
+                        COLUMN_UNREAD_COUNT + ", " +
+                        COLUMN_LAST_COMMENT_TIME +
+                        ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, COALESCE((SELECT MAX(" + CommentTable.COLUMN_TIME + ") FROM " +
+                        CommentTable.TABLE_NAME + " WHERE " + CommentTable.COLUMN_ROOM_ID + " = ?), 0))";
+
+        static final String UPDATE_LAST_COMMENT_TIME =
+                "UPDATE " + TABLE_NAME + " SET " + COLUMN_LAST_COMMENT_TIME + " = ?1" +
+                        " WHERE " + COLUMN_ID + " = ?2 AND " + COLUMN_LAST_COMMENT_TIME + " < ?1";
+
+        static final String RECALCULATE_LAST_COMMENT_TIME =
+                "UPDATE " + TABLE_NAME + " SET " + COLUMN_LAST_COMMENT_TIME + " = " + SELECT_LAST_COMMENT_TIME;
+
         static ContentValues toContentValues(QiscusChatRoom qiscusChatRoom) {
             ContentValues values = new ContentValues();
             values.put(COLUMN_ID, qiscusChatRoom.getId());
@@ -68,6 +111,19 @@ final class QiscusDb {
             return values;
         }
 
+        static void bind(SQLiteStatement statement, QiscusChatRoom qiscusChatRoom) {
+            statement.clearBindings();
+            statement.bindLong(1, qiscusChatRoom.getId());
+            bindString(statement, 2, qiscusChatRoom.getDistinctId());
+            bindString(statement, 3, qiscusChatRoom.getUniqueId());
+            bindString(statement, 4, qiscusChatRoom.getName());
+            statement.bindLong(5, qiscusChatRoom.isGroup() ? 1 : 0);
+            bindString(statement, 6, qiscusChatRoom.getOptions() == null ? null : qiscusChatRoom.getOptions().toString());
+            bindString(statement, 7, qiscusChatRoom.getAvatarUrl());
+            statement.bindLong(8, qiscusChatRoom.getUnreadCount());
+            statement.bindLong(9, qiscusChatRoom.getId());
+        }
+
         static QiscusChatRoom parseCursor(Cursor cursor) {
             QiscusChatRoom qiscusChatRoom = new QiscusChatRoom();
             qiscusChatRoom.setId(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_ID)));
@@ -100,6 +156,13 @@ final class QiscusDb {
                         COLUMN_USER_AVATAR + " TEXT" +
                         " ); ";
 
+        static final String INSERT_OR_REPLACE =
+                "INSERT OR REPLACE INTO " + TABLE_NAME + " (" +
+                        COLUMN_USER_EMAIL + ", " +
+                        COLUMN_USER_NAME + ", " +
+                        COLUMN_USER_AVATAR +
+                        ") VALUES (?, ?, ?)";
+
         static ContentValues toContentValues(QiscusRoomMember qiscusRoomMember) {
             ContentValues values = new ContentValues();
             values.put(COLUMN_USER_EMAIL, qiscusRoomMember.getEmail());
@@ -108,6 +171,13 @@ final class QiscusDb {
             return values;
         }
 
+        static void bind(SQLiteStatement statement, QiscusRoomMember qiscusRoomMember) {
+            statement.clearBindings();
+            bindString(statement, 1, qiscusRoomMember.getEmail());
+            bindString(statement, 2, qiscusRoomMember.getUsername());
+            bindString(statement, 3, qiscusRoomMember.getAvatar());
+        }
+
         static QiscusRoomMember getMember(Cursor cursor) {
             QiscusRoomMember qiscusRoomMember = new QiscusRoomMember();
             qiscusRoomMember.setEmail(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_USER_EMAIL)));
@@ -135,6 +205,19 @@ final class QiscusDb {
                         "PRIMARY KEY (" + COLUMN_ROOM_ID + ", " + COLUMN_USER_EMAIL + ")" +
                         " ); ";
 
+        static final String INSERT_OR_REPLACE =
+                "INSERT OR REPLACE INTO " + TABLE_NAME + " (" +
+                        COLUMN_ROOM_ID + ", " +
+                        COLUMN_USER_EMAIL + ", " +
+                        COLUMN_DISTINCT_ID + ", " +
+                        COLUMN_LAST_DELIVERED + ", " +
+                        COLUMN_LAST_READ +
+                        ") VALUES (?, ?, ?, ?, ?)";
+
+        static final String CREATE_INDEX_USER_EMAIL =
+                "CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_user_email_idx ON " + TABLE_NAME +
+                        " (" + COLUMN_USER_EMAIL + ", " + COLUMN_DISTINCT_ID + ");";
+
         static ContentValues toContentValues(long roomId, QiscusRoomMember roomMember) {
             return toContentValues(roomId, "default", roomMember);
         }
@@ -149,6 +232,15 @@ final class QiscusDb {
             return values;
         }
 
+        static void bind(SQLiteStatement statement, long roomId, String distinctId, QiscusRoomMember roomMember) {
+            statement.clearBindings();
+            statement.bindLong(1, roomId);
+            bindString(statement, 2, roomMember.getEmail());
+            bindString(statement, 3, distinctId);
+            statement.bindLong(4, roomMember.getLastDeliveredCommentId());
+            statement.bindLong(5, roomMember.getLastReadCommentId());
+        }
+
         static long getRoomId(Cursor cursor) {
             return cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_ROOM_ID));
         }
@@ -201,6 +293,40 @@ final class QiscusDb {
                         COLUMN_EXTRAS + " TEXT " +
                         " ); ";
 
+        static final String INSERT_OR_REPLACE =
+                "INSERT OR REPLACE INTO " + TABLE_NAME + " (" +
+                        COLUMN_ID + ", " +
+                        COLUMN_ROOM_ID + ", " +
+                        COLUMN_UNIQUE_ID + ", " +
+                        COLUMN_COMMENT_BEFORE_ID + ", " +
+                        COLUMN_MESSAGE + ", " +
+                        COLUMN_SENDER + ", " +
+                        COLUMN_SENDER_EMAIL + ", " +
+                        COLUMN_SENDER_AVATAR + ", " +
+                        COLUMN_TIME + ", " +
+                        COLUMN_STATE + ", " +
+                        COLUMN_DELETED + ", " +
+                        COLUMN_TYPE + ", " +
+                        COLUMN_PAYLOAD + ", " +
+                        COLUMN_EXTRAS +
+                        ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+        static final String CREATE_INDEX_ROOM_TIME =
+                "CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_room_time_idx ON " + TABLE_NAME +
+                        " (" + COLUMN_ROOM_ID + ", " + COLUMN_TIME + ");";
+
+        static final String CREATE_INDEX_ROOM_ID =
+                "CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_room_id_idx ON " + TABLE_NAME +
+                        " (" + COLUMN_ROOM_ID + ", " + COLUMN_ID + ");";
+
+        static final String CREATE_INDEX_COMMENT_BEFORE_ID =
+                "CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_comment_before_id_idx ON " + TABLE_NAME +
+                        " (" + COLUMN_COMMENT_BEFORE_ID + ");";
+
+        static final String CREATE_INDEX_STATE_TIME =
+                "CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_state_time_idx ON " + TABLE_NAME +
+                        " (" + COLUMN_STATE + ", " + COLUMN_TIME + ");";
+
         static ContentValues toContentValues(QiscusComment qiscusComment) {
             ContentValues values = new ContentValues();
             values.put(COLUMN_ID, qiscusComment.getId());
@@ -221,29 +347,164 @@ final class QiscusDb {
             return values;
         }
 
+        static void bind(SQLiteStatement statement, QiscusComment qiscusComment) {
+            statement.clearBindings();
+            statement.bindLong(1, qiscusComment.getId());
+            statement.bindLong(2, qiscusComment.getRoomId());
+            bindString(statement, 3, qiscusComment.getUniqueId());
+            statement.bindLong(4, qiscusComment.getCommentBeforeId());
+            bindString(statement, 5, qiscusComment.getMessage());
+            bindString(statement, 6, qiscusComment.getSender());
+            bindString(statement, 7, qiscusComment.getSenderEmail());
+            bindString(statement, 8, qiscusComment.getSenderAvatar());
+            statement.bindLong(9, qiscusComment.getTime().getTime());
+            statement.bindLong(10, qiscusComment.getState());
+            statement.bindLong(11, qiscusComment.isDeleted() ? 1 : 0);
+            bindString(statement, 12, qiscusComment.getRawType());
+            bindString(statement, 13, qiscusComment.getExtraPayload());
+            bindString(statement, 14, qiscusComment.getExtras() == null ? null : qiscusComment.getExtras().toString());
+        }
+
         static QiscusComment parseCursor(Cursor cursor) {
+            return parseCursor(cursor, "");
+        }
+
+        /**
+         * Parse comment of a joined query, where every comment column is selected with given alias prefix.
+         * See {@link #selectColumns(String, String)}.
+         */
+        static QiscusComment parseCursor(Cursor cursor, String columnPrefix) {
             QiscusComment qiscusComment = new QiscusComment();
-            qiscusComment.setId(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_ID)));
-            qiscusComment.setRoomId(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_ROOM_ID)));
-            qiscusComment.setUniqueId(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_UNIQUE_ID)));
-            qiscusComment.setCommentBeforeId(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_COMMENT_BEFORE_ID)));
-            qiscusComment.setMessage(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_MESSAGE)));
-            qiscusComment.setSender(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SENDER)));
-            qiscusComment.setSenderEmail(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SENDER_EMAIL)));
-            qiscusComment.setSenderAvatar(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SENDER_AVATAR)));
-            qiscusComment.setTime(new Date(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_TIME))));
-            qiscusComment.setState(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_STATE)));
-            qiscusComment.setDeleted(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_DELETED)) == 1);
-            qiscusComment.setRawType(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_TYPE)));
-            qiscusComment.setExtraPayload(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_PAYLOAD)));
+            qiscusComment.setId(cursor.getLong(cursor.getColumnIndexOrThrow(columnPrefix + COLUMN_ID)));
+            qiscusComment.setRoomId(cursor.getLong(cursor.getColumnIndexOrThrow(columnPrefix + COLUMN_ROOM_ID)));
+            qiscusComment.setUniqueId(cursor.getString(cursor.getColumnIndexOrThrow(columnPrefix + COLUMN_UNIQUE_ID)));
+            qiscusComment.setCommentBeforeId(cursor.getLong(cursor.getColumnIndexOrThrow(columnPrefix + COLUMN_COMMENT_BEFORE_ID)));
+            qiscusComment.setMessage(cursor.getString(cursor.getColumnIndexOrThrow(columnPrefix + COLUMN_MESSAGE)));
+            qiscusComment.setSender(cursor.getString(cursor.getColumnIndexOrThrow(columnPrefix + COLUMN_SENDER)));
+            qiscusComment.setSenderEmail(cursor.getString(cursor.getColumnIndexOrThrow(columnPrefix + COLUMN_SENDER_EMAIL)));
+            qiscusComment.setSenderAvatar(cursor.getString(cursor.getColumnIndexOrThrow(columnPrefix + COLUMN_SENDER_AVATAR)));
+            qiscusComment.setTime(new Date(cursor.getLong(cursor.getColumnIndexOrThrow(columnPrefix + COLUMN_TIME))));
+            qiscusComment.setState(cursor.getInt(cursor.getColumnIndexOrThrow(columnPrefix + COLUMN_STATE)));
+            qiscusComment.setDeleted(cursor.getInt(cursor.getColumnIndexOrThrow(columnPrefix + COLUMN_DELETED)) == 1);
+            qiscusComment.setRawType(cursor.getString(cursor.getColumnIndexOrThrow(columnPrefix + COLUMN_TYPE)));
+            qiscusComment.setExtraPayload(cursor.getString(cursor.getColumnIndexOrThrow(columnPrefix + COLUMN_PAYLOAD)));
             try {
-                String extras = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_EXTRAS));
+                String extras = cursor.getString(cursor.getColumnIndexOrThrow(columnPrefix + COLUMN_EXTRAS));
                 qiscusComment.setExtras(extras == null ? null : new JSONObject(extras));
             } catch (JSONException e) {
                 e.printStackTrace();
             }
             return qiscusComment;
         }
+
+        /**
+         * Copy the fields a save and load through this table keeps, so the copy looks like it was read back
+         * from database and shares no mutable state with the original.
+         */
+        static QiscusComment copy(QiscusComment source) {
+            QiscusComment qiscusComment = new QiscusComment();
+            qiscusComment.setId(source.getId());
+            qiscusComment.setRoomId(source.getRoomId());
+            qiscusComment.setUniqueId(source.getUniqueId());
+            qiscusComment.setCommentBeforeId(source.getCommentBeforeId());
+            qiscusComment.setMessage(source.getMessage());
+            qiscusComment.setSender(source.getSender());
+            qiscusComment.setSenderEmail(source.getSenderEmail());
+            qiscusComment.setSenderAvatar(source.getSenderAvatar());
+            qiscusComment.setTime(source.getTime() == null ? null : new Date(source.getTime().getTime()));
+            qiscusComment.setState(source.getState());
+            qiscusComment.setDeleted(source.isDeleted());
+            qiscusComment.setRawType(source.getRawType());
+            qiscusComment.setExtraPayload(source.getExtraPayload());
+            try {
+                JSONObject extras = source.getExtras();
+                qiscusComment.setExtras(extras == null ? null : new JSONObject(extras.toString()));
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+            return qiscusComment;
+        }
+
+        static String selectColumns(String tableAlias, String columnPrefix) {
+            String[] columns = {COLUMN_ID, COLUMN_ROOM_ID, COLUMN_UNIQUE_ID, COLUMN_COMMENT_BEFORE_ID, COLUMN_MESSAGE,
+                    COLUMN_SENDER, COLUMN_SENDER_EMAIL, COLUMN_SENDER_AVATAR, COLUMN_TIME, COLUMN_STATE, COLUMN_DELETED,
+                    COLUMN_TYPE, COLUMN_PAYLOAD, COLUMN_EXTRAS};
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    builder.append(", ");
+                }
+                builder.append(tableAlias).append('.').append(columns[i])
+                        .append(" AS ").append(columnPrefix).append(columns[i]);
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * FTS4 index over message of comments. It uses comments table as external content, so only the index is stored,
+     * and triggers keep it in sync with every insert, update and delete of comments.
+     */
+    abstract static class CommentSearchTable {
+        static final String TABLE_NAME = "comments_fts";
+        static final String COLUMN_DOC_ID = "docid";
+        static final String COLUMN_SNIPPET = "search_snippet";
+
+        static final String CREATE =
+                "CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE_NAME + " USING fts4(" +
+                        "content=\"" + CommentTable.TABLE_NAME + "\", " +
+                        "prefix=\"2,3\", " +
+                        CommentTable.COLUMN_MESSAGE +
+                        ");";
+
+        static final String[] CREATE_TRIGGERS = {
+                "CREATE TRIGGER IF NOT EXISTS " + TABLE_NAME + "_bu BEFORE UPDATE ON " + CommentTable.TABLE_NAME +
+                        " BEGIN DELETE FROM " + TABLE_NAME + " WHERE " + COLUMN_DOC_ID + " = old.rowid; END;",
+                "CREATE TRIGGER IF NOT EXISTS " + TABLE_NAME + "_bd BEFORE DELETE ON " + CommentTable.TABLE_NAME +
+                        " BEGIN DELETE FROM " + TABLE_NAME + " WHERE " + COLUMN_DOC_ID + " = old.rowid; END;",
+                "CREATE TRIGGER IF NOT EXISTS " + TABLE_NAME + "_au AFTER UPDATE ON " + CommentTable.TABLE_NAME +
+                        " BEGIN INSERT INTO " + TABLE_NAME + " (" + COLUMN_DOC_ID + ", " + CommentTable.COLUMN_MESSAGE +
+                        ") VALUES (new.rowid, new." + CommentTable.COLUMN_MESSAGE + "); END;",
+                "CREATE TRIGGER IF NOT EXISTS " + TABLE_NAME + "_ai AFTER INSERT ON " + CommentTable.TABLE_NAME +
+                        " BEGIN INSERT INTO " + TABLE_NAME + " (" + COLUMN_DOC_ID + ", " + CommentTable.COLUMN_MESSAGE +
+                        ") VALUES (new.rowid, new." + CommentTable.COLUMN_MESSAGE + "); END;"
+        };
+
+        static final String REBUILD = "INSERT INTO " + TABLE_NAME + " (" + TABLE_NAME + ") VALUES ('rebuild');";
+
+        /**
+         * INSERT OR REPLACE only fires delete triggers of the replaced row when recursive triggers are on.
+         */
+        static final String ENABLE_RECURSIVE_TRIGGERS = "PRAGMA recursive_triggers = ON;";
+
+        static String snippet(String startMatch, String endMatch) {
+            return "snippet(" + TABLE_NAME + ", " + DatabaseUtils.sqlEscapeString(startMatch) + ", "
+                    + DatabaseUtils.sqlEscapeString(endMatch) + ", '...', -1, 10)";
+        }
+
+        /**
+         * Convert free text typed by user into a safe FTS query, every word is matched as a prefix.
+         *
+         * @param query text typed by user
+         * @return the match expression, or null when there is no word to search
+         */
+        static String toMatchQuery(String query) {
+            if (query == null) {
+                return null;
+            }
+
+            StringBuilder matchQuery = new StringBuilder();
+            for (String word : query.replace("\"", " ").trim().split("\\s+")) {
+                if (word.isEmpty()) {
+                    continue;
+                }
+                if (matchQuery.length() > 0) {
+                    matchQuery.append(' ');
+                }
+                matchQuery.append('"').append(word).append("*\"");
+            }
+            return matchQuery.length() == 0 ? null : matchQuery.toString();
+        }
     }
 
     abstract static class FilesTable {
@@ -251,24 +512,48 @@ final class QiscusDb {
         static final String COLUMN_COMMENT_ID = "comment_id";
         static final String COLUMN_ROOM_ID = "room_id";
         static final String COLUMN_LOCAL_PATH = "local_path";
+        static final String COLUMN_LAST_ACCESS = "last_access";
 
         static final String CREATE =
                 "CREATE TABLE " + TABLE_NAME + " (" +
                         COLUMN_COMMENT_ID + " LONG PRIMARY KEY," +
                         COLUMN_ROOM_ID + " LONG NOT NULL," +
-                        COLUMN_LOCAL_PATH + " TEXT NOT NULL" +
+                        COLUMN_LOCAL_PATH + " TEXT NOT NULL," +
+                        COLUMN_LAST_ACCESS + " LONG DEFAULT 0" +
                         " ); ";
 
+        static final String CREATE_INDEX_LAST_ACCESS =
+                "CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_last_access_idx ON " + TABLE_NAME +
+                        " (" + COLUMN_LAST_ACCESS + ");";
+
+        /**
+         * Mark every file of a room as recently used, media of rooms least recently opened is evicted first.
+         */
+        static final String TOUCH_ROOM =
+                "UPDATE " + TABLE_NAME + " SET " + COLUMN_LAST_ACCESS + " = ? WHERE " + COLUMN_ROOM_ID + " = ?";
+
+        static final String TOUCH_ALL =
+                "UPDATE " + TABLE_NAME + " SET " + COLUMN_LAST_ACCESS + " = CAST(strftime('%s', 'now') AS INTEGER) * 1000";
+
+        static final String CREATE_INDEX_ROOM_ID =
+                "CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_room_id_idx ON " + TABLE_NAME +
+                        " (" + COLUMN_ROOM_ID + ");";
+
         static ContentValues toContentValues(long roomId, long commentId, String localPath) {
             ContentValues values = new ContentValues();
             values.put(COLUMN_ROOM_ID, roomId);
             values.put(COLUMN_COMMENT_ID, commentId);
             values.put(COLUMN_LOCAL_PATH, localPath);
+            values.put(COLUMN_LAST_ACCESS, System.currentTimeMillis());
             return values;
         }
 
         static String parseCursor(Cursor cursor) {
             return cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_LOCAL_PATH));
         }
+
+        static long getCommentId(Cursor cursor) {
+            return cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_COMMENT_ID));
+        }
     }
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.local;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Ordered, incremental schema migrations of qiscus database. Every time {@link QiscusDb#DATABASE_VERSION}
+ * is bumped, add a new case to {@link #migrateTo(SQLiteDatabase, int)} that brings a database from the
+ * previous version to the new one without dropping user data. Remember to update the CREATE statements at
+ * {@link QiscusDb} too, so fresh installs get the same schema.
+ */
+final class QiscusDbMigrations {
+
+    /**
+     * The oldest schema version that can be upgraded incrementally. Databases older than this were created
+     * before migrations existed, so they are dropped and recreated.
+     */
+    static final int MIN_MIGRATABLE_VERSION = 14;
+
+    private QiscusDbMigrations() {
+
+    }
+
+    static boolean canMigrate(int oldVersion, int newVersion) {
+        return oldVersion >= MIN_MIGRATABLE_VERSION && oldVersion <= newVersion;
+    }
+
+    /**
+     * Apply every migration step from oldVersion (exclusive) to newVersion (inclusive) in order.
+     * Caller is responsible to wrap this call inside a transaction.
+     *
+     * @param db         the database to migrate
+     * @param oldVersion current version of the database
+     * @param newVersion target version of the database
+     */
+    static void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            migrateTo(db, version);
+        }
+    }
+
+    private static void migrateTo(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 15:
+                migrateTo15(db);
+                break;
+            case 16:
+                migrateTo16(db);
+                break;
+            case 17:
+                migrateTo17(db);
+                break;
+            case 18:
+                migrateTo18(db);
+                break;
+            default:
+                throw new IllegalStateException("Missing qiscus database migration to version " + version);
+        }
+    }
+
+    /**
+     * Version 15 add secondary indexes for room scoped comment queries, member lookup and files of room.
+     */
+    private static void migrateTo15(SQLiteDatabase db) {
+        db.execSQL(QiscusDb.RoomMemberTable.CREATE_INDEX_USER_EMAIL);
+        db.execSQL(QiscusDb.CommentTable.CREATE_INDEX_ROOM_TIME);
+        db.execSQL(QiscusDb.CommentTable.CREATE_INDEX_ROOM_ID);
+        db.execSQL(QiscusDb.CommentTable.CREATE_INDEX_COMMENT_BEFORE_ID);
+        db.execSQL(QiscusDb.CommentTable.CREATE_INDEX_STATE_TIME);
+        db.execSQL(QiscusDb.FilesTable.CREATE_INDEX_ROOM_ID);
+    }
+
+    /**
+     * Version 16 add denormalized last comment time of room, so room list can be ordered and paged by SQL.
+     */
+    private static void migrateTo16(SQLiteDatabase db) {
+        addColumn(db, QiscusDb.RoomTable.TABLE_NAME, QiscusDb.RoomTable.COLUMN_LAST_COMMENT_TIME, "LONG DEFAULT 0");
+        db.execSQL(QiscusDb.RoomTable.RECALCULATE_LAST_COMMENT_TIME);
+        db.execSQL(QiscusDb.RoomTable.CREATE_INDEX_LAST_COMMENT_TIME);
+    }
+
+    /**
+     * Version 17 add full text search index over message of comments, then index the existing comments.
+     */
+    private static void migrateTo17(SQLiteDatabase db) {
+        db.execSQL(QiscusDb.CommentSearchTable.CREATE);
+        for (String trigger : QiscusDb.CommentSearchTable.CREATE_TRIGGERS) {
+            db.execSQL(trigger);
+        }
+        db.execSQL(QiscusDb.CommentSearchTable.REBUILD);
+    }
+
+    /**
+     * Version 18 track last access of downloaded files, so retention can evict media least recently used.
+     */
+    private static void migrateTo18(SQLiteDatabase db) {
+        addColumn(db, QiscusDb.FilesTable.TABLE_NAME, QiscusDb.FilesTable.COLUMN_LAST_ACCESS, "LONG DEFAULT 0");
+        db.execSQL(QiscusDb.FilesTable.TOUCH_ALL);
+        db.execSQL(QiscusDb.FilesTable.CREATE_INDEX_LAST_ACCESS);
+    }
+
+    static boolean hasColumn(SQLiteDatabase db, String tableName, String columnName) {
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + tableName + ")", null);
+        try {
+            int nameIndex = cursor.getColumnIndexOrThrow("name");
+            while (cursor.moveToNext()) {
+                if (columnName.equals(cursor.getString(nameIndex))) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    static void addColumn(SQLiteDatabase db, String tableName, String columnName, String definition) {
+        if (!hasColumn(db, tableName, columnName)) {
+            db.execSQL("ALTER TABLE " + tableName + " ADD COLUMN " + columnName + " " + definition);
+        }
+    }
+}
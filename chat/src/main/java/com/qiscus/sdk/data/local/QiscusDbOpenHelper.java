@@ -24,6 +24,8 @@ class QiscusDbOpenHelper extends SQLiteOpenHelper {
 
     QiscusDbOpenHelper(Context context) {
         super(context, QiscusDb.DATABASE_NAME, null, QiscusDb.DATABASE_VERSION);
+        // Let readers run concurrently with the serial writer
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
@@ -35,14 +37,58 @@ class QiscusDbOpenHelper extends SQLiteOpenHelper {
             db.execSQL(QiscusDb.RoomMemberTable.CREATE);
             db.execSQL(QiscusDb.CommentTable.CREATE);
             db.execSQL(QiscusDb.FilesTable.CREATE);
+            createIndexes(db);
+            createCommentSearch(db);
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
         }
     }
 
+    private void createIndexes(SQLiteDatabase db) {
+        db.execSQL(QiscusDb.RoomTable.CREATE_INDEX_LAST_COMMENT_TIME);
+        db.execSQL(QiscusDb.RoomMemberTable.CREATE_INDEX_USER_EMAIL);
+        db.execSQL(QiscusDb.CommentTable.CREATE_INDEX_ROOM_TIME);
+        db.execSQL(QiscusDb.CommentTable.CREATE_INDEX_ROOM_ID);
+        db.execSQL(QiscusDb.CommentTable.CREATE_INDEX_COMMENT_BEFORE_ID);
+        db.execSQL(QiscusDb.CommentTable.CREATE_INDEX_STATE_TIME);
+        db.execSQL(QiscusDb.FilesTable.CREATE_INDEX_ROOM_ID);
+        db.execSQL(QiscusDb.FilesTable.CREATE_INDEX_LAST_ACCESS);
+    }
+
+    private void createCommentSearch(SQLiteDatabase db) {
+        db.execSQL(QiscusDb.CommentSearchTable.CREATE);
+        for (String trigger : QiscusDb.CommentSearchTable.CREATE_TRIGGERS) {
+            db.execSQL(trigger);
+        }
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.execSQL(QiscusDb.CommentSearchTable.ENABLE_RECURSIVE_TRIGGERS);
+        // Only takes effect before the first table is created, older databases are converted by retention
+        db.execSQL(QiscusRetentionEngine.ENABLE_INCREMENTAL_VACUUM);
+    }
+
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (!QiscusDbMigrations.canMigrate(oldVersion, newVersion)) {
+            clearOldData(db);
+            onCreate(db);
+            return;
+        }
+
+        db.beginTransaction();
+        try {
+            QiscusDbMigrations.migrate(db, oldVersion, newVersion);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         clearOldData(db);
         onCreate(db);
     }
@@ -55,6 +101,7 @@ class QiscusDbOpenHelper extends SQLiteOpenHelper {
             db.execSQL("DROP TABLE IF EXISTS " + QiscusDb.RoomMemberTable.TABLE_NAME);
             db.execSQL("DROP TABLE IF EXISTS " + QiscusDb.CommentTable.TABLE_NAME);
             db.execSQL("DROP TABLE IF EXISTS " + QiscusDb.FilesTable.TABLE_NAME);
+            db.execSQL("DROP TABLE IF EXISTS " + QiscusDb.CommentSearchTable.TABLE_NAME);
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.local;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+
+import com.qiscus.sdk.data.model.QiscusComment;
+import com.qiscus.sdk.util.QiscusErrorLogger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import rx.functions.Action1;
+
+/**
+ * Serial write-behind queue of comment upserts. Upserts of the same unique id inside the coalescing window
+ * are merged so only the latest state is written, then the whole batch is committed by a single writer thread
+ * in one transaction. Callers that need to read what was just written call {@link #flush()} first, which waits
+ * for the writer thread to commit the queue, so writes never run on the reader thread.
+ */
+public final class QiscusDbWriter {
+    private static final long COALESCE_WINDOW = 50;
+    private static final long RETRY_DELAY = 1000;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final SQLiteDatabase sqLiteDatabase;
+    private final Action1<List<QiscusComment>> commentsWriter;
+    private final ScheduledExecutorService executor;
+    private final Map<String, QiscusComment> pendingComments = new LinkedHashMap<>();
+    private final Map<String, Integer> failedAttempts = new HashMap<>();
+    private volatile Thread writerThread;
+    private boolean flushScheduled;
+    private boolean committing;
+
+    private int peakQueueDepth;
+    private long enqueuedCount;
+    private long coalescedCount;
+    private long droppedCount;
+    private long commitCount;
+    private long totalCommitLatency;
+    private long maxCommitLatency;
+
+    QiscusDbWriter(SQLiteDatabase sqLiteDatabase, Action1<List<QiscusComment>> commentsWriter) {
+        this.sqLiteDatabase = sqLiteDatabase;
+        this.commentsWriter = commentsWriter;
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "QiscusDbWriter");
+            thread.setDaemon(true);
+            writerThread = thread;
+            return thread;
+        });
+    }
+
+    /**
+     * Queue copies of the comments, so later changes of the caller objects do not leak into the queued write.
+     * Outgoing comments are only known locally until the server accepts them, those are committed before
+     * returning instead of waiting for the coalescing window.
+     */
+    void enqueue(List<QiscusComment> qiscusComments) {
+        boolean outgoing = false;
+        synchronized (pendingComments) {
+            for (QiscusComment qiscusComment : qiscusComments) {
+                enqueuedCount++;
+                failedAttempts.remove(qiscusComment.getUniqueId());
+                QiscusComment copy = QiscusDb.CommentTable.copy(qiscusComment);
+                if (pendingComments.put(qiscusComment.getUniqueId(), copy) != null) {
+                    coalescedCount++;
+                }
+                outgoing |= isOutgoing(qiscusComment);
+            }
+            peakQueueDepth = Math.max(peakQueueDepth, pendingComments.size());
+            scheduleCommit(COALESCE_WINDOW);
+        }
+
+        if (outgoing) {
+            flush();
+        }
+    }
+
+    private static boolean isOutgoing(QiscusComment qiscusComment) {
+        return qiscusComment.getState() == QiscusComment.STATE_PENDING
+                || qiscusComment.getState() == QiscusComment.STATE_SENDING;
+    }
+
+    private void scheduleCommit(long delay) {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            executor.schedule(this::commit, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Wait until the writer thread has committed every write enqueued before the call, so they are visible to
+     * readers. Returns immediately when nothing is queued or being committed. Must not be called while holding
+     * a transaction of the database, the writer thread could not begin its own transaction then.
+     */
+    void flush() {
+        if (Thread.currentThread() == writerThread) {
+            commit();
+            return;
+        }
+
+        Future<?> committed;
+        synchronized (pendingComments) {
+            if (pendingComments.isEmpty() && !committing) {
+                return;
+            }
+            committed = executor.submit(this::commit);
+        }
+
+        try {
+            committed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            QiscusErrorLogger.print(e);
+        }
+    }
+
+    private void commit() {
+        List<QiscusComment> qiscusComments;
+        synchronized (pendingComments) {
+            flushScheduled = false;
+            if (pendingComments.isEmpty()) {
+                return;
+            }
+            qiscusComments = new ArrayList<>(pendingComments.values());
+            pendingComments.clear();
+            committing = true;
+        }
+
+        try {
+            long startTime = SystemClock.elapsedRealtime();
+            if (write(qiscusComments)) {
+                recordCommit(SystemClock.elapsedRealtime() - startTime);
+            } else {
+                // One bad row must not take the whole batch down, write them one by one instead
+                for (QiscusComment qiscusComment : qiscusComments) {
+                    if (!write(Collections.singletonList(qiscusComment))) {
+                        requeue(qiscusComment);
+                    }
+                }
+            }
+        } finally {
+            synchronized (pendingComments) {
+                committing = false;
+                if (!pendingComments.isEmpty()) {
+                    scheduleCommit(RETRY_DELAY);
+                }
+            }
+        }
+    }
+
+    private boolean write(List<QiscusComment> qiscusComments) {
+        sqLiteDatabase.beginTransactionNonExclusive();
+        try {
+            commentsWriter.call(qiscusComments);
+            sqLiteDatabase.setTransactionSuccessful();
+            return true;
+        } catch (Exception e) {
+            QiscusErrorLogger.print(e);
+            return false;
+        } finally {
+            sqLiteDatabase.endTransaction();
+        }
+    }
+
+    /**
+     * Put a failed write back to the queue unless a newer write of the same comment was enqueued meanwhile,
+     * writes that keep failing are dropped after MAX_ATTEMPTS.
+     */
+    private void requeue(QiscusComment qiscusComment) {
+        String uniqueId = qiscusComment.getUniqueId();
+        synchronized (pendingComments) {
+            if (pendingComments.containsKey(uniqueId)) {
+                return;
+            }
+            Integer attempts = failedAttempts.get(uniqueId);
+            attempts = attempts == null ? 1 : attempts + 1;
+            if (attempts >= MAX_ATTEMPTS) {
+                failedAttempts.remove(uniqueId);
+                droppedCount++;
+                QiscusErrorLogger.print("QiscusDbWriter", "Dropping comment " + uniqueId + " after "
+                        + attempts + " failed writes");
+                return;
+            }
+            failedAttempts.put(uniqueId, attempts);
+            pendingComments.put(uniqueId, qiscusComment);
+        }
+    }
+
+    /**
+     * Drop every queued write, used when local data is being cleared.
+     */
+    void clear() {
+        synchronized (pendingComments) {
+            pendingComments.clear();
+            failedAttempts.clear();
+        }
+    }
+
+    private synchronized void recordCommit(long latency) {
+        commitCount++;
+        totalCommitLatency += latency;
+        maxCommitLatency = Math.max(maxCommitLatency, latency);
+    }
+
+    public int getQueueDepth() {
+        synchronized (pendingComments) {
+            return pendingComments.size();
+        }
+    }
+
+    public int getPeakQueueDepth() {
+        synchronized (pendingComments) {
+            return peakQueueDepth;
+        }
+    }
+
+    public long getEnqueuedCount() {
+        synchronized (pendingComments) {
+            return enqueuedCount;
+        }
+    }
+
+    /**
+     * @return number of queued writes that were merged into a newer write of the same comment
+     */
+    public long getCoalescedCount() {
+        synchronized (pendingComments) {
+            return coalescedCount;
+        }
+    }
+
+    /**
+     * @return number of queued writes given up after failing MAX_ATTEMPTS times
+     */
+    public long getDroppedCount() {
+        synchronized (pendingComments) {
+            return droppedCount;
+        }
+    }
+
+    public synchronized long getCommitCount() {
+        return commitCount;
+    }
+
+    /**
+     * @return average time in milliseconds to commit one batch
+     */
+    public synchronized long getAverageCommitLatency() {
+        return commitCount == 0 ? 0 : totalCommitLatency / commitCount;
+    }
+
+    public synchronized long getMaxCommitLatency() {
+        return maxCommitLatency;
+    }
+}
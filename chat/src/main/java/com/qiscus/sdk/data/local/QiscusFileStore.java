@@ -17,6 +17,7 @@
 package com.qiscus.sdk.data.local;
 
 import java.io.File;
+import java.util.Map;
 
 /**
  * Created on : November 07, 2016
@@ -35,5 +36,22 @@ public interface QiscusFileStore {
 
     File getLocalPath(long commentId);
 
+    /**
+     * Same as {@link #getLocalPath(long)}, but lets implementation answer from index of the room.
+     *
+     * @param roomId    room of the comment
+     * @param commentId id of the comment
+     * @return local file of the comment attachment, or null when not downloaded yet
+     */
+    File getLocalPath(long roomId, long commentId);
+
+    /**
+     * Load local files of every downloaded attachment of a room.
+     *
+     * @param roomId room of the attachments
+     * @return map of comment id to its local file
+     */
+    Map<Long, File> getLocalPaths(long roomId);
+
     void deleteLocalPath(long commentId);
 }
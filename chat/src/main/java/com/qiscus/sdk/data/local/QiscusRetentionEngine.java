@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.local;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.qiscus.sdk.Qiscus;
+import com.qiscus.sdk.data.model.QiscusComment;
+import com.qiscus.sdk.data.model.QiscusRetentionConfig;
+import com.qiscus.sdk.event.QiscusRetentionEvent;
+import com.qiscus.sdk.util.QiscusErrorLogger;
+import com.qiscus.sdk.util.QiscusLogger;
+
+import org.greenrobot.eventbus.EventBus;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Trim local storage to the limits of {@link QiscusRetentionConfig}. Every run removes comments above the per room
+ * cap, then oldest comments while the database is above its max size, then downloaded media of rooms least recently
+ * opened while media is above its max size. Work is done in small transactions so writers are never blocked long,
+ * and freed pages are returned to the file system with incremental vacuum.
+ * <p>
+ * Pending, sending and failed comments are never removed, neither is the latest comment of a room.
+ */
+final class QiscusRetentionEngine {
+    private static final String TAG = QiscusRetentionEngine.class.getSimpleName();
+
+    static final String ENABLE_INCREMENTAL_VACUUM = "PRAGMA auto_vacuum = INCREMENTAL;";
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    private static final long RUN_INTERVAL = TimeUnit.MINUTES.toMillis(30);
+    private static final int BATCH_SIZE = 200;
+    private static final int MAX_BATCHES_PER_RUN = 50;
+    private static final int VACUUM_PAGES = 512;
+
+    /**
+     * Only comments that already reach server can be removed.
+     */
+    private static final String REMOVABLE = QiscusDb.CommentTable.COLUMN_STATE + " >= " + QiscusComment.STATE_ON_QISCUS;
+
+    private final SQLiteDatabase sqLiteDatabase;
+    private final QiscusDbWriter writer;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private int deletedComments;
+    private int deletedFiles;
+    private long deletedFileBytes;
+
+    QiscusRetentionEngine(SQLiteDatabase sqLiteDatabase, QiscusDbWriter writer) {
+        this.sqLiteDatabase = sqLiteDatabase;
+        this.writer = writer;
+    }
+
+    void schedule() {
+        Qiscus.getTaskExecutor().scheduleWithFixedDelay(this::run, RUN_INTERVAL, RUN_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run retention once if enabled.
+     *
+     * @return reclaimed bytes of database file and media
+     */
+    long run() {
+        QiscusRetentionConfig config = Qiscus.getChatConfig().getRetentionConfig();
+        if (!config.isEnableRetention() || !running.compareAndSet(false, true)) {
+            return 0;
+        }
+
+        try {
+            // Measure and trim what is really stored, queued upserts would otherwise be written after the trim
+            writer.flush();
+            deletedComments = 0;
+            deletedFiles = 0;
+            deletedFileBytes = 0;
+            long databaseSize = getDatabaseSize();
+            int batches = 0;
+
+            if (config.getMaxCommentsPerRoom() > 0) {
+                batches += trimRooms(config.getMaxCommentsPerRoom(), MAX_BATCHES_PER_RUN);
+            }
+
+            if (config.getMaxDatabaseSize() > 0) {
+                while (batches < MAX_BATCHES_PER_RUN && getUsedDatabaseSize() > config.getMaxDatabaseSize()) {
+                    batches++;
+                    if (deleteOldestComments() == 0) {
+                        break;
+                    }
+                }
+            }
+
+            if (config.getMaxMediaSize() > 0) {
+                trimMedia(config.getMaxMediaSize());
+            }
+
+            if (deletedComments > 0 || deletedFiles > 0) {
+                vacuum();
+            }
+
+            long reclaimedBytes = Math.max(0, databaseSize - getDatabaseSize()) + deletedFileBytes;
+            if (deletedComments > 0 || deletedFiles > 0) {
+                QiscusLogger.print(TAG, "Removed " + deletedComments + " comments and " + deletedFiles
+                        + " files, reclaimed " + reclaimedBytes + " bytes");
+                EventBus.getDefault().post(new QiscusRetentionEvent(deletedComments, deletedFiles, reclaimedBytes));
+            }
+            return reclaimedBytes;
+        } catch (Exception e) {
+            QiscusErrorLogger.print(TAG, e);
+            return 0;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private int trimRooms(int maxCommentsPerRoom, int maxBatches) {
+        List<Long> roomIds = new ArrayList<>();
+        Cursor cursor = sqLiteDatabase.rawQuery("SELECT " + QiscusDb.CommentTable.COLUMN_ROOM_ID
+                + " FROM " + QiscusDb.CommentTable.TABLE_NAME
+                + " GROUP BY " + QiscusDb.CommentTable.COLUMN_ROOM_ID
+                + " HAVING COUNT(*) > " + maxCommentsPerRoom, null);
+        while (cursor.moveToNext()) {
+            roomIds.add(cursor.getLong(0));
+        }
+        cursor.close();
+
+        int batches = 0;
+        for (long roomId : roomIds) {
+            String where = QiscusDb.CommentTable.COLUMN_ROOM_ID + " = " + roomId
+                    + " AND " + QiscusDb.CommentTable.COLUMN_TIME + " < (SELECT " + QiscusDb.CommentTable.COLUMN_TIME
+                    + " FROM " + QiscusDb.CommentTable.TABLE_NAME
+                    + " WHERE " + QiscusDb.CommentTable.COLUMN_ROOM_ID + " = " + roomId
+                    + " ORDER BY " + QiscusDb.CommentTable.COLUMN_TIME + " DESC"
+                    + " LIMIT 1 OFFSET " + (maxCommentsPerRoom - 1) + ")"
+                    + " AND " + REMOVABLE;
+            while (batches < maxBatches) {
+                batches++;
+                if (deleteComments(where) < BATCH_SIZE) {
+                    break;
+                }
+            }
+        }
+        return batches;
+    }
+
+    private int deleteOldestComments() {
+        return deleteComments(REMOVABLE + " AND " + QiscusDb.CommentTable.COLUMN_TIME + " < (SELECT "
+                + QiscusDb.RoomTable.COLUMN_LAST_COMMENT_TIME + " FROM " + QiscusDb.RoomTable.TABLE_NAME
+                + " WHERE " + QiscusDb.RoomTable.COLUMN_ID + " = "
+                + QiscusDb.CommentTable.TABLE_NAME + "." + QiscusDb.CommentTable.COLUMN_ROOM_ID + ")");
+    }
+
+    /**
+     * Delete one batch of the oldest comments matching the filter, together with their downloaded files.
+     *
+     * @return number of deleted comments
+     */
+    private int deleteComments(String where) {
+        String batch = "SELECT rowid FROM " + QiscusDb.CommentTable.TABLE_NAME
+                + " WHERE " + where
+                + " ORDER BY " + QiscusDb.CommentTable.COLUMN_TIME + " ASC LIMIT " + BATCH_SIZE;
+
+        List<Long> rowIds = new ArrayList<>();
+        Cursor cursor = sqLiteDatabase.rawQuery(batch, null);
+        while (cursor.moveToNext()) {
+            rowIds.add(cursor.getLong(0));
+        }
+        cursor.close();
+        if (rowIds.isEmpty()) {
+            return 0;
+        }
+
+        String rowIdFilter = "rowid IN (" + join(rowIds) + ")";
+        List<File> files = new ArrayList<>();
+        int deleted = 0;
+        sqLiteDatabase.beginTransactionNonExclusive();
+        try {
+            String commentIds = "SELECT " + QiscusDb.CommentTable.COLUMN_ID + " FROM "
+                    + QiscusDb.CommentTable.TABLE_NAME + " WHERE " + rowIdFilter;
+            String fileFilter = QiscusDb.FilesTable.COLUMN_COMMENT_ID + " IN (" + commentIds + ")";
+            Cursor fileCursor = sqLiteDatabase.rawQuery("SELECT * FROM " + QiscusDb.FilesTable.TABLE_NAME
+                    + " WHERE " + fileFilter, null);
+            while (fileCursor.moveToNext()) {
+                files.add(new File(QiscusDb.FilesTable.parseCursor(fileCursor)));
+            }
+            fileCursor.close();
+
+            sqLiteDatabase.delete(QiscusDb.FilesTable.TABLE_NAME, fileFilter, null);
+            deleted = sqLiteDatabase.delete(QiscusDb.CommentTable.TABLE_NAME, rowIdFilter, null);
+            sqLiteDatabase.setTransactionSuccessful();
+        } catch (Exception e) {
+            QiscusErrorLogger.print(TAG, e);
+            files.clear();
+        } finally {
+            sqLiteDatabase.endTransaction();
+        }
+
+        deletedComments += deleted;
+        deleteFiles(files);
+        return deleted;
+    }
+
+    private void trimMedia(long maxMediaSize) {
+        // Newest used first, everything after the budget is used up gets evicted
+        Cursor cursor = sqLiteDatabase.rawQuery("SELECT f.* FROM " + QiscusDb.FilesTable.TABLE_NAME + " f"
+                + " LEFT JOIN " + QiscusDb.CommentTable.TABLE_NAME + " c ON c." + QiscusDb.CommentTable.COLUMN_ID
+                + " = f." + QiscusDb.FilesTable.COLUMN_COMMENT_ID
+                + " WHERE c." + QiscusDb.CommentTable.COLUMN_ID + " IS NULL OR c." + REMOVABLE
+                + " ORDER BY f." + QiscusDb.FilesTable.COLUMN_LAST_ACCESS + " DESC", null);
+        long usedSize = 0;
+        List<Long> evictedCommentIds = new ArrayList<>();
+        List<File> evictedFiles = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            File file = new File(QiscusDb.FilesTable.parseCursor(cursor));
+            usedSize += file.length();
+            if (usedSize > maxMediaSize) {
+                evictedCommentIds.add(QiscusDb.FilesTable.getCommentId(cursor));
+                evictedFiles.add(file);
+            }
+        }
+        cursor.close();
+
+        for (int start = 0; start < evictedCommentIds.size(); start += BATCH_SIZE) {
+            int end = Math.min(start + BATCH_SIZE, evictedCommentIds.size());
+            sqLiteDatabase.beginTransactionNonExclusive();
+            try {
+                sqLiteDatabase.delete(QiscusDb.FilesTable.TABLE_NAME, QiscusDb.FilesTable.COLUMN_COMMENT_ID
+                        + " IN (" + join(evictedCommentIds.subList(start, end)) + ")", null);
+                sqLiteDatabase.setTransactionSuccessful();
+            } catch (Exception e) {
+                QiscusErrorLogger.print(TAG, e);
+                continue;
+            } finally {
+                sqLiteDatabase.endTransaction();
+            }
+            deleteFiles(evictedFiles.subList(start, end));
+        }
+    }
+
+    private void deleteFiles(List<File> files) {
+        for (File file : files) {
+            long length = file.length();
+            if (file.delete()) {
+                deletedFiles++;
+                deletedFileBytes += length;
+            }
+        }
+    }
+
+    void vacuum() {
+        if (getPragma("auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+            // Database created before incremental vacuum was enabled, convert it once with full vacuum
+            sqLiteDatabase.execSQL(ENABLE_INCREMENTAL_VACUUM);
+            sqLiteDatabase.execSQL("VACUUM;");
+            // Full vacuum may renumber rowid of comments, which the search index uses as docid
+            sqLiteDatabase.execSQL(QiscusDb.CommentSearchTable.REBUILD);
+            return;
+        }
+
+        Cursor cursor = sqLiteDatabase.rawQuery("PRAGMA incremental_vacuum(" + VACUUM_PAGES + ");", null);
+        while (cursor.moveToNext()) {
+            // Every step frees one page
+        }
+        cursor.close();
+    }
+
+    private long getDatabaseSize() {
+        return getPragma("page_count") * getPragma("page_size");
+    }
+
+    private long getUsedDatabaseSize() {
+        return (getPragma("page_count") - getPragma("freelist_count")) * getPragma("page_size");
+    }
+
+    private long getPragma(String name) {
+        Cursor cursor = sqLiteDatabase.rawQuery("PRAGMA " + name + ";", null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static String join(List<Long> ids) {
+        StringBuilder builder = new StringBuilder();
+        for (Long id : ids) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(id);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.local;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.RestrictTo;
+
+import com.qiscus.sdk.Qiscus;
+
+/**
+ * Persisted position of the incremental comment sync, the id of the last comment received from sync.
+ * Kept apart from the comments table so deleting or clearing local comments does not rewind the sync.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public enum QiscusSyncCursor {
+    INSTANCE;
+    private final SharedPreferences sharedPreferences;
+
+    QiscusSyncCursor() {
+        sharedPreferences = Qiscus.getApps().getSharedPreferences("sync.cache", Context.MODE_PRIVATE);
+    }
+
+    public static QiscusSyncCursor getInstance() {
+        return INSTANCE;
+    }
+
+    public void setLastCommentId(long commentId) {
+        if (commentId > getLastCommentId()) {
+            sharedPreferences.edit()
+                    .putLong("last_comment_id", commentId)
+                    .apply();
+        }
+    }
+
+    public long getLastCommentId() {
+        return sharedPreferences.getLong("last_comment_id", 0);
+    }
+
+    public void clear() {
+        sharedPreferences.edit().clear().apply();
+    }
+}
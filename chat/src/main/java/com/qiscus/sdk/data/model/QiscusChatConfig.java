@@ -28,6 +28,7 @@ import android.widget.Toast;
 
 import com.qiscus.sdk.Qiscus;
 import com.qiscus.sdk.R;
+import com.qiscus.sdk.data.local.QiscusCacheDataStore;
 import com.qiscus.sdk.data.local.QiscusCacheManager;
 import com.qiscus.sdk.data.remote.QiscusApi;
 import com.qiscus.sdk.ui.QiscusChatActivity;
@@ -224,6 +225,14 @@ public class QiscusChatConfig {
 
     private QiscusDeleteCommentConfig deleteCommentConfig = new QiscusDeleteCommentConfig();
 
+    private int commentCacheSize = 500;
+
+    private QiscusRetentionConfig retentionConfig = new QiscusRetentionConfig();
+
+    private QiscusUploadConfig uploadConfig = new QiscusUploadConfig();
+
+    private QiscusHttpConfig httpConfig = new QiscusHttpConfig();
+
     public QiscusChatConfig setStatusBarColor(@ColorRes int statusBarColor) {
         this.statusBarColor = statusBarColor;
         return this;
@@ -754,6 +763,20 @@ public class QiscusChatConfig {
         return this;
     }
 
+    /**
+     * Set max number of comments kept in memory cache in front of the data store
+     *
+     * @param commentCacheSize max cached comments, must be greater than 0
+     * @return current config
+     */
+    public QiscusChatConfig setCommentCacheSize(int commentCacheSize) {
+        this.commentCacheSize = commentCacheSize;
+        if (Qiscus.getDataStore() instanceof QiscusCacheDataStore) {
+            ((QiscusCacheDataStore) Qiscus.getDataStore()).setCapacity(commentCacheSize);
+        }
+        return this;
+    }
+
     public QiscusChatConfig setDialogPermissionPositiveButtonTextColor
             (@ColorRes int dialogPermissionPositiveButtonTextColor) {
         this.dialogPermissionPositiveButtonTextColor = dialogPermissionPositiveButtonTextColor;
@@ -771,6 +794,21 @@ public class QiscusChatConfig {
         return this;
     }
 
+    public QiscusChatConfig setRetentionConfig(QiscusRetentionConfig retentionConfig) {
+        this.retentionConfig = retentionConfig;
+        return this;
+    }
+
+    public QiscusChatConfig setUploadConfig(QiscusUploadConfig uploadConfig) {
+        this.uploadConfig = uploadConfig;
+        return this;
+    }
+
+    public QiscusChatConfig setHttpConfig(QiscusHttpConfig httpConfig) {
+        this.httpConfig = httpConfig;
+        return this;
+    }
+
     public QiscusChatConfig setStartReplyInterceptor(QiscusStartReplyInterceptor startReplyInterceptor) {
         this.startReplyInterceptor = startReplyInterceptor;
         return this;
@@ -1260,6 +1298,10 @@ public class QiscusChatConfig {
         return enableCaption;
     }
 
+    public int getCommentCacheSize() {
+        return commentCacheSize;
+    }
+
     @ColorRes
     public int getDialogPermissionPositiveButtonTextColor() {
         return dialogPermissionPositiveButtonTextColor;
@@ -1274,6 +1316,18 @@ public class QiscusChatConfig {
         return deleteCommentConfig;
     }
 
+    public QiscusRetentionConfig getRetentionConfig() {
+        return retentionConfig;
+    }
+
+    public QiscusUploadConfig getUploadConfig() {
+        return uploadConfig;
+    }
+
+    public QiscusHttpConfig getHttpConfig() {
+        return httpConfig;
+    }
+
     public QiscusStartReplyInterceptor getStartReplyInterceptor() {
         return startReplyInterceptor;
     }
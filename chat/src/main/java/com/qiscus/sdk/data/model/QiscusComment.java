@@ -77,6 +77,7 @@ public class QiscusComment implements Parcelable {
 
     protected boolean selected;
     protected boolean highlighted;
+    protected String searchSnippet;
     protected boolean downloading;
     protected int progress;
 
@@ -387,6 +388,18 @@ public class QiscusComment implements Parcelable {
         this.highlighted = highlighted;
     }
 
+    /**
+     * @return part of message around the matched words of local search, matched words are wrapped with
+     * &lt;b&gt; tag. Null when this comment is not a local search result.
+     */
+    public String getSearchSnippet() {
+        return searchSnippet;
+    }
+
+    public void setSearchSnippet(String searchSnippet) {
+        this.searchSnippet = searchSnippet;
+    }
+
     public void setRawType(String rawType) {
         this.rawType = rawType;
     }
@@ -421,6 +434,7 @@ public class QiscusComment implements Parcelable {
                 JSONObject payload = QiscusRawDataExtractor.getPayload(this);
                 replyTo = new QiscusComment();
                 replyTo.id = payload.getInt("replied_comment_id");
+                replyTo.roomId = roomId;
                 replyTo.uniqueId = replyTo.id + "";
                 replyTo.message = payload.getString("replied_comment_message");
                 replyTo.sender = payload.getString("replied_comment_sender_username");
@@ -693,7 +707,7 @@ public class QiscusComment implements Parcelable {
 
     private void setupPlayer() {
         if (player == null) {
-            File localPath = Qiscus.getDataStore().getLocalPath(id);
+            File localPath = Qiscus.getDataStore().getLocalPath(roomId, id);
             if (localPath != null) {
                 try {
                     player = new MediaPlayer();
@@ -742,7 +756,7 @@ public class QiscusComment implements Parcelable {
 
     public int getAudioDuration() {
         if (player == null && isAudio()) {
-            File localPath = Qiscus.getDataStore().getLocalPath(id);
+            File localPath = Qiscus.getDataStore().getLocalPath(roomId, id);
             if (localPath == null) {
                 return 0;
             } else {
@@ -754,7 +768,7 @@ public class QiscusComment implements Parcelable {
 
     public int getCurrentAudioPosition() {
         if (player == null && isAudio()) {
-            File localPath = Qiscus.getDataStore().getLocalPath(id);
+            File localPath = Qiscus.getDataStore().getLocalPath(roomId, id);
             if (localPath == null) {
                 return 0;
             } else {
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.model;
+
+/**
+ * Settings of the HTTP client shared by Qiscus api, link previews and image loading. Must be set before
+ * the first request, changes after the client is created have no effect.
+ */
+public class QiscusHttpConfig {
+    private long connectTimeout = 60;
+    private long readTimeout = 60;
+    private int maxIdleConnections = 8;
+    private long keepAliveDuration = 5 * 60;
+    private long cacheSize = 10 * 1024 * 1024;
+    private boolean enableMetrics = false;
+    private long roomCacheTtl = 0;
+
+    public long getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * @param connectTimeout connect timeout in seconds
+     * @return current config
+     */
+    public QiscusHttpConfig setConnectTimeout(long connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+
+    public long getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * @param readTimeout read and write timeout in seconds
+     * @return current config
+     */
+    public QiscusHttpConfig setReadTimeout(long readTimeout) {
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    public QiscusHttpConfig setMaxIdleConnections(int maxIdleConnections) {
+        this.maxIdleConnections = maxIdleConnections;
+        return this;
+    }
+
+    public long getKeepAliveDuration() {
+        return keepAliveDuration;
+    }
+
+    /**
+     * @param keepAliveDuration how long in seconds an idle connection is kept in the pool
+     * @return current config
+     */
+    public QiscusHttpConfig setKeepAliveDuration(long keepAliveDuration) {
+        this.keepAliveDuration = keepAliveDuration;
+        return this;
+    }
+
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * @param cacheSize max size in bytes of the disk response cache, 0 to disable it
+     * @return current config
+     */
+    public QiscusHttpConfig setCacheSize(long cacheSize) {
+        this.cacheSize = cacheSize;
+        return this;
+    }
+
+    public boolean isEnableMetrics() {
+        return enableMetrics;
+    }
+
+    /**
+     * @param enableMetrics record DNS, connect, TLS and time to first byte of every endpoint
+     * @return current config
+     */
+    public QiscusHttpConfig setEnableMetrics(boolean enableMetrics) {
+        this.enableMetrics = enableMetrics;
+        return this;
+    }
+
+    public long getRoomCacheTtl() {
+        return roomCacheTtl;
+    }
+
+    /**
+     * Room and room list responses without ETag or Last-Modified from server are served from local cache
+     * without any request while younger than this ttl. A cached room may then miss changes made by other users
+     * for up to ttl seconds.
+     *
+     * @param roomCacheTtl freshness in seconds, 0 to always request, default is 0
+     * @return current config
+     */
+    public QiscusHttpConfig setRoomCacheTtl(long roomCacheTtl) {
+        this.roomCacheTtl = roomCacheTtl;
+        return this;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.model;
+
+/**
+ * Limits of local storage. When enabled, old comments and downloaded media that exceed these limits are removed
+ * periodically in background. Pending and failed outgoing comments are never removed.
+ */
+public class QiscusRetentionConfig {
+    private boolean enableRetention = false;
+    private int maxCommentsPerRoom = 1000;
+    private long maxDatabaseSize = 50 * 1024 * 1024;
+    private long maxMediaSize = 200 * 1024 * 1024;
+
+    public boolean isEnableRetention() {
+        return enableRetention;
+    }
+
+    public QiscusRetentionConfig setEnableRetention(boolean enableRetention) {
+        this.enableRetention = enableRetention;
+        return this;
+    }
+
+    public int getMaxCommentsPerRoom() {
+        return maxCommentsPerRoom;
+    }
+
+    /**
+     * @param maxCommentsPerRoom newest comments to keep in every room, 0 means no limit
+     * @return current config
+     */
+    public QiscusRetentionConfig setMaxCommentsPerRoom(int maxCommentsPerRoom) {
+        this.maxCommentsPerRoom = maxCommentsPerRoom;
+        return this;
+    }
+
+    public long getMaxDatabaseSize() {
+        return maxDatabaseSize;
+    }
+
+    /**
+     * @param maxDatabaseSize max size of database in bytes, oldest comments are removed above it, 0 means no limit
+     * @return current config
+     */
+    public QiscusRetentionConfig setMaxDatabaseSize(long maxDatabaseSize) {
+        this.maxDatabaseSize = maxDatabaseSize;
+        return this;
+    }
+
+    public long getMaxMediaSize() {
+        return maxMediaSize;
+    }
+
+    /**
+     * @param maxMediaSize max total size of downloaded media in bytes, media of rooms least recently opened are
+     *                     removed above it, 0 means no limit
+     * @return current config
+     */
+    public QiscusRetentionConfig setMaxMediaSize(long maxMediaSize) {
+        this.maxMediaSize = maxMediaSize;
+        return this;
+    }
+}
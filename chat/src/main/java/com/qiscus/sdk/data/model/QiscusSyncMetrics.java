@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.model;
+
+/**
+ * Immutable result of one sync run, see {@link com.qiscus.sdk.data.remote.QiscusSyncEngine#getLastSyncMetrics()}.
+ */
+public final class QiscusSyncMetrics {
+    private final long startTime;
+    private final long duration;
+    private final int itemCount;
+    private final boolean success;
+
+    public QiscusSyncMetrics(long startTime, long duration, int itemCount, boolean success) {
+        this.startTime = startTime;
+        this.duration = duration;
+        this.itemCount = itemCount;
+        this.success = success;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    @Override
+    public String toString() {
+        return "QiscusSyncMetrics{" +
+                "startTime=" + startTime +
+                ", duration=" + duration +
+                ", itemCount=" + itemCount +
+                ", success=" + success +
+                '}';
+    }
+}
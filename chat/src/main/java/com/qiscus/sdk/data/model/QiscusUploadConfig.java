@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.model;
+
+/**
+ * Attachment upload settings. When a resumable upload url is set, attachments are uploaded in chunks using the
+ * tus resumable upload protocol (https://tus.io), so an interrupted upload continues from the last uploaded chunk
+ * even after the app is restarted. Otherwise attachments are uploaded as one multipart request to Qiscus server.
+ */
+public class QiscusUploadConfig {
+    private String resumableUploadUrl;
+    private int chunkSize = 1024 * 1024;
+    private int maxChunkRetry = 3;
+    private long progressInterval = 200;
+
+    public String getResumableUploadUrl() {
+        return resumableUploadUrl;
+    }
+
+    /**
+     * @param resumableUploadUrl creation url of a tus compatible upload server, null to use Qiscus multipart upload
+     * @return current config
+     */
+    public QiscusUploadConfig setResumableUploadUrl(String resumableUploadUrl) {
+        this.resumableUploadUrl = resumableUploadUrl;
+        return this;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @param chunkSize size in bytes of every uploaded chunk in resumable mode
+     * @return current config
+     */
+    public QiscusUploadConfig setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    public int getMaxChunkRetry() {
+        return maxChunkRetry;
+    }
+
+    /**
+     * @param maxChunkRetry how many times a failed chunk is retried before the upload fails
+     * @return current config
+     */
+    public QiscusUploadConfig setMaxChunkRetry(int maxChunkRetry) {
+        this.maxChunkRetry = maxChunkRetry;
+        return this;
+    }
+
+    public long getProgressInterval() {
+        return progressInterval;
+    }
+
+    /**
+     * @param progressInterval min time in milliseconds between two upload progress callbacks
+     * @return current config
+     */
+    public QiscusUploadConfig setProgressInterval(long progressInterval) {
+        this.progressInterval = progressInterval;
+        return this;
+    }
+}
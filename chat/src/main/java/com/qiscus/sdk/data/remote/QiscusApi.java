@@ -17,38 +17,34 @@
 package com.qiscus.sdk.data.remote;
 
 import android.net.Uri;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.v4.util.Pair;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.qiscus.sdk.Qiscus;
-import com.qiscus.sdk.R;
 import com.qiscus.sdk.data.model.QiscusAccount;
 import com.qiscus.sdk.data.model.QiscusChatRoom;
 import com.qiscus.sdk.data.model.QiscusComment;
 import com.qiscus.sdk.data.model.QiscusNonce;
 import com.qiscus.sdk.data.model.QiscusRoomMember;
+import com.qiscus.sdk.data.model.QiscusUploadConfig;
 import com.qiscus.sdk.event.QiscusClearCommentsEvent;
 import com.qiscus.sdk.event.QiscusCommentSentEvent;
-import com.qiscus.sdk.util.QiscusDateUtil;
 import com.qiscus.sdk.util.QiscusErrorLogger;
-import com.qiscus.sdk.util.QiscusFileUtil;
 import com.qiscus.sdk.util.QiscusLogger;
-import com.qiscus.sdk.util.QiscusTextUtil;
 
 import org.greenrobot.eventbus.EventBus;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import okhttp3.Interceptor;
 import okhttp3.MediaType;
@@ -62,6 +58,7 @@ import okhttp3.internal.Util;
 import okio.BufferedSink;
 import okio.Okio;
 import okio.Source;
+import retrofit2.HttpException;
 import retrofit2.Retrofit;
 import retrofit2.adapter.rxjava.RxJavaCallAdapterFactory;
 import retrofit2.converter.gson.GsonConverterFactory;
@@ -69,12 +66,12 @@ import retrofit2.http.DELETE;
 import retrofit2.http.Field;
 import retrofit2.http.FormUrlEncoded;
 import retrofit2.http.GET;
+import retrofit2.http.Header;
 import retrofit2.http.PATCH;
 import retrofit2.http.POST;
 import retrofit2.http.Query;
 import rx.Emitter;
 import rx.Observable;
-import rx.exceptions.OnErrorThrowable;
 
 /**
  * Created on : August 18, 2016
@@ -85,6 +82,8 @@ import rx.exceptions.OnErrorThrowable;
 public enum QiscusApi {
     INSTANCE;
     private final OkHttpClient httpClient;
+    private final QiscusDownloadCache downloadCache;
+    private final QiscusRoomCache roomCache;
 
     private String baseUrl;
     private final Api api;
@@ -92,11 +91,12 @@ public enum QiscusApi {
     QiscusApi() {
         baseUrl = Qiscus.getAppServer();
 
-        httpClient = new OkHttpClient.Builder()
-                .connectTimeout(60, TimeUnit.SECONDS)
-                .readTimeout(60, TimeUnit.SECONDS)
+        roomCache = new QiscusRoomCache();
+        httpClient = QiscusHttpEngine.getInstance().getClient().newBuilder()
                 .addInterceptor(this::headersInterceptor)
+                .addInterceptor(roomCache)
                 .build();
+        downloadCache = new QiscusDownloadCache(httpClient.newBuilder().cache(null).build());
 
         api = new Retrofit.Builder()
                 .baseUrl(baseUrl)
@@ -120,6 +120,10 @@ public enum QiscusApi {
         return INSTANCE;
     }
 
+    public QiscusRoomCache getRoomCache() {
+        return roomCache;
+    }
+
     public Observable<QiscusNonce> requestNonce() {
         return api.requestNonce().map(QiscusApiParser::parseNonce);
     }
@@ -164,28 +168,76 @@ public enum QiscusApi {
                 .map(QiscusApiParser::parseQiscusChatRoomWithComments);
     }
 
+    /**
+     * Emit the locally cached room data first if any, then revalidate it with server and emit the server data
+     * only when it changed. When nothing was cached locally the server data is always emitted.
+     */
+    public Observable<Pair<QiscusChatRoom, List<QiscusComment>>> getChatRoomCommentsCacheThenRevalidate(long roomId) {
+        return Observable.defer(() -> {
+            AtomicBoolean emittedCache = new AtomicBoolean(false);
+            Observable<Pair<QiscusChatRoom, List<QiscusComment>>> cached =
+                    api.getChatRoom(QiscusRoomCache.ONLY_IF_CACHED, Qiscus.getToken(), roomId)
+                            .filter(retrofit2.Response::isSuccessful)
+                            .map(response -> QiscusApiParser.parseQiscusChatRoomWithComments(response.body()))
+                            .doOnNext(roomWithComments -> emittedCache.set(true))
+                            .onErrorResumeNext(Observable.empty());
+
+            Observable<Pair<QiscusChatRoom, List<QiscusComment>>> revalidated =
+                    api.getChatRoom(null, Qiscus.getToken(), roomId)
+                            .flatMap(response -> {
+                                if (!response.isSuccessful()) {
+                                    return Observable.error(new HttpException(response));
+                                }
+                                // Hit and revalidated responses are the data already emitted from cache
+                                if (!emittedCache.get() || QiscusRoomCache.STATUS_MISS.equals(
+                                        response.headers().get(QiscusRoomCache.HEADER_CACHE_STATUS))) {
+                                    return Observable.just(
+                                            QiscusApiParser.parseQiscusChatRoomWithComments(response.body()));
+                                }
+                                return Observable.empty();
+                            });
+
+            return Observable.concat(cached, revalidated);
+        });
+    }
+
     public Observable<List<QiscusChatRoom>> getChatRooms(int page, int limit, boolean showMembers) {
         return api.getChatRooms(Qiscus.getToken(), page, limit, showMembers)
-                .map(QiscusApiParser::parseQiscusChatRoomInfo);
+                .flatMap(responseBody -> QiscusApiStreamParser.parseChatRooms(responseBody).toList());
     }
 
     public Observable<List<QiscusChatRoom>> getChatRooms(List<Long> roomIds, List<String> uniqueIds, boolean showMembers) {
         return api.getChatRooms(Qiscus.getToken(), roomIds, uniqueIds, showMembers)
-                .map(QiscusApiParser::parseQiscusChatRoomInfo);
+                .flatMap(responseBody -> QiscusApiStreamParser.parseChatRooms(responseBody).toList());
+    }
+
+    /**
+     * Same as {@link #getChatRooms(int, int, boolean)}, but the rooms are also saved to local data store
+     * in one batch before they are emitted.
+     */
+    public Observable<List<QiscusChatRoom>> getAndSaveChatRooms(int page, int limit, boolean showMembers) {
+        return getChatRooms(page, limit, showMembers)
+                .doOnNext(qiscusChatRooms -> Qiscus.getDataStore().addOrUpdateRooms(qiscusChatRooms));
+    }
+
+    /**
+     * Same as {@link #getChatRooms(List, List, boolean)}, but the rooms are also saved to local data store
+     * in one batch before they are emitted.
+     */
+    public Observable<List<QiscusChatRoom>> getAndSaveChatRooms(List<Long> roomIds, List<String> uniqueIds,
+                                                                boolean showMembers) {
+        return getChatRooms(roomIds, uniqueIds, showMembers)
+                .doOnNext(qiscusChatRooms -> Qiscus.getDataStore().addOrUpdateRooms(qiscusChatRooms));
     }
 
     public Observable<QiscusComment> getComments(long roomId, long lastCommentId) {
         return api.getComments(Qiscus.getToken(), roomId, lastCommentId, false)
-                .flatMap(jsonElement -> Observable.from(jsonElement.getAsJsonObject().get("results")
-                        .getAsJsonObject().get("comments").getAsJsonArray()))
-                .map(jsonElement -> QiscusApiParser.parseQiscusComment(jsonElement, roomId));
+                .flatMap(responseBody -> QiscusApiStreamParser.parseComments(responseBody, roomId));
     }
 
     public Observable<QiscusComment> getCommentsAfter(long roomId, long lastCommentId) {
         return api.getComments(Qiscus.getToken(), roomId, lastCommentId, true)
-                .flatMap(jsonElement -> Observable.from(jsonElement.getAsJsonObject().get("results")
-                        .getAsJsonObject().get("comments").getAsJsonArray()))
-                .map(jsonElement -> QiscusApiParser.parseQiscusComment(jsonElement, roomId));
+                .flatMap(responseBody -> QiscusApiStreamParser.parseComments(responseBody, roomId));
     }
 
     public Observable<QiscusComment> postComment(QiscusComment qiscusComment) {
@@ -206,30 +258,63 @@ public enum QiscusApi {
     }
 
     public Observable<QiscusComment> sync(long lastCommentId) {
-        return api.sync(Qiscus.getToken(), lastCommentId)
-                .onErrorReturn(throwable -> {
+        return sync(lastCommentId, 0)
+                .onErrorResumeNext(throwable -> {
                     QiscusErrorLogger.print("Sync", throwable);
-                    return null;
-                })
-                .filter(jsonElement -> jsonElement != null)
-                .flatMap(jsonElement -> Observable.from(jsonElement.getAsJsonObject().get("results")
-                        .getAsJsonObject().get("comments").getAsJsonArray()))
-                .map(jsonElement -> {
-                    JsonObject jsonComment = jsonElement.getAsJsonObject();
-                    return QiscusApiParser.parseQiscusComment(jsonElement, jsonComment.get("room_id").getAsLong());
+                    return Observable.empty();
                 });
     }
 
+    /**
+     * Get comments received after the comment, at most limit comments or all of them if limit is 0.
+     */
+    public Observable<QiscusComment> sync(long lastCommentId, int limit) {
+        return api.sync(Qiscus.getToken(), lastCommentId, limit > 0 ? limit : null)
+                .flatMap(QiscusApiStreamParser::parseComments);
+    }
+
+    /**
+     * Incremental sync from the persisted sync cursor, received comments are persisted and every page is dispatched
+     * as one {@link com.qiscus.sdk.event.QiscusCommentsReceivedEvent}.
+     *
+     * @return new or updated comments
+     */
     public Observable<QiscusComment> sync() {
-        QiscusComment latestComment = Qiscus.getDataStore().getLatestComment();
-        if (latestComment == null || !QiscusTextUtil.getString(R.string.qiscus_today)
-                .equals(QiscusDateUtil.toTodayOrDate(latestComment.getTime()))) {
-            return Observable.empty();
-        }
-        return sync(latestComment.getId());
+        return QiscusSyncEngine.getInstance().sync()
+                .flatMap(Observable::from);
     }
 
     public Observable<Uri> uploadFile(File file, ProgressListener progressListener) {
+        return uploadFile(file, null, progressListener);
+    }
+
+    /**
+     * Upload the file, in resumable mode when {@link QiscusUploadConfig#getResumableUploadUrl()} is set.
+     *
+     * @param file             file to upload
+     * @param uploadId         id to resume the upload after failure, e.g. unique id of the comment, can be null
+     * @param progressListener upload progress in percent, called at most every
+     *                         {@link QiscusUploadConfig#getProgressInterval()} milliseconds
+     * @return uploaded file url
+     */
+    public Observable<Uri> uploadFile(File file, String uploadId, ProgressListener progressListener) {
+        QiscusUploadConfig uploadConfig = Qiscus.getChatConfig().getUploadConfig();
+        ProgressListener throttledListener = new ThrottledProgressListener(progressListener,
+                uploadConfig.getProgressInterval());
+        if (uploadId != null && uploadConfig.getResumableUploadUrl() != null) {
+            return Observable.create(subscriber -> {
+                try {
+                    Uri uri = new QiscusResumableUploader(httpClient, uploadConfig)
+                            .upload(file, uploadId, throttledListener);
+                    subscriber.onNext(uri);
+                    subscriber.onCompleted();
+                } catch (IOException e) {
+                    QiscusErrorLogger.print("UploadFile", e);
+                    subscriber.onError(e);
+                }
+            }, Emitter.BackpressureMode.BUFFER);
+        }
+
         return Observable.create(subscriber -> {
             long fileLength = file.length();
 
@@ -239,7 +324,7 @@ public enum QiscusApi {
                     .addFormDataPart("file", file.getName(),
                             new CountingFileRequestBody(file, totalBytes -> {
                                 int progress = (int) (totalBytes * 100 / fileLength);
-                                progressListener.onProgress(progress);
+                                throttledListener.onProgress(progress);
                             }))
                     .build();
 
@@ -261,55 +346,12 @@ public enum QiscusApi {
         }, Emitter.BackpressureMode.BUFFER);
     }
 
+    /**
+     * Download the file through the download cache, concurrent downloads of the same url share one transfer
+     * and an interrupted download continues from where it stopped.
+     */
     public Observable<File> downloadFile(String url, String fileName, ProgressListener progressListener) {
-        return Observable.create(subscriber -> {
-            InputStream inputStream = null;
-            FileOutputStream fos = null;
-            try {
-                Request request = new Request.Builder().url(url).build();
-
-                Response response = httpClient.newCall(request).execute();
-
-                File output = new File(QiscusFileUtil.generateFilePath(fileName));
-                fos = new FileOutputStream(output.getPath());
-                if (!response.isSuccessful()) {
-                    throw new IOException();
-                } else {
-                    ResponseBody responseBody = response.body();
-                    long fileLength = responseBody.contentLength();
-
-                    inputStream = responseBody.byteStream();
-                    byte[] buffer = new byte[4096];
-                    long total = 0;
-                    int count;
-                    while ((count = inputStream.read(buffer)) != -1) {
-                        total += count;
-                        long totalCurrent = total;
-                        if (fileLength > 0) {
-                            progressListener.onProgress((totalCurrent * 100 / fileLength));
-                        }
-                        fos.write(buffer, 0, count);
-                    }
-                    fos.flush();
-
-                    subscriber.onNext(output);
-                    subscriber.onCompleted();
-                }
-            } catch (Exception e) {
-                throw OnErrorThrowable.from(OnErrorThrowable.addValueAsLastCause(e, url));
-            } finally {
-                try {
-                    if (fos != null) {
-                        fos.close();
-                    }
-                    if (inputStream != null) {
-                        inputStream.close();
-                    }
-                } catch (IOException ignored) {
-                    //Do nothing
-                }
-            }
-        }, Emitter.BackpressureMode.BUFFER);
+        return downloadCache.download(url, fileName, progressListener);
     }
 
     public Observable<QiscusChatRoom> updateChatRoom(long roomId, String name, String avatarUrl, JSONObject options) {
@@ -334,23 +376,51 @@ public enum QiscusApi {
 
     public Observable<List<QiscusComment>> searchComments(String query, long roomId, long lastCommentId) {
         return api.searchComments(Qiscus.getToken(), query, roomId, lastCommentId)
-                .flatMap(jsonElement -> Observable.from(jsonElement.getAsJsonObject().get("results")
-                        .getAsJsonObject().get("comments").getAsJsonArray()))
-                .map(jsonElement -> {
-                    JsonObject jsonComment = jsonElement.getAsJsonObject();
-                    return QiscusApiParser.parseQiscusComment(jsonElement, jsonComment.get("room_id").getAsLong());
-                })
+                .flatMap(QiscusApiStreamParser::parseComments)
                 .toList();
     }
 
+    /**
+     * Search comments locally first, then search at server. Emits the local result immediately, then emits it
+     * again merged with the server result when it arrives. Server failure is ignored, so search keeps working
+     * while offline.
+     *
+     * @param query  words to search
+     * @param roomId room to search in, or 0 to search all rooms
+     * @param limit  max comments to emit
+     * @return local result followed by merged result, newest comment first
+     */
+    public Observable<List<QiscusComment>> searchCommentsHybrid(String query, long roomId, int limit) {
+        Observable<List<QiscusComment>> localSearch = Observable.create(subscriber -> {
+            subscriber.onNext(Qiscus.getDataStore().searchComments(query, roomId, limit, 0));
+            subscriber.onCompleted();
+        }, Emitter.BackpressureMode.BUFFER);
+
+        return localSearch.flatMap(localComments -> Observable.concat(Observable.just(localComments),
+                searchComments(query, roomId, 0)
+                        .map(serverComments -> mergeSearchResults(localComments, serverComments, limit))
+                        .onErrorResumeNext(throwable -> {
+                            QiscusErrorLogger.print(throwable);
+                            return Observable.empty();
+                        })));
+    }
+
+    private List<QiscusComment> mergeSearchResults(List<QiscusComment> localComments,
+                                                   List<QiscusComment> serverComments, int limit) {
+        List<QiscusComment> mergedComments = new ArrayList<>(localComments);
+        for (QiscusComment serverComment : serverComments) {
+            if (!mergedComments.contains(serverComment)) {
+                mergedComments.add(serverComment);
+            }
+        }
+        Collections.sort(mergedComments, (lhs, rhs) -> rhs.getTime().compareTo(lhs.getTime()));
+        return mergedComments.size() > limit ? new ArrayList<>(mergedComments.subList(0, limit)) : mergedComments;
+    }
+
     public Observable<Void> clearCommentsByRoomIds(List<Long> roomIds) {
         return api.getChatRooms(Qiscus.getToken(), roomIds, null, false)
-                .map(JsonElement::getAsJsonObject)
-                .map(jsonObject -> jsonObject.get("results").getAsJsonObject())
-                .map(jsonObject -> jsonObject.get("rooms_info").getAsJsonArray())
-                .flatMap(Observable::from)
-                .map(JsonElement::getAsJsonObject)
-                .map(jsonObject -> jsonObject.get("unique_id").getAsString())
+                .flatMap(QiscusApiStreamParser::parseChatRooms)
+                .map(QiscusChatRoom::getUniqueId)
                 .toList()
                 .flatMap(this::clearCommentsByRoomUniqueIds);
     }
@@ -417,8 +487,17 @@ public enum QiscusApi {
                     }
                 })
                 .filter(jsonObject -> jsonObject != null)
-                .doOnNext(QiscusPusherApi::handleNotification)
-                .toList();
+                .toList()
+                .doOnNext(QiscusPusherApi::handleNotifications);
+    }
+
+    /**
+     * Fetch and handle events after the last handled event page by page until there is no event left.
+     *
+     * @return events of every page
+     */
+    public Observable<List<JSONObject>> syncEvents() {
+        return QiscusSyncEngine.getInstance().syncEvents();
     }
 
     private interface Api {
@@ -470,11 +549,16 @@ public enum QiscusApi {
         Observable<JsonElement> getChatRoom(@Query("token") String token,
                                             @Query("id") long roomId);
 
+        @GET("/api/v2/mobile/get_room_by_id")
+        Observable<retrofit2.Response<JsonElement>> getChatRoom(@Header(QiscusRoomCache.HEADER_CACHE_MODE) String cacheMode,
+                                                                @Query("token") String token,
+                                                                @Query("id") long roomId);
+
         @GET("/api/v2/mobile/load_comments")
-        Observable<JsonElement> getComments(@Query("token") String token,
-                                            @Query("topic_id") long roomId,
-                                            @Query("last_comment_id") long lastCommentId,
-                                            @Query("after") boolean after);
+        Observable<ResponseBody> getComments(@Query("token") String token,
+                                             @Query("topic_id") long roomId,
+                                             @Query("last_comment_id") long lastCommentId,
+                                             @Query("after") boolean after);
 
         @FormUrlEncoded
         @POST("/api/v2/mobile/post_comment")
@@ -487,8 +571,9 @@ public enum QiscusApi {
                                             @Field("extras") String extras);
 
         @GET("/api/v2/mobile/sync")
-        Observable<JsonElement> sync(@Query("token") String token,
-                                     @Query("last_received_comment_id") long lastCommentId);
+        Observable<ResponseBody> sync(@Query("token") String token,
+                                      @Query("last_received_comment_id") long lastCommentId,
+                                      @Query("limit") Integer limit);
 
         @FormUrlEncoded
         @POST("/api/v2/mobile/update_room")
@@ -512,23 +597,23 @@ public enum QiscusApi {
                                                  @Field("device_token") String fcmToken);
 
         @POST("/api/v2/mobile/search_messages")
-        Observable<JsonElement> searchComments(@Query("token") String token,
-                                               @Query("query") String query,
-                                               @Query("room_id") long roomId,
-                                               @Query("last_comment_id") long lastCommentId);
+        Observable<ResponseBody> searchComments(@Query("token") String token,
+                                                @Query("query") String query,
+                                                @Query("room_id") long roomId,
+                                                @Query("last_comment_id") long lastCommentId);
 
         @GET("/api/v2/mobile/user_rooms")
-        Observable<JsonElement> getChatRooms(@Query("token") String token,
-                                             @Query("page") int page,
-                                             @Query("limit") int limit,
-                                             @Query("show_participants") boolean showParticipants);
+        Observable<ResponseBody> getChatRooms(@Query("token") String token,
+                                              @Query("page") int page,
+                                              @Query("limit") int limit,
+                                              @Query("show_participants") boolean showParticipants);
 
         @FormUrlEncoded
         @POST("/api/v2/mobile/rooms_info")
-        Observable<JsonElement> getChatRooms(@Field("token") String token,
-                                             @Field("room_id[]") List<Long> roomIds,
-                                             @Field("room_unique_id[]") List<String> roomUniqueIds,
-                                             @Field("show_participants") boolean showParticipants);
+        Observable<ResponseBody> getChatRooms(@Field("token") String token,
+                                              @Field("room_id[]") List<Long> roomIds,
+                                              @Field("room_unique_id[]") List<String> roomUniqueIds,
+                                              @Field("show_participants") boolean showParticipants);
 
         @DELETE("/api/v2/mobile/clear_room_messages")
         Observable<JsonElement> clearChatRoomMessages(@Query("token") String token,
@@ -548,7 +633,7 @@ public enum QiscusApi {
     private static class CountingFileRequestBody extends RequestBody {
         private final File file;
         private final ProgressListener progressListener;
-        private static final int SEGMENT_SIZE = 2048;
+        private static final int SEGMENT_SIZE = 8192;
 
         private CountingFileRequestBody(File file, ProgressListener progressListener) {
             this.file = file;
@@ -586,6 +671,32 @@ public enum QiscusApi {
 
     }
 
+    /**
+     * Drop progress updates that come faster than the interval, except the first and the completed one.
+     */
+    static class ThrottledProgressListener implements ProgressListener {
+        private final ProgressListener progressListener;
+        private final long interval;
+        private long lastProgress = -1;
+        private long lastTime;
+
+        ThrottledProgressListener(ProgressListener progressListener, long interval) {
+            this.progressListener = progressListener;
+            this.interval = interval;
+        }
+
+        @Override
+        public void onProgress(long total) {
+            long now = SystemClock.elapsedRealtime();
+            if (total == lastProgress || (lastProgress >= 0 && total < 100 && now - lastTime < interval)) {
+                return;
+            }
+            lastProgress = total;
+            lastTime = now;
+            progressListener.onProgress(total);
+        }
+    }
+
     public interface ProgressListener {
         void onProgress(long total);
     }
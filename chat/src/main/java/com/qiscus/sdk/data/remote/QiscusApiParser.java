@@ -27,19 +27,15 @@ import com.qiscus.sdk.data.model.QiscusChatRoom;
 import com.qiscus.sdk.data.model.QiscusComment;
 import com.qiscus.sdk.data.model.QiscusNonce;
 import com.qiscus.sdk.data.model.QiscusRoomMember;
+import com.qiscus.sdk.util.QiscusIso8601;
 import com.qiscus.sdk.util.QiscusTextUtil;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.Locale;
-import java.util.TimeZone;
 
 /**
  * Created on : February 02, 2017
@@ -48,13 +44,6 @@ import java.util.TimeZone;
  * GitHub     : https://github.com/zetbaitsu
  */
 final class QiscusApiParser {
-    private static DateFormat dateFormat;
-
-    static {
-        dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
-        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-    }
-
     static QiscusNonce parseNonce(JsonElement jsonElement) {
         JsonObject result = jsonElement.getAsJsonObject().get("results").getAsJsonObject();
         return new QiscusNonce(new Date(result.get("expired_at").getAsLong() * 1000L),
@@ -214,11 +203,7 @@ final class QiscusApiParser {
         qiscusComment.setSenderAvatar(jsonComment.get("user_avatar_url").getAsString());
         qiscusComment.setState(QiscusComment.STATE_ON_QISCUS);
 
-        try {
-            qiscusComment.setTime(dateFormat.parse(jsonComment.get("timestamp").getAsString()));
-        } catch (ParseException e) {
-            e.printStackTrace();
-        }
+        qiscusComment.setTime(parseDate(jsonComment.get("timestamp").getAsString()));
 
         if (jsonComment.has("is_deleted")) {
             qiscusComment.setDeleted(jsonComment.get("is_deleted").getAsBoolean());
@@ -267,6 +252,15 @@ final class QiscusApiParser {
         return qiscusComment;
     }
 
+    static Date parseDate(String date) {
+        try {
+            return new Date(QiscusIso8601.parse(date));
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
     private static Pair<Long, Long> getPairedLastState(List<QiscusRoomMember> members) {
         long lastDelivered = Long.MAX_VALUE;
         long lastRead = Long.MAX_VALUE;
@@ -289,7 +283,7 @@ final class QiscusApiParser {
         return Pair.create(lastDelivered, lastRead);
     }
 
-    private static void determineCommentState(QiscusComment comment, List<QiscusRoomMember> members) {
+    static void determineCommentState(QiscusComment comment, List<QiscusRoomMember> members) {
         Pair<Long, Long> lastMemberState = getPairedLastState(members);
         if (comment.getId() > lastMemberState.first) {
             comment.setState(QiscusComment.STATE_ON_QISCUS);
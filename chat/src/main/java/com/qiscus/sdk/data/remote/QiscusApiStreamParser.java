@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.remote;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.qiscus.sdk.data.model.QiscusChatRoom;
+import com.qiscus.sdk.data.model.QiscusComment;
+import com.qiscus.sdk.data.model.QiscusRoomMember;
+import com.qiscus.sdk.util.QiscusTextUtil;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.ResponseBody;
+import rx.Emitter;
+import rx.Observable;
+import rx.functions.Action1;
+
+/**
+ * Streaming decoder of the large list responses (load_comments, sync, search_messages, user_rooms and rooms_info).
+ * Items are decoded straight from the response bytes with {@link JsonReader} and emitted one by one, so the whole
+ * response never has to be held as a json tree. Only small nested values like payload are parsed as tree.
+ */
+final class QiscusApiStreamParser {
+    private static final long ROOM_ID_FROM_COMMENT = -1;
+
+    private QiscusApiStreamParser() {
+
+    }
+
+    /**
+     * Decode results.comments of the response.
+     *
+     * @param responseBody the response
+     * @param roomId       room of the comments, or -1 to read room_id of every comment
+     * @return comments in response order
+     */
+    static Observable<QiscusComment> parseComments(ResponseBody responseBody, long roomId) {
+        return parseResultsArray(responseBody, "comments", (reader, emitter) -> emitter.call(parseComment(reader, roomId)));
+    }
+
+    static Observable<QiscusComment> parseComments(ResponseBody responseBody) {
+        return parseComments(responseBody, ROOM_ID_FROM_COMMENT);
+    }
+
+    /**
+     * Decode results.rooms_info of the response.
+     */
+    static Observable<QiscusChatRoom> parseChatRooms(ResponseBody responseBody) {
+        return parseResultsArray(responseBody, "rooms_info", (reader, emitter) -> emitter.call(parseChatRoom(reader)));
+    }
+
+    private interface ItemReader<T> {
+        void read(JsonReader reader, Action1<T> emitter) throws IOException;
+    }
+
+    private static <T> Observable<T> parseResultsArray(ResponseBody responseBody, String arrayName,
+                                                       ItemReader<T> itemReader) {
+        return Observable.create(subscriber -> {
+            JsonReader reader = new JsonReader(responseBody.charStream());
+            try {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (!"results".equals(reader.nextName())) {
+                        reader.skipValue();
+                        continue;
+                    }
+
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (!arrayName.equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                            reader.skipValue();
+                            continue;
+                        }
+
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            itemReader.read(reader, subscriber::onNext);
+                        }
+                        reader.endArray();
+                    }
+                    reader.endObject();
+                }
+                reader.endObject();
+                subscriber.onCompleted();
+            } catch (Exception e) {
+                subscriber.onError(e);
+            } finally {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                    //Do nothing
+                }
+            }
+        }, Emitter.BackpressureMode.BUFFER);
+    }
+
+    static QiscusComment parseComment(JsonReader reader, long roomId) throws IOException {
+        QiscusComment qiscusComment = new QiscusComment();
+        qiscusComment.setRoomId(roomId);
+        qiscusComment.setState(QiscusComment.STATE_ON_QISCUS);
+        String uniqueId = null;
+        String uniqueTempId = null;
+        JsonElement payload = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+
+            switch (name) {
+                case "id":
+                    qiscusComment.setId(reader.nextLong());
+                    break;
+                case "room_id":
+                    if (roomId == ROOM_ID_FROM_COMMENT) {
+                        qiscusComment.setRoomId(reader.nextLong());
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                case "comment_before_id":
+                    qiscusComment.setCommentBeforeId(reader.nextLong());
+                    break;
+                case "message":
+                    qiscusComment.setMessage(reader.nextString());
+                    break;
+                case "username":
+                    qiscusComment.setSender(reader.nextString());
+                    break;
+                case "email":
+                    qiscusComment.setSenderEmail(reader.nextString());
+                    break;
+                case "user_avatar_url":
+                    qiscusComment.setSenderAvatar(reader.nextString());
+                    break;
+                case "timestamp":
+                    qiscusComment.setTime(QiscusApiParser.parseDate(reader.nextString()));
+                    break;
+                case "is_deleted":
+                    qiscusComment.setDeleted(reader.nextBoolean());
+                    break;
+                case "room_name":
+                    qiscusComment.setRoomName(reader.nextString());
+                    break;
+                case "chat_type":
+                    qiscusComment.setGroupMessage(!"single".equals(reader.nextString()));
+                    break;
+                case "unique_id":
+                    uniqueId = reader.nextString();
+                    break;
+                case "unique_temp_id":
+                    uniqueTempId = reader.nextString();
+                    break;
+                case "type":
+                    qiscusComment.setRawType(reader.nextString());
+                    break;
+                case "payload":
+                    payload = new JsonParser().parse(reader);
+                    break;
+                case "extras":
+                    try {
+                        qiscusComment.setExtras(new JSONObject(new JsonParser().parse(reader).toString()));
+                    } catch (JSONException e) {
+                        e.printStackTrace();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (uniqueId != null) {
+            qiscusComment.setUniqueId(uniqueId);
+        } else if (uniqueTempId != null) {
+            qiscusComment.setUniqueId(uniqueTempId);
+        } else {
+            qiscusComment.setUniqueId(String.valueOf(qiscusComment.getId()));
+        }
+
+        if (qiscusComment.getRawType() != null) {
+            qiscusComment.setExtraPayload(payload == null ? "null" : payload.toString());
+            if (payload != null && payload.isJsonObject()
+                    && (qiscusComment.getType() == QiscusComment.Type.BUTTONS
+                    || qiscusComment.getType() == QiscusComment.Type.REPLY
+                    || qiscusComment.getType() == QiscusComment.Type.CARD)) {
+                JsonObject jsonPayload = payload.getAsJsonObject();
+                if (jsonPayload.has("text")) {
+                    String text = jsonPayload.get("text").getAsString();
+                    if (QiscusTextUtil.isNotBlank(text)) {
+                        qiscusComment.setMessage(text.trim());
+                    }
+                }
+            }
+        }
+
+        return qiscusComment;
+    }
+
+    private static QiscusChatRoom parseChatRoom(JsonReader reader) throws IOException {
+        QiscusChatRoom qiscusChatRoom = new QiscusChatRoom();
+        String rawRoomName = null;
+        QiscusComment lastComment = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+
+            switch (name) {
+                case "id":
+                    qiscusChatRoom.setId(reader.nextLong());
+                    break;
+                case "chat_type":
+                    qiscusChatRoom.setGroup(!"single".equals(reader.nextString()));
+                    break;
+                case "room_name":
+                    qiscusChatRoom.setName(reader.nextString());
+                    break;
+                case "unique_id":
+                    qiscusChatRoom.setUniqueId(reader.nextString());
+                    break;
+                case "raw_room_name":
+                    rawRoomName = reader.nextString();
+                    break;
+                case "options":
+                    try {
+                        qiscusChatRoom.setOptions(new JSONObject(reader.nextString()));
+                    } catch (JSONException ignored) {
+                        //Do nothing
+                    }
+                    break;
+                case "avatar_url":
+                    qiscusChatRoom.setAvatarUrl(reader.nextString());
+                    break;
+                case "unread_count":
+                    qiscusChatRoom.setUnreadCount(reader.nextInt());
+                    break;
+                case "participants":
+                    qiscusChatRoom.setMember(parseMembers(reader));
+                    break;
+                case "last_comment":
+                    lastComment = parseComment(reader, ROOM_ID_FROM_COMMENT);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        qiscusChatRoom.setDistinctId(qiscusChatRoom.isGroup() ? qiscusChatRoom.getUniqueId() : rawRoomName);
+        if (lastComment != null) {
+            lastComment.setRoomId(qiscusChatRoom.getId());
+            if (qiscusChatRoom.getMember() != null) {
+                QiscusApiParser.determineCommentState(lastComment, qiscusChatRoom.getMember());
+            }
+            qiscusChatRoom.setLastComment(lastComment);
+        }
+        return qiscusChatRoom;
+    }
+
+    private static List<QiscusRoomMember> parseMembers(JsonReader reader) throws IOException {
+        List<QiscusRoomMember> members = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            QiscusRoomMember member = new QiscusRoomMember();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+
+                switch (name) {
+                    case "email":
+                        member.setEmail(reader.nextString());
+                        break;
+                    case "avatar_url":
+                        member.setAvatar(reader.nextString());
+                        break;
+                    case "username":
+                        member.setUsername(reader.nextString());
+                        break;
+                    case "last_comment_received_id":
+                        member.setLastDeliveredCommentId(reader.nextLong());
+                        break;
+                    case "last_comment_read_id":
+                        member.setLastReadCommentId(reader.nextLong());
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            members.add(member);
+        }
+        reader.endArray();
+        return members;
+    }
+}
@@ -26,7 +26,10 @@ import com.qiscus.sdk.util.QiscusPushNotificationUtil;
 
 import org.greenrobot.eventbus.EventBus;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import rx.Observable;
 import rx.android.schedulers.AndroidSchedulers;
@@ -45,18 +48,40 @@ public final class QiscusClearCommentsHandler {
     }
 
     public static void handle(ClearCommentsData clearCommentsData) {
-        if (clearCommentsData.getActor().getEmail().equals(Qiscus.getQiscusAccount().getEmail())) {
-            Observable.from(clearCommentsData.getRoomIds())
-                    .doOnNext(roomId -> {
-                        if (Qiscus.getDataStore().deleteCommentsByRoomId(roomId, clearCommentsData.timestamp)) {
-                            EventBus.getDefault().post(new QiscusClearCommentsEvent(roomId, clearCommentsData.timestamp));
-                            QiscusPushNotificationUtil.clearPushNotification(Qiscus.getApps(), roomId);
-                        }
-                    })
-                    .subscribeOn(Schedulers.io())
-                    .observeOn(AndroidSchedulers.mainThread())
-                    .subscribe(roomId -> {
-                    }, QiscusErrorLogger::print);
+        Observable.just(clearCommentsData)
+                .doOnNext(data -> handle(Collections.singletonList(data)))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(data -> {
+                }, QiscusErrorLogger::print);
+    }
+
+    /**
+     * Apply clear events of many rooms at once, comments of every room are deleted up to the newest clear timestamp
+     * of the room in one transaction. Must be called from background thread.
+     */
+    static void handle(List<ClearCommentsData> clearCommentsDataList) {
+        Map<Long, Long> timestampOffsets = new HashMap<>();
+        for (ClearCommentsData clearCommentsData : clearCommentsDataList) {
+            if (!clearCommentsData.getActor().getEmail().equals(Qiscus.getQiscusAccount().getEmail())) {
+                continue;
+            }
+
+            for (long roomId : clearCommentsData.getRoomIds()) {
+                Long timestamp = timestampOffsets.get(roomId);
+                if (timestamp == null || timestamp < clearCommentsData.timestamp) {
+                    timestampOffsets.put(roomId, clearCommentsData.timestamp);
+                }
+            }
+        }
+
+        if (timestampOffsets.isEmpty()) {
+            return;
+        }
+
+        for (long roomId : Qiscus.getDataStore().deleteCommentsByRoomIds(timestampOffsets)) {
+            EventBus.getDefault().post(new QiscusClearCommentsEvent(roomId, timestampOffsets.get(roomId)));
+            QiscusPushNotificationUtil.clearPushNotification(Qiscus.getApps(), roomId);
         }
     }
 
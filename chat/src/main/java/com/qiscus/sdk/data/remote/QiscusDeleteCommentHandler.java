@@ -28,7 +28,11 @@ import com.qiscus.sdk.util.QiscusPushNotificationUtil;
 
 import org.greenrobot.eventbus.EventBus;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import rx.Observable;
 import rx.android.schedulers.AndroidSchedulers;
@@ -47,75 +51,99 @@ public final class QiscusDeleteCommentHandler {
     }
 
     public static void handle(DeletedCommentsData deletedCommentsData) {
-        if (deletedCommentsData.isHardDelete()) {
-            handleHardDelete(deletedCommentsData);
-        } else {
-            handleSoftDelete(deletedCommentsData);
-        }
-    }
-
-    private static void handleSoftDelete(DeletedCommentsData deletedCommentsData) {
-        Observable.from(deletedCommentsData.getDeletedComments())
-                .map(deletedComment -> {
-                    QiscusComment qiscusComment = Qiscus.getDataStore().getComment(deletedComment.getCommentUniqueId());
-                    if (qiscusComment != null) {
-                        qiscusComment.setMessage("This message has been deleted.");
-                        qiscusComment.setRawType("text");
-                        qiscusComment.setDeleted(true);
-
-                        setRoomData(qiscusComment);
-                        QiscusChatRoom chatRoom = Qiscus.getDataStore().getChatRoom(qiscusComment.getRoomId());
-                        qiscusComment.setRoomName(chatRoom.getName());
-                        qiscusComment.setRoomAvatar(chatRoom.getAvatarUrl());
-                        qiscusComment.setGroupMessage(chatRoom.isGroup());
-                    }
-                    return qiscusComment;
-                })
-                .filter(qiscusComment -> qiscusComment != null)
-                .doOnNext(qiscusComment -> {
-                    Qiscus.getDataStore().addOrUpdate(qiscusComment);
-                    Qiscus.getDataStore().deleteLocalPath(qiscusComment.getId());
-
-                    EventBus.getDefault().post(new QiscusCommentDeletedEvent(qiscusComment));
-                })
-                .toList()
-                .doOnNext(comments -> QiscusPushNotificationUtil
-                        .handleDeletedCommentNotification(Qiscus.getApps(), comments, false))
+        Observable.just(deletedCommentsData)
+                .doOnNext(data -> handle(Collections.singletonList(data)))
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(comments -> {
+                .subscribe(data -> {
                 }, QiscusErrorLogger::print);
     }
 
-    private static void handleHardDelete(DeletedCommentsData deletedCommentsData) {
-        Observable.from(deletedCommentsData.getDeletedComments())
-                .map(deletedComment -> {
-                    QiscusComment qiscusComment = Qiscus.getDataStore().getComment(deletedComment.getCommentUniqueId());
-                    if (qiscusComment != null) {
-                        setRoomData(qiscusComment);
-                    }
-
-                    return qiscusComment;
-                })
-                .filter(qiscusComment -> qiscusComment != null)
-                .doOnNext(qiscusComment -> {
-                    // Update chaining id and before id
-                    QiscusComment commentAfter = Qiscus.getDataStore().getCommentByBeforeId(qiscusComment.getId());
-                    if (commentAfter != null) {
-                        commentAfter.setCommentBeforeId(qiscusComment.getCommentBeforeId());
-                        Qiscus.getDataStore().addOrUpdate(commentAfter);
-                    }
-
-                    Qiscus.getDataStore().delete(qiscusComment);
-                    EventBus.getDefault().post(new QiscusCommentDeletedEvent(qiscusComment, true));
-                })
-                .toList()
-                .doOnNext(comments -> QiscusPushNotificationUtil
-                        .handleDeletedCommentNotification(Qiscus.getApps(), comments, true))
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(comments -> {
-                }, QiscusErrorLogger::print);
+    /**
+     * Apply deleted comments of many events at once, soft deleted comments are written as one batch and hard
+     * deleted comments are removed in one transaction. Must be called from background thread.
+     */
+    static void handle(List<DeletedCommentsData> deletedCommentsDataList) {
+        List<DeletedCommentsData.DeletedComment> softDeletedComments = new ArrayList<>();
+        List<DeletedCommentsData.DeletedComment> hardDeletedComments = new ArrayList<>();
+        for (DeletedCommentsData deletedCommentsData : deletedCommentsDataList) {
+            if (deletedCommentsData.isHardDelete()) {
+                hardDeletedComments.addAll(deletedCommentsData.getDeletedComments());
+            } else {
+                softDeletedComments.addAll(deletedCommentsData.getDeletedComments());
+            }
+        }
+
+        if (!softDeletedComments.isEmpty()) {
+            handleSoftDelete(softDeletedComments);
+        }
+        if (!hardDeletedComments.isEmpty()) {
+            handleHardDelete(hardDeletedComments);
+        }
+    }
+
+    private static void handleSoftDelete(List<DeletedCommentsData.DeletedComment> deletedComments) {
+        List<QiscusComment> comments = new ArrayList<>();
+        for (DeletedCommentsData.DeletedComment deletedComment : deletedComments) {
+            QiscusComment qiscusComment = Qiscus.getDataStore().getComment(deletedComment.getCommentUniqueId());
+            if (qiscusComment != null) {
+                qiscusComment.setMessage("This message has been deleted.");
+                qiscusComment.setRawType("text");
+                qiscusComment.setDeleted(true);
+                setRoomData(qiscusComment);
+                comments.add(qiscusComment);
+            }
+        }
+
+        if (comments.isEmpty()) {
+            return;
+        }
+
+        Qiscus.getDataStore().addOrUpdate(comments);
+        for (QiscusComment qiscusComment : comments) {
+            Qiscus.getDataStore().deleteLocalPath(qiscusComment.getId());
+            EventBus.getDefault().post(new QiscusCommentDeletedEvent(qiscusComment));
+        }
+        QiscusPushNotificationUtil.handleDeletedCommentNotification(Qiscus.getApps(), comments, false);
+    }
+
+    private static void handleHardDelete(List<DeletedCommentsData.DeletedComment> deletedComments) {
+        Map<Long, QiscusComment> comments = new LinkedHashMap<>();
+        for (DeletedCommentsData.DeletedComment deletedComment : deletedComments) {
+            QiscusComment qiscusComment = Qiscus.getDataStore().getComment(deletedComment.getCommentUniqueId());
+            if (qiscusComment != null) {
+                setRoomData(qiscusComment);
+                comments.put(qiscusComment.getId(), qiscusComment);
+            }
+        }
+
+        if (comments.isEmpty()) {
+            return;
+        }
+
+        // Update chaining id and before id, skipping comments deleted in the same batch
+        List<QiscusComment> commentsAfter = new ArrayList<>();
+        for (QiscusComment qiscusComment : comments.values()) {
+            QiscusComment commentAfter = Qiscus.getDataStore().getCommentByBeforeId(qiscusComment.getId());
+            if (commentAfter == null || comments.containsKey(commentAfter.getId())) {
+                continue;
+            }
+
+            long commentBeforeId = qiscusComment.getCommentBeforeId();
+            while (comments.containsKey(commentBeforeId)) {
+                commentBeforeId = comments.get(commentBeforeId).getCommentBeforeId();
+            }
+            commentAfter.setCommentBeforeId(commentBeforeId);
+            commentsAfter.add(commentAfter);
+        }
+
+        Qiscus.getDataStore().addOrUpdate(commentsAfter);
+        List<QiscusComment> deleted = new ArrayList<>(comments.values());
+        Qiscus.getDataStore().delete(deleted);
+        for (QiscusComment qiscusComment : deleted) {
+            EventBus.getDefault().post(new QiscusCommentDeletedEvent(qiscusComment, true));
+        }
+        QiscusPushNotificationUtil.handleDeletedCommentNotification(Qiscus.getApps(), deleted, true);
     }
 
     private static void setRoomData(QiscusComment qiscusComment) {
@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.remote;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Environment;
+
+import com.qiscus.sdk.Qiscus;
+import com.qiscus.sdk.util.QiscusErrorLogger;
+import com.qiscus.sdk.util.QiscusFileUtil;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import rx.Emitter;
+import rx.Observable;
+import rx.exceptions.OnErrorThrowable;
+
+/**
+ * Download cache addressed by the hash of the url. Concurrent downloads of the same url share one transfer,
+ * interrupted downloads are kept as partial files and continued with a Range request, and completed downloads
+ * are reused by later requests of the same url while the file still exists. Completed files stay where they were
+ * always downloaded to, so local paths in FilesTable keep working, their size is bounded by the storage retention.
+ * Partial files are bounded by size and evicted least recently written first.
+ */
+final class QiscusDownloadCache {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MAX_PARTIAL_SIZE = 100 * 1024 * 1024;
+
+    private final OkHttpClient httpClient;
+    private final SharedPreferences index;
+    private final Map<String, InFlight> inFlights = new HashMap<>();
+
+    QiscusDownloadCache(OkHttpClient httpClient) {
+        this.httpClient = httpClient;
+        index = Qiscus.getApps().getSharedPreferences("downloads.cache", Context.MODE_PRIVATE);
+    }
+
+    Observable<File> download(String url, String fileName, QiscusApi.ProgressListener progressListener) {
+        return Observable.create(subscriber -> {
+            String key = hash(url);
+            File cachedFile = getCachedFile(key);
+            if (cachedFile != null) {
+                progressListener.onProgress(100);
+                subscriber.onNext(cachedFile);
+                subscriber.onCompleted();
+                return;
+            }
+
+            InFlight inFlight;
+            boolean owner = false;
+            synchronized (inFlights) {
+                inFlight = inFlights.get(key);
+                if (inFlight == null) {
+                    inFlight = new InFlight();
+                    inFlights.put(key, inFlight);
+                    owner = true;
+                }
+                inFlight.addListener(progressListener);
+            }
+
+            if (owner) {
+                try {
+                    inFlight.file = fetch(url, fileName, key, inFlight, true);
+                    index.edit().putString(key, inFlight.file.getAbsolutePath()).apply();
+                } catch (Exception e) {
+                    inFlight.error = e;
+                } finally {
+                    synchronized (inFlights) {
+                        inFlights.remove(key);
+                    }
+                    inFlight.done.countDown();
+                }
+            } else {
+                try {
+                    inFlight.done.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    inFlight.removeListener(progressListener);
+                    return;
+                }
+            }
+
+            if (inFlight.error != null) {
+                subscriber.onError(OnErrorThrowable.addValueAsLastCause(inFlight.error, url));
+            } else {
+                subscriber.onNext(inFlight.file);
+                subscriber.onCompleted();
+            }
+        }, Emitter.BackpressureMode.BUFFER);
+    }
+
+    private File getCachedFile(String key) {
+        String path = index.getString(key, null);
+        if (path == null) {
+            return null;
+        }
+
+        File file = new File(path);
+        if (file.exists() && file.length() > 0) {
+            return file;
+        }
+        index.edit().remove(key).apply();
+        return null;
+    }
+
+    private File fetch(String url, String fileName, String key, InFlight inFlight, boolean allowRange)
+            throws IOException {
+        File partialFile = new File(getPartialDir(), key);
+        long downloaded = allowRange && partialFile.exists() ? partialFile.length() : 0;
+
+        Request.Builder requestBuilder = new Request.Builder().url(url);
+        if (downloaded > 0) {
+            requestBuilder.header("Range", "bytes=" + downloaded + "-");
+        }
+
+        Response response = httpClient.newCall(requestBuilder.build()).execute();
+        try {
+            if (response.code() == 416 && downloaded > 0) { //Partial file is stale, download from beginning
+                partialFile.delete();
+                return fetch(url, fileName, key, inFlight, false);
+            }
+            if (!response.isSuccessful()) {
+                throw new IOException("Failed to download " + url + ", response code " + response.code());
+            }
+
+            boolean append = downloaded > 0 && response.code() == 206;
+            if (!append) {
+                downloaded = 0;
+            }
+
+            ResponseBody responseBody = response.body();
+            long contentLength = responseBody.contentLength();
+            long fileLength = contentLength < 0 ? -1 : downloaded + contentLength;
+            writeToFile(responseBody.source(), partialFile, append, downloaded, fileLength, inFlight);
+        } finally {
+            response.close();
+        }
+
+        File output = new File(QiscusFileUtil.generateFilePath(fileName));
+        if (!partialFile.renameTo(output)) {
+            throw new IOException("Failed to move downloaded file to " + output.getPath());
+        }
+        return output;
+    }
+
+    private void writeToFile(BufferedSource source, File partialFile, boolean append, long downloaded,
+                             long fileLength, InFlight inFlight) throws IOException {
+        trimPartialFiles();
+        FileOutputStream outputStream = new FileOutputStream(partialFile, append);
+        try {
+            FileChannel channel = outputStream.getChannel();
+            byte[] bytes = new byte[BUFFER_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            long total = downloaded;
+            int count;
+            while ((count = source.read(bytes)) != -1) {
+                buffer.clear();
+                buffer.limit(count);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                total += count;
+                if (fileLength > 0) {
+                    inFlight.onProgress(total * 100 / fileLength);
+                }
+            }
+            channel.force(false);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private void trimPartialFiles() {
+        File[] partialFiles = getPartialDir().listFiles();
+        if (partialFiles == null) {
+            return;
+        }
+
+        long totalSize = 0;
+        for (File partialFile : partialFiles) {
+            totalSize += partialFile.length();
+        }
+        if (totalSize <= MAX_PARTIAL_SIZE) {
+            return;
+        }
+
+        Arrays.sort(partialFiles, (lhs, rhs) -> lhs.lastModified() < rhs.lastModified() ? -1
+                : (lhs.lastModified() == rhs.lastModified() ? 0 : 1));
+        for (File partialFile : partialFiles) {
+            if (totalSize <= MAX_PARTIAL_SIZE) {
+                break;
+            }
+            synchronized (inFlights) {
+                if (inFlights.containsKey(partialFile.getName())) {
+                    continue;
+                }
+            }
+            totalSize -= partialFile.length();
+            if (!partialFile.delete()) {
+                QiscusErrorLogger.print("DownloadCache", "Can not delete " + partialFile.getPath());
+            }
+        }
+    }
+
+    private static File getPartialDir() {
+        File dir = new File(Environment.getExternalStorageDirectory().getPath(),
+                QiscusFileUtil.FILES_PATH + File.separator + ".partial");
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return dir;
+    }
+
+    private static String hash(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(url.getBytes());
+            StringBuilder hash = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hash.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return String.valueOf(url.hashCode());
+        }
+    }
+
+    private static class InFlight {
+        private final List<QiscusApi.ProgressListener> listeners = new ArrayList<>();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private long lastProgress = -1;
+        private volatile File file;
+        private volatile Exception error;
+
+        private synchronized void addListener(QiscusApi.ProgressListener progressListener) {
+            listeners.add(progressListener);
+        }
+
+        private synchronized void removeListener(QiscusApi.ProgressListener progressListener) {
+            listeners.remove(progressListener);
+        }
+
+        private void onProgress(long progress) {
+            if (progress == lastProgress) {
+                return;
+            }
+            lastProgress = progress;
+            List<QiscusApi.ProgressListener> progressListeners;
+            synchronized (this) {
+                progressListeners = new ArrayList<>(listeners);
+            }
+            for (QiscusApi.ProgressListener progressListener : progressListeners) {
+                progressListener.onProgress(progress);
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.remote;
+
+import com.qiscus.sdk.Qiscus;
+import com.qiscus.sdk.data.model.QiscusHttpConfig;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * SDK wide HTTP engine. Qiscus api, link previews and image loading derive their clients from the same
+ * {@link OkHttpClient}, so they share one connection pool, dispatcher and disk response cache, and HTTP/2
+ * connections are multiplexed across them.
+ */
+public enum QiscusHttpEngine {
+    INSTANCE;
+
+    private OkHttpClient httpClient;
+    private QiscusHttpMetrics metrics;
+
+    public static QiscusHttpEngine getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized OkHttpClient getClient() {
+        if (httpClient == null) {
+            httpClient = createClient(Qiscus.getChatConfig().getHttpConfig());
+        }
+        return httpClient;
+    }
+
+    private OkHttpClient createClient(QiscusHttpConfig httpConfig) {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectTimeout(httpConfig.getConnectTimeout(), TimeUnit.SECONDS)
+                .readTimeout(httpConfig.getReadTimeout(), TimeUnit.SECONDS)
+                .writeTimeout(httpConfig.getReadTimeout(), TimeUnit.SECONDS)
+                .connectionPool(new ConnectionPool(httpConfig.getMaxIdleConnections(),
+                        httpConfig.getKeepAliveDuration(), TimeUnit.SECONDS))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+
+        if (httpConfig.getCacheSize() > 0) {
+            builder.cache(new Cache(new File(Qiscus.getApps().getCacheDir(), "qiscus_http"),
+                    httpConfig.getCacheSize()));
+        }
+
+        if (httpConfig.isEnableMetrics()) {
+            metrics = new QiscusHttpMetrics();
+            builder.eventListenerFactory(metrics);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * @return metrics of the shared client, or null when {@link QiscusHttpConfig#isEnableMetrics()} is false
+     */
+    public synchronized QiscusHttpMetrics getMetrics() {
+        getClient();
+        return metrics;
+    }
+}
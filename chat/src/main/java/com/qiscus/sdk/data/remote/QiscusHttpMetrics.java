@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.remote;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.HttpUrl;
+import okhttp3.Protocol;
+
+/**
+ * Collects DNS, connect, TLS, time to first byte and total time of every call made by the shared HTTP client,
+ * aggregated per endpoint (host and path without query).
+ */
+public final class QiscusHttpMetrics implements EventListener.Factory {
+    private final Map<String, EndpointMetrics> endpoints = new HashMap<>();
+
+    QiscusHttpMetrics() {
+
+    }
+
+    @Override
+    public EventListener create(Call call) {
+        return new CallListener(call.request().url());
+    }
+
+    /**
+     * @return snapshot of metrics of every endpoint called so far
+     */
+    public List<EndpointMetrics> getEndpointMetrics() {
+        List<EndpointMetrics> snapshot = new ArrayList<>();
+        synchronized (endpoints) {
+            for (EndpointMetrics metrics : endpoints.values()) {
+                snapshot.add(metrics.copy());
+            }
+        }
+        return snapshot;
+    }
+
+    public void reset() {
+        synchronized (endpoints) {
+            endpoints.clear();
+        }
+    }
+
+    private void record(HttpUrl url, CallListener call, boolean failed) {
+        String endpoint = url.host() + url.encodedPath();
+        synchronized (endpoints) {
+            EndpointMetrics metrics = endpoints.get(endpoint);
+            if (metrics == null) {
+                metrics = new EndpointMetrics(endpoint);
+                endpoints.put(endpoint, metrics);
+            }
+            metrics.add(call, failed);
+        }
+    }
+
+    private class CallListener extends EventListener {
+        private final HttpUrl url;
+        private long callStart;
+        private long dnsStart;
+        private long dnsTime;
+        private long connectStart;
+        private long connectTime;
+        private long secureConnectStart;
+        private long secureConnectTime;
+        private long firstByteTime;
+
+        private CallListener(HttpUrl url) {
+            this.url = url;
+        }
+
+        @Override
+        public void callStart(Call call) {
+            callStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            dnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            dnsTime += System.nanoTime() - dnsStart;
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            secureConnectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            secureConnectTime += System.nanoTime() - secureConnectStart;
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            connectTime += System.nanoTime() - connectStart;
+        }
+
+        @Override
+        public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol,
+                                  IOException ioe) {
+            connectTime += System.nanoTime() - connectStart;
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            if (firstByteTime == 0) {
+                firstByteTime = System.nanoTime() - callStart;
+            }
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            record(url, this, false);
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            record(url, this, true);
+        }
+    }
+
+    public static class EndpointMetrics {
+        private static final long NANOS_PER_MILLI = 1000000L;
+
+        private final String endpoint;
+        private int callCount;
+        private int failedCount;
+        private int connectionCount;
+        private long totalDnsTime;
+        private long totalConnectTime;
+        private long totalSecureConnectTime;
+        private long totalFirstByteTime;
+        private long totalCallTime;
+
+        private EndpointMetrics(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        private void add(CallListener call, boolean failed) {
+            callCount++;
+            if (failed) {
+                failedCount++;
+            }
+            if (call.connectTime > 0) {
+                connectionCount++;
+            }
+            totalDnsTime += call.dnsTime;
+            totalConnectTime += call.connectTime;
+            totalSecureConnectTime += call.secureConnectTime;
+            totalFirstByteTime += call.firstByteTime;
+            totalCallTime += System.nanoTime() - call.callStart;
+        }
+
+        private EndpointMetrics copy() {
+            EndpointMetrics copy = new EndpointMetrics(endpoint);
+            copy.callCount = callCount;
+            copy.failedCount = failedCount;
+            copy.connectionCount = connectionCount;
+            copy.totalDnsTime = totalDnsTime;
+            copy.totalConnectTime = totalConnectTime;
+            copy.totalSecureConnectTime = totalSecureConnectTime;
+            copy.totalFirstByteTime = totalFirstByteTime;
+            copy.totalCallTime = totalCallTime;
+            return copy;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public int getCallCount() {
+            return callCount;
+        }
+
+        public int getFailedCount() {
+            return failedCount;
+        }
+
+        /**
+         * @return number of calls that opened a new connection instead of reusing one from the pool
+         */
+        public int getConnectionCount() {
+            return connectionCount;
+        }
+
+        public long getAverageDnsTime() {
+            return average(totalDnsTime);
+        }
+
+        public long getAverageConnectTime() {
+            return average(totalConnectTime);
+        }
+
+        public long getAverageSecureConnectTime() {
+            return average(totalSecureConnectTime);
+        }
+
+        public long getAverageFirstByteTime() {
+            return average(totalFirstByteTime);
+        }
+
+        public long getAverageCallTime() {
+            return average(totalCallTime);
+        }
+
+        private long average(long totalNanos) {
+            return callCount == 0 ? 0 : totalNanos / callCount / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public String toString() {
+            return endpoint + " calls=" + callCount + " failed=" + failedCount + " connections=" + connectionCount
+                    + " dns=" + getAverageDnsTime() + "ms connect=" + getAverageConnectTime()
+                    + "ms tls=" + getAverageSecureConnectTime() + "ms ttfb=" + getAverageFirstByteTime()
+                    + "ms total=" + getAverageCallTime() + "ms";
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.remote;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reference counted registry of the mqtt topics the app listens to. Many rooms, presenters and fragments can listen
+ * to the same topic, it is only subscribed by the first listener and unsubscribed when the last listener is gone.
+ * The registry also knows every active topic, so all of them can be restored in one batch after reconnect.
+ */
+public final class QiscusMqttSubscriptions {
+    private final Map<String, Integer> subscriptions = new LinkedHashMap<>();
+
+    QiscusMqttSubscriptions() {
+
+    }
+
+    /**
+     * Add one listener to every topic.
+     *
+     * @return topics which have no listener before, they need to be subscribed
+     */
+    synchronized List<String> acquire(String... topics) {
+        List<String> newTopics = new ArrayList<>();
+        for (String topic : topics) {
+            Integer count = subscriptions.get(topic);
+            if (count == null) {
+                newTopics.add(topic);
+                subscriptions.put(topic, 1);
+            } else {
+                subscriptions.put(topic, count + 1);
+            }
+        }
+        return newTopics;
+    }
+
+    /**
+     * Remove one listener from every topic.
+     *
+     * @return topics which have no listener anymore, they need to be unsubscribed
+     */
+    synchronized List<String> release(String... topics) {
+        List<String> unusedTopics = new ArrayList<>();
+        for (String topic : topics) {
+            Integer count = subscriptions.get(topic);
+            if (count == null) {
+                continue;
+            }
+            if (count <= 1) {
+                subscriptions.remove(topic);
+                unusedTopics.add(topic);
+            } else {
+                subscriptions.put(topic, count - 1);
+            }
+        }
+        return unusedTopics;
+    }
+
+    synchronized List<String> getTopics() {
+        return new ArrayList<>(subscriptions.keySet());
+    }
+
+    /**
+     * @return every active topic with its number of listeners
+     */
+    public synchronized Map<String, Integer> getSubscriptions() {
+        return new LinkedHashMap<>(subscriptions);
+    }
+
+    synchronized void clear() {
+        subscriptions.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "QiscusMqttSubscriptions" + subscriptions;
+    }
+}
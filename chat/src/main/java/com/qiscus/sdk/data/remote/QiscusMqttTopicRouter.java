@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.remote;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dispatches inbound mqtt messages to typed handlers. Topics are matched and parsed in place by position, so
+ * routing a message does not split strings or compile regex, only the values passed to handlers are allocated.
+ * Built in topics are:
+ * <ul>
+ * <li>{token}/c new comment</li>
+ * <li>{token}/n notification event</li>
+ * <li>r/{roomId}/{roomId}/{user}/t typing, r/../d delivered and r/../r read receipt</li>
+ * <li>u/{user}/s user status</li>
+ * </ul>
+ * Other topics are passed to the handlers registered with {@link #addHandler(String, TopicHandler)}.
+ */
+public final class QiscusMqttTopicRouter {
+
+    /**
+     * Handler of built in topics, messages of the current user are filtered out before they reach this listener.
+     */
+    interface Listener {
+        void onComment(String message);
+
+        void onNotification(String message);
+
+        void onTyping(long roomId, String user, boolean typing);
+
+        void onDelivered(long roomId, String user, long commentId, String commentUniqueId);
+
+        void onRead(long roomId, String user, long commentId, String commentUniqueId);
+
+        void onUserStatus(String user, boolean online, long lastActive);
+    }
+
+    public interface TopicHandler {
+        void onMessage(String topic, String message);
+    }
+
+    private final Listener listener;
+    private final Map<String, TopicHandler> customHandlers = new ConcurrentHashMap<>();
+    private volatile String token;
+    private volatile String email;
+
+    QiscusMqttTopicRouter(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Set account of the connection, called once at connect time.
+     */
+    void setAccount(String token, String email) {
+        this.token = token;
+        this.email = email;
+    }
+
+    /**
+     * Handle messages of the topic filter, + and # wildcards are supported.
+     *
+     * @return false if the handler replaced another handler of the topic filter
+     */
+    public boolean addHandler(String topicFilter, TopicHandler handler) {
+        return customHandlers.put(topicFilter, handler) == null;
+    }
+
+    /**
+     * @return true if there was a handler of the topic filter
+     */
+    public boolean removeHandler(String topicFilter) {
+        return customHandlers.remove(topicFilter) != null;
+    }
+
+    /**
+     * @return true if there is handler for the topic
+     */
+    public boolean route(String topic, String message) {
+        int length = topic.length();
+        if (length < 3) {
+            return routeCustom(topic, message);
+        }
+
+        String token = this.token;
+        if (token != null && length == token.length() + 2 && topic.charAt(length - 2) == '/'
+                && topic.startsWith(token)) {
+            char type = topic.charAt(length - 1);
+            if (type == 'c') {
+                listener.onComment(message);
+                return true;
+            } else if (type == 'n') {
+                listener.onNotification(message);
+                return true;
+            }
+        }
+
+        char prefix = topic.charAt(0);
+        if (topic.charAt(1) == '/' && topic.charAt(length - 2) == '/') {
+            if (prefix == 'r' && routeRoom(topic, message)) {
+                return true;
+            } else if (prefix == 'u' && topic.charAt(length - 1) == 's' && routeUserStatus(topic, message)) {
+                return true;
+            }
+        }
+
+        return routeCustom(topic, message);
+    }
+
+    // r/{roomId}/{roomId}/{user}/{t|d|r}
+    private boolean routeRoom(String topic, String message) {
+        int length = topic.length();
+        char type = topic.charAt(length - 1);
+        if (type != 't' && type != 'd' && type != 'r') {
+            return false;
+        }
+
+        int roomIdEnd = topic.indexOf('/', 2);
+        if (roomIdEnd < 0) {
+            return false;
+        }
+        long roomId = parseLong(topic, 2, roomIdEnd);
+        int userStart = topic.indexOf('/', roomIdEnd + 1) + 1;
+        int userEnd = length - 2;
+        if (roomId < 0 || userStart <= 0 || userStart >= userEnd) {
+            return false;
+        }
+        if (isMe(topic, userStart, userEnd)) {
+            return true;
+        }
+
+        String user = topic.substring(userStart, userEnd);
+        if (type == 't') {
+            listener.onTyping(roomId, user, "1".equals(message));
+            return true;
+        }
+
+        int separator = message.indexOf(':');
+        if (separator < 0) {
+            return false;
+        }
+        long commentId = parseLong(message, 0, separator);
+        if (commentId < 0) {
+            return false;
+        }
+        String commentUniqueId = message.substring(separator + 1);
+        if (type == 'd') {
+            listener.onDelivered(roomId, user, commentId, commentUniqueId);
+        } else {
+            listener.onRead(roomId, user, commentId, commentUniqueId);
+        }
+        return true;
+    }
+
+    // u/{user}/s with message {1|0}:{timestamp}
+    private boolean routeUserStatus(String topic, String message) {
+        int userEnd = topic.length() - 2;
+        if (userEnd <= 2) {
+            return false;
+        }
+        if (isMe(topic, 2, userEnd)) {
+            return true;
+        }
+
+        int separator = message.indexOf(':');
+        if (separator < 0) {
+            return false;
+        }
+        // The timestamp may be in higher precision, only the first 13 digits are millis
+        long lastActive = parseLong(message, separator + 1, Math.min(message.length(), separator + 14));
+        listener.onUserStatus(topic.substring(2, userEnd), message.charAt(0) == '1', lastActive);
+        return true;
+    }
+
+    private boolean routeCustom(String topic, String message) {
+        if (customHandlers.isEmpty()) {
+            return false;
+        }
+
+        boolean handled = false;
+        for (Map.Entry<String, TopicHandler> entry : customHandlers.entrySet()) {
+            if (matches(entry.getKey(), topic)) {
+                entry.getValue().onMessage(topic, message);
+                handled = true;
+            }
+        }
+        return handled;
+    }
+
+    private boolean isMe(String topic, int start, int end) {
+        String email = this.email;
+        return email != null && end - start == email.length() && topic.regionMatches(start, email, 0, email.length());
+    }
+
+    /**
+     * Match topic against mqtt topic filter.
+     */
+    static boolean matches(String topicFilter, String topic) {
+        int filterLength = topicFilter.length();
+        int topicLength = topic.length();
+        int i = 0;
+        int j = 0;
+        while (i < filterLength) {
+            char c = topicFilter.charAt(i);
+            if (c == '#') {
+                return true;
+            }
+            if (c == '+') {
+                while (j < topicLength && topic.charAt(j) != '/') {
+                    j++;
+                }
+                i++;
+                continue;
+            }
+            if (j >= topicLength || topic.charAt(j) != c) {
+                // "a/#" also matches "a"
+                return j == topicLength && c == '/' && i + 2 == filterLength && topicFilter.charAt(i + 1) == '#';
+            }
+            i++;
+            j++;
+        }
+        return j == topicLength;
+    }
+
+    /**
+     * @return the number or -1 if the region is not a number
+     */
+    private static long parseLong(String value, int start, int end) {
+        if (start >= end) {
+            return -1;
+        }
+        long result = 0;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.remote;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.os.SystemClock;
+import android.support.annotation.RestrictTo;
+
+import com.qiscus.sdk.Qiscus;
+import com.qiscus.sdk.data.model.QiscusComment;
+import com.qiscus.sdk.event.QiscusCommentReceivedEvent;
+import com.qiscus.sdk.event.QiscusCommentResendEvent;
+import com.qiscus.sdk.util.QiscusAndroidUtil;
+import com.qiscus.sdk.util.QiscusErrorLogger;
+
+import org.greenrobot.eventbus.EventBus;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+
+import retrofit2.HttpException;
+import rx.Observable;
+import rx.Subscription;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.schedulers.Schedulers;
+
+/**
+ * Sends pending comments stored in the local database. The outbox wakes up when connectivity comes back, when mqtt
+ * is connected and when a comment is enqueued, then keeps draining until no pending comment is left. Text comments
+ * of the same room are sent one after another to keep their order, while comments of different rooms are sent in
+ * parallel. Retrying is safe because the server deduplicates comments by unique_temp_id. Failed comments are
+ * retried with exponential backoff.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public enum QiscusOutbox {
+    INSTANCE;
+    private static final int MAX_IN_FLIGHT = 4;
+    private static final long BASE_RETRY_DELAY = 1000;
+    private static final long MAX_RETRY_DELAY = 60000;
+
+    private final Map<String, InFlight> inFlights = new HashMap<>();
+    private final Map<String, Retry> retries = new HashMap<>();
+    private ScheduledFuture<?> scheduledDrain;
+    private long scheduledDrainTime;
+
+    private long drainStartTime;
+    private long lastDrainDuration;
+    private long sentCount;
+    private long failedCount;
+    private long retryCount;
+    private int peakInFlight;
+
+    QiscusOutbox() {
+        Qiscus.getApps().registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (QiscusAndroidUtil.isNetworkAvailable()) {
+                    retryNow();
+                }
+            }
+        }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    public static QiscusOutbox getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Wake up the outbox to send every pending comment.
+     */
+    public void wake() {
+        scheduleDrain(0);
+    }
+
+    /**
+     * Add comment that failed to be sent, it will be retried after the backoff delay.
+     */
+    public void enqueue(QiscusComment qiscusComment) {
+        synchronized (this) {
+            if (!retries.containsKey(qiscusComment.getUniqueId())) {
+                Retry retry = new Retry();
+                retry.attempt = 1;
+                retry.nextAttemptTime = SystemClock.elapsedRealtime() + BASE_RETRY_DELAY;
+                retries.put(qiscusComment.getUniqueId(), retry);
+            }
+        }
+        wake();
+    }
+
+    /**
+     * Retry every pending comment now without waiting the backoff, e.g. when network is available again.
+     */
+    public void retryNow() {
+        synchronized (this) {
+            for (Retry retry : retries.values()) {
+                retry.nextAttemptTime = 0;
+            }
+        }
+        wake();
+    }
+
+    public void cancel(QiscusComment qiscusComment) {
+        InFlight inFlight;
+        synchronized (this) {
+            inFlight = inFlights.remove(qiscusComment.getUniqueId());
+            retries.remove(qiscusComment.getUniqueId());
+        }
+        if (inFlight != null && inFlight.subscription != null && !inFlight.subscription.isUnsubscribed()) {
+            inFlight.subscription.unsubscribe();
+        }
+        if (inFlight != null && inFlight.attachment) {
+            QiscusTransferManager.getInstance().cancel(qiscusComment);
+        }
+    }
+
+    private synchronized void scheduleDrain(long delay) {
+        long drainTime = SystemClock.elapsedRealtime() + delay;
+        if (scheduledDrain != null && !scheduledDrain.isDone()) {
+            if (scheduledDrainTime <= drainTime) {
+                return;
+            }
+            scheduledDrain.cancel(false);
+        }
+        scheduledDrainTime = drainTime;
+        scheduledDrain = QiscusAndroidUtil.runOnBackgroundThread(this::drain, delay);
+    }
+
+    private void drain() {
+        if (!Qiscus.hasSetupUser()) {
+            return;
+        }
+
+        List<QiscusComment> pendingComments = Qiscus.getDataStore().getPendingComments();
+        long now = SystemClock.elapsedRealtime();
+        long nextAttemptTime = Long.MAX_VALUE;
+        List<InFlight> toSend = new ArrayList<>();
+        synchronized (this) {
+            scheduledDrain = null;
+            if (pendingComments.isEmpty() && inFlights.isEmpty()) {
+                if (drainStartTime > 0) {
+                    lastDrainDuration = now - drainStartTime;
+                    drainStartTime = 0;
+                }
+                return;
+            }
+            if (drainStartTime == 0) {
+                drainStartTime = now;
+            }
+
+            Set<Long> busyRooms = new HashSet<>();
+            for (InFlight inFlight : inFlights.values()) {
+                if (!inFlight.attachment) {
+                    busyRooms.add(inFlight.roomId);
+                }
+            }
+
+            for (QiscusComment qiscusComment : pendingComments) {
+                String uniqueId = qiscusComment.getUniqueId();
+                boolean attachment = qiscusComment.isAttachment();
+                if (inFlights.containsKey(uniqueId) || (!attachment && !busyRooms.add(qiscusComment.getRoomId()))) {
+                    continue;
+                }
+
+                Retry retry = retries.get(uniqueId);
+                if (retry != null && retry.nextAttemptTime > now) {
+                    nextAttemptTime = Math.min(nextAttemptTime, retry.nextAttemptTime);
+                    continue;
+                }
+
+                if (!attachment && countTextInFlight() >= MAX_IN_FLIGHT) {
+                    continue;
+                }
+
+                InFlight inFlight = new InFlight();
+                inFlight.qiscusComment = qiscusComment;
+                inFlight.roomId = qiscusComment.getRoomId();
+                inFlight.attachment = attachment;
+                inFlights.put(uniqueId, inFlight);
+                toSend.add(inFlight);
+                peakInFlight = Math.max(peakInFlight, inFlights.size());
+                if (retry != null) {
+                    retryCount++;
+                }
+            }
+        }
+
+        // Only send what this drain claimed, an overlapping drain may already be sending the other in flights
+        for (InFlight inFlight : toSend) {
+            QiscusComment qiscusComment = inFlight.qiscusComment;
+            Subscription subscription = inFlight.attachment ? sendFile(qiscusComment) : sendComment(qiscusComment);
+            synchronized (this) {
+                if (inFlights.get(qiscusComment.getUniqueId()) == inFlight) {
+                    inFlight.subscription = subscription;
+                }
+            }
+        }
+
+        if (nextAttemptTime != Long.MAX_VALUE) {
+            scheduleDrain(Math.max(0, nextAttemptTime - now));
+        }
+    }
+
+    private int countTextInFlight() {
+        int count = 0;
+        for (InFlight inFlight : inFlights.values()) {
+            if (!inFlight.attachment) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Subscription sendComment(QiscusComment qiscusComment) {
+        qiscusComment.setState(QiscusComment.STATE_SENDING);
+        Qiscus.getDataStore().addOrUpdate(qiscusComment);
+        EventBus.getDefault().post(new QiscusCommentResendEvent(qiscusComment));
+
+        return send(qiscusComment, QiscusApi.getInstance().postComment(qiscusComment));
+    }
+
+    private Subscription sendFile(QiscusComment qiscusComment) {
+        qiscusComment.setState(QiscusComment.STATE_SENDING);
+        Qiscus.getDataStore().addOrUpdate(qiscusComment);
+
+        if (qiscusComment.getAttachmentUri().toString().startsWith("http")) { //We forward file message
+            qiscusComment.setDownloading(true);
+            qiscusComment.setProgress(100);
+            EventBus.getDefault().post(new QiscusCommentResendEvent(qiscusComment));
+            return send(qiscusComment, QiscusApi.getInstance().postComment(qiscusComment));
+        }
+
+        File file = new File(qiscusComment.getAttachmentUri().toString());
+        if (!file.exists()) { //File have been removed, so we can not upload it anymore
+            qiscusComment.setDownloading(false);
+            qiscusComment.setState(QiscusComment.STATE_FAILED);
+            Qiscus.getDataStore().addOrUpdate(qiscusComment);
+            EventBus.getDefault().post(new QiscusCommentResendEvent(qiscusComment));
+            synchronized (this) {
+                inFlights.remove(qiscusComment.getUniqueId());
+                retries.remove(qiscusComment.getUniqueId());
+            }
+            return null;
+        }
+
+        qiscusComment.setDownloading(true);
+        qiscusComment.setProgress(0);
+        EventBus.getDefault().post(new QiscusCommentResendEvent(qiscusComment));
+
+        return send(qiscusComment, QiscusTransferManager.getInstance()
+                .upload(qiscusComment, file, QiscusTransferManager.Priority.BACKGROUND)
+                .flatMap(uri -> {
+                    qiscusComment.updateAttachmentUrl(uri.toString());
+                    return QiscusApi.getInstance().postComment(qiscusComment);
+                })
+                .doOnNext(commentSend -> Qiscus.getDataStore()
+                        .addOrUpdateLocalPath(commentSend.getRoomId(), commentSend.getId(), file.getAbsolutePath())));
+    }
+
+    private Subscription send(QiscusComment qiscusComment, Observable<QiscusComment> postComment) {
+        return postComment
+                .doOnNext(this::commentSuccess)
+                .doOnError(throwable -> commentFail(throwable, qiscusComment))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(commentSend -> {
+                    EventBus.getDefault().post(new QiscusCommentReceivedEvent(commentSend));
+                    wake(); //Process next pending comments
+                }, throwable -> {
+                    QiscusErrorLogger.print(throwable);
+                    wake();
+                });
+    }
+
+    private void commentSuccess(QiscusComment qiscusComment) {
+        synchronized (this) {
+            inFlights.remove(qiscusComment.getUniqueId());
+            retries.remove(qiscusComment.getUniqueId());
+            sentCount++;
+        }
+        qiscusComment.setDownloading(false);
+        qiscusComment.setState(QiscusComment.STATE_ON_QISCUS);
+        QiscusComment savedQiscusComment = Qiscus.getDataStore().getComment(qiscusComment.getUniqueId());
+        if (savedQiscusComment != null && savedQiscusComment.getState() > qiscusComment.getState()) {
+            qiscusComment.setState(savedQiscusComment.getState());
+        }
+        Qiscus.getDataStore().addOrUpdate(qiscusComment);
+    }
+
+    private void commentFail(Throwable throwable, QiscusComment qiscusComment) {
+        int state = QiscusComment.STATE_PENDING;
+        synchronized (this) {
+            inFlights.remove(qiscusComment.getUniqueId());
+            failedCount++;
+            if (throwable instanceof HttpException && ((HttpException) throwable).code() >= 400) {
+                //Means something wrong with server, e.g user is not member of these room anymore
+                state = QiscusComment.STATE_FAILED;
+                retries.remove(qiscusComment.getUniqueId());
+            } else {
+                Retry retry = retries.get(qiscusComment.getUniqueId());
+                if (retry == null) {
+                    retry = new Retry();
+                    retries.put(qiscusComment.getUniqueId(), retry);
+                }
+                retry.attempt++;
+                long delay = Math.min(MAX_RETRY_DELAY, BASE_RETRY_DELAY << Math.min(retry.attempt - 1, 16));
+                retry.nextAttemptTime = SystemClock.elapsedRealtime() + delay;
+            }
+        }
+
+        if (!Qiscus.getDataStore().isContains(qiscusComment)) { //Have been deleted
+            return;
+        }
+
+        //Comment have been sent successfully before, no need to update it
+        QiscusComment savedQiscusComment = Qiscus.getDataStore().getComment(qiscusComment.getUniqueId());
+        if (savedQiscusComment != null && savedQiscusComment.getState() > QiscusComment.STATE_SENDING) {
+            return;
+        }
+
+        if (state == QiscusComment.STATE_FAILED) {
+            qiscusComment.setDownloading(false);
+        }
+        qiscusComment.setState(state);
+        Qiscus.getDataStore().addOrUpdate(qiscusComment);
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlights.size();
+    }
+
+    public synchronized int getPeakInFlightCount() {
+        return peakInFlight;
+    }
+
+    /**
+     * @return time in millis needed by the last drain to send every pending comment
+     */
+    public synchronized long getLastDrainDuration() {
+        return lastDrainDuration;
+    }
+
+    public synchronized long getSentCount() {
+        return sentCount;
+    }
+
+    public synchronized long getFailedCount() {
+        return failedCount;
+    }
+
+    public synchronized long getRetryCount() {
+        return retryCount;
+    }
+
+    public synchronized void clear() {
+        for (InFlight inFlight : inFlights.values()) {
+            if (inFlight.subscription != null && !inFlight.subscription.isUnsubscribed()) {
+                inFlight.subscription.unsubscribe();
+            }
+        }
+        inFlights.clear();
+        retries.clear();
+        drainStartTime = 0;
+    }
+
+    private static class InFlight {
+        private QiscusComment qiscusComment;
+        private long roomId;
+        private boolean attachment;
+        private Subscription subscription;
+    }
+
+    private static class Retry {
+        private int attempt;
+        private long nextAttemptTime;
+    }
+}
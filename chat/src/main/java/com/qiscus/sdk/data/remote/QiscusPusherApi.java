@@ -31,11 +31,13 @@ import com.qiscus.sdk.data.model.QiscusComment;
 import com.qiscus.sdk.data.model.QiscusRoomMember;
 import com.qiscus.sdk.event.QiscusChatRoomEvent;
 import com.qiscus.sdk.event.QiscusCommentReceivedEvent;
+import com.qiscus.sdk.event.QiscusCommentsReceivedEvent;
 import com.qiscus.sdk.event.QiscusMqttStatusEvent;
 import com.qiscus.sdk.event.QiscusUserEvent;
 import com.qiscus.sdk.event.QiscusUserStatusEvent;
 import com.qiscus.sdk.util.QiscusAndroidUtil;
 import com.qiscus.sdk.util.QiscusErrorLogger;
+import com.qiscus.sdk.util.QiscusIso8601;
 import com.qiscus.sdk.util.QiscusLogger;
 import com.qiscus.sdk.util.QiscusPushNotificationUtil;
 import com.qiscus.sdk.util.QiscusTextUtil;
@@ -54,32 +56,24 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
-import java.util.TimeZone;
+import java.util.Set;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-
-import rx.android.schedulers.AndroidSchedulers;
-import rx.schedulers.Schedulers;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener {
 
     INSTANCE;
     private static final String TAG = QiscusPusherApi.class.getSimpleName();
-    private static final long RETRY_PERIOD = 2000;
 
-    private static DateFormat dateFormat;
     private static Gson gson;
-    private static long reconnectCounter;
 
     static {
-        dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
-        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
         gson = new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ss").create();
     }
 
@@ -87,20 +81,11 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
     private String serverUri;
     private MqttAndroidClient mqttAndroidClient;
     private QiscusAccount qiscusAccount;
+    private final QiscusMqttTopicRouter topicRouter = new QiscusMqttTopicRouter(new TopicListener());
+    private final QiscusReconnectScheduler reconnectScheduler = new QiscusReconnectScheduler(this::connect);
+    private final QiscusMqttSubscriptions subscriptions = new QiscusMqttSubscriptions();
 
-    private Runnable fallbackConnect = this::connect;
-    private Runnable fallBackListenComment = this::listenComment;
-    private Runnable fallBackListenNotification = this::listenNotification;
-    private Runnable fallBackListenRoom;
-    private Runnable fallBackListenUserStatus;
-
-    private ScheduledFuture<?> scheduledConnect;
-    private ScheduledFuture<?> scheduledListenComment;
-    private ScheduledFuture<?> scheduledListenNotification;
-    private ScheduledFuture<?> scheduledListenRoom;
-    private ScheduledFuture<?> scheduledListenUserStatus;
-
-    private boolean connecting;
+    private final AtomicBoolean connecting = new AtomicBoolean(false);
 
     private ScheduledFuture<?> scheduledUserStatus;
 
@@ -118,7 +103,7 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
 
         buildClient();
 
-        connecting = false;
+        connecting.set(false);
     }
 
     public static QiscusPusherApi getInstance() {
@@ -133,15 +118,16 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
     }
 
     public void connect() {
-        if (Qiscus.hasSetupUser() && !connecting && QiscusAndroidUtil.isNetworkAvailable()) {
+        if (Qiscus.hasSetupUser() && QiscusAndroidUtil.isNetworkAvailable() && connecting.compareAndSet(false, true)) {
             QiscusLogger.print(TAG, "Connecting...");
-            connecting = true;
+            reconnectScheduler.onConnecting();
             qiscusAccount = Qiscus.getQiscusAccount();
+            topicRouter.setAccount(qiscusAccount.getToken(), qiscusAccount.getEmail());
             MqttConnectOptions mqttConnectOptions = new MqttConnectOptions();
             mqttConnectOptions.setAutomaticReconnect(false);
             mqttConnectOptions.setCleanSession(false);
             mqttConnectOptions.setWill("u/" + qiscusAccount.getEmail()
-                    + "/s", ("0:" + Calendar.getInstance(TimeZone.getTimeZone("UTC")).getTimeInMillis())
+                    + "/s", ("0:" + System.currentTimeMillis())
                     .getBytes(), 2, true);
             try {
                 mqttAndroidClient.connect(mqttConnectOptions, null, this);
@@ -153,6 +139,20 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
         }
     }
 
+    /**
+     * Connect if not connected yet. Calls while an attempt is already scheduled are collapsed into that attempt,
+     * so it is cheap to call this from anywhere.
+     */
+    public void ensureConnected() {
+        if (!isConnected()) {
+            reconnectScheduler.requestConnect();
+        }
+    }
+
+    public QiscusReconnectScheduler getReconnectScheduler() {
+        return reconnectScheduler;
+    }
+
     public boolean isConnected() {
         return mqttAndroidClient != null && mqttAndroidClient.isConnected();
     }
@@ -160,141 +160,120 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
     public void restartConnection() {
         QiscusLogger.print("QiscusPusherApi", "Restart connection...");
         try {
-            connecting = false;
+            connecting.set(false);
             mqttAndroidClient.disconnect();
             mqttAndroidClient.close();
         } catch (MqttException | NullPointerException | IllegalArgumentException e) {
             //Do nothing
         }
 
-        clearTasks();
-
         buildClient();
         connect();
     }
 
-    private void clearTasks() {
-        if (scheduledConnect != null) {
-            scheduledConnect.cancel(true);
-            scheduledConnect = null;
-        }
-        if (scheduledListenComment != null) {
-            scheduledListenComment.cancel(true);
-            scheduledListenComment = null;
-        }
-        if (scheduledListenNotification != null) {
-            scheduledListenNotification.cancel(true);
-            scheduledListenNotification = null;
-        }
-        if (scheduledListenRoom != null) {
-            scheduledListenRoom.cancel(true);
-            scheduledListenRoom = null;
-        }
-        if (scheduledListenUserStatus != null) {
-            scheduledListenUserStatus.cancel(true);
-        }
-    }
-
     public void disconnect() {
         QiscusLogger.print(TAG, "Disconnecting...");
         setUserStatus(false);
         try {
-            connecting = false;
+            connecting.set(false);
             mqttAndroidClient.disconnect();
             mqttAndroidClient.close();
         } catch (MqttException | NullPointerException | IllegalArgumentException e) {
             //Do nothing
         }
-        clearTasks();
         stopUserStatus();
+        reconnectScheduler.stop();
+    }
+
+    /**
+     * Subscribe comment, notification and every topic in the registry as one batch.
+     */
+    private void restoreSubscriptions() {
+        List<String> topics = new ArrayList<>();
+        topics.add(qiscusAccount.getToken() + "/c");
+        topics.add(qiscusAccount.getToken() + "/n");
+        topics.addAll(subscriptions.getTopics());
+        QiscusLogger.print(TAG, "Listening " + topics.size() + " topics...");
+        subscribe(topics);
     }
 
-    private void listenComment() {
-        QiscusLogger.print(TAG, "Listening comment...");
+    private void subscribe(List<String> topics) {
+        if (topics.isEmpty()) {
+            return;
+        }
+
+        int[] qos = new int[topics.size()];
+        Arrays.fill(qos, 2);
         try {
-            mqttAndroidClient.subscribe(qiscusAccount.getToken() + "/c", 2);
+            mqttAndroidClient.subscribe(topics.toArray(new String[topics.size()]), qos);
         } catch (MqttException e) {
             //Do nothing
         } catch (NullPointerException | IllegalArgumentException e) {
-            QiscusErrorLogger.print(TAG, "Failure listen comment, try again in " + RETRY_PERIOD + " ms");
-            connect();
-            scheduledListenComment = QiscusAndroidUtil.runOnBackgroundThread(fallBackListenComment, RETRY_PERIOD);
+            QiscusErrorLogger.print(TAG, "Failure subscribe " + topics + ", will subscribe again when connected");
+            ensureConnected();
         }
     }
 
-    private void listenNotification() {
-        QiscusLogger.print(TAG, "Listening notification...");
+    private void unsubscribe(List<String> topics) {
+        if (topics.isEmpty()) {
+            return;
+        }
+
         try {
-            mqttAndroidClient.subscribe(qiscusAccount.getToken() + "/n", 2);
-        } catch (MqttException e) {
+            mqttAndroidClient.unsubscribe(topics.toArray(new String[topics.size()]));
+        } catch (MqttException | NullPointerException | IllegalArgumentException e) {
             //Do nothing
-        } catch (NullPointerException | IllegalArgumentException e) {
-            QiscusErrorLogger.print(TAG, "Failure listen notification, try again in " + RETRY_PERIOD + " ms");
-            connect();
-            scheduledListenNotification = QiscusAndroidUtil.runOnBackgroundThread(fallBackListenNotification, RETRY_PERIOD);
         }
     }
 
+    private static String[] getRoomTopics(long roomId) {
+        return new String[]{"r/" + roomId + "/+/+/t", "r/" + roomId + "/+/+/d", "r/" + roomId + "/+/+/r"};
+    }
+
     public void listenRoom(QiscusChatRoom qiscusChatRoom) {
         QiscusLogger.print(TAG, "Listening room...");
-        fallBackListenRoom = () -> listenRoom(qiscusChatRoom);
-        try {
-            long roomId = qiscusChatRoom.getId();
-            mqttAndroidClient.subscribe("r/" + roomId + "/+/+/t", 2);
-            mqttAndroidClient.subscribe("r/" + roomId + "/+/+/d", 2);
-            mqttAndroidClient.subscribe("r/" + roomId + "/+/+/r", 2);
-        } catch (MqttException e) {
-            //Do nothing
-        } catch (NullPointerException | IllegalArgumentException e) {
-            QiscusErrorLogger.print(TAG, "Failure listen room, try again in " + RETRY_PERIOD + " ms");
-            connect();
-            scheduledListenRoom = QiscusAndroidUtil.runOnBackgroundThread(fallBackListenRoom, RETRY_PERIOD);
-        }
+        subscribe(subscriptions.acquire(getRoomTopics(qiscusChatRoom.getId())));
     }
 
     public void unListenRoom(QiscusChatRoom qiscusChatRoom) {
-        try {
-            long roomId = qiscusChatRoom.getId();
-            mqttAndroidClient.unsubscribe("r/" + roomId + "/+/+/t");
-            mqttAndroidClient.unsubscribe("r/" + roomId + "/+/+/d");
-            mqttAndroidClient.unsubscribe("r/" + roomId + "/+/+/r");
-        } catch (MqttException | NullPointerException | IllegalArgumentException e) {
-            //Do nothing
-        }
-        if (scheduledListenRoom != null) {
-            scheduledListenRoom.cancel(true);
-            scheduledListenRoom = null;
-        }
-        fallBackListenRoom = null;
+        unsubscribe(subscriptions.release(getRoomTopics(qiscusChatRoom.getId())));
     }
 
     public void listenUserStatus(String user) {
-        fallBackListenUserStatus = () -> listenUserStatus(user);
-        try {
-            mqttAndroidClient.subscribe("u/" + user + "/s", 2);
-        } catch (MqttException e) {
-            //Do nothing
-        } catch (NullPointerException | IllegalArgumentException e) {
-            connect();
-            scheduledListenUserStatus = QiscusAndroidUtil.runOnBackgroundThread(fallBackListenUserStatus, RETRY_PERIOD);
-        }
+        subscribe(subscriptions.acquire("u/" + user + "/s"));
     }
 
     public void unListenUserStatus(String user) {
-        try {
-            mqttAndroidClient.unsubscribe("u/" + user + "/s");
-        } catch (MqttException | NullPointerException | IllegalArgumentException e) {
-            //Do nothing
+        unsubscribe(subscriptions.release("u/" + user + "/s"));
+    }
+
+    /**
+     * @return registry of room, user status and custom topics currently listened
+     */
+    public QiscusMqttSubscriptions getSubscriptions() {
+        return subscriptions;
+    }
+
+    /**
+     * Subscribe to custom mqtt topic, messages of the topic are passed to the handler.
+     *
+     * @param topicFilter topic to listen, + and # wildcards are supported
+     * @param handler     handler of the messages, called from mqtt thread
+     */
+    public void listenCustomTopic(String topicFilter, QiscusMqttTopicRouter.TopicHandler handler) {
+        if (topicRouter.addHandler(topicFilter, handler)) {
+            subscribe(subscriptions.acquire(topicFilter));
         }
-        if (scheduledListenUserStatus != null) {
-            scheduledListenUserStatus.cancel(true);
-            scheduledListenUserStatus = null;
+    }
+
+    public void unListenCustomTopic(String topicFilter) {
+        if (topicRouter.removeHandler(topicFilter)) {
+            unsubscribe(subscriptions.release(topicFilter));
         }
-        fallBackListenUserStatus = null;
     }
 
     private void setUserStatus(boolean online) {
-        checkAndConnect();
+        ensureConnected();
         try {
             MqttMessage message = new MqttMessage();
             message.setPayload(online ? "1".getBytes() : "0".getBytes());
@@ -307,7 +286,7 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
     }
 
     public void setUserTyping(long roomId, boolean typing) {
-        checkAndConnect();
+        ensureConnected();
         try {
             MqttMessage message = new MqttMessage();
             message.setPayload((typing ? "1" : "0").getBytes());
@@ -319,110 +298,79 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
     }
 
     public void setUserRead(long roomId, long commentId) {
-        QiscusApi.getInstance().updateCommentStatus(roomId, commentId, 0)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(aVoid -> {
-                }, QiscusErrorLogger::print);
+        QiscusReceiptBatcher.getInstance().markRead(roomId, commentId);
     }
 
     public void setUserDelivery(long roomId, long commentId) {
-        QiscusApi.getInstance().updateCommentStatus(roomId, 0, commentId)
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(aVoid -> {
-                }, QiscusErrorLogger::print);
-    }
-
-    private void checkAndConnect() {
-        try {
-            if (!mqttAndroidClient.isConnected()) {
-                connect();
-            }
-        } catch (NullPointerException e) {
-            connect();
-        } catch (Exception ignored) {
-            //ignored
-        }
+        QiscusReceiptBatcher.getInstance().markDelivered(roomId, commentId);
     }
 
     @Override
     public void connectionLost(Throwable cause) {
-        if (reconnectCounter == 0) {
+        if (reconnectScheduler.getAttempt() == 0) {
             EventBus.getDefault().post(QiscusMqttStatusEvent.DISCONNECTED);
         }
-        reconnectCounter++;
-        QiscusErrorLogger.print(TAG, "Lost connection, will try reconnect in " + RETRY_PERIOD * reconnectCounter + " ms");
-        connecting = false;
-        scheduledConnect = QiscusAndroidUtil.runOnBackgroundThread(fallbackConnect, RETRY_PERIOD * reconnectCounter);
+        connecting.set(false);
+        long delay = reconnectScheduler.onDisconnected();
+        QiscusErrorLogger.print(TAG, delay < 0 ? "Lost connection, will reconnect when network is available"
+                : "Lost connection, will try reconnect in " + delay + " ms");
     }
 
     @Override
     public void messageArrived(String topic, MqttMessage message) throws Exception {
         try {
-            handleMessage(topic, new String(message.getPayload()));
+            topicRouter.route(topic, new String(message.getPayload()));
         } catch (Exception ignored) {
             //Do nothing
         }
     }
 
-    private void handleMessage(String topic, String message) {
-        if (topic.equals(qiscusAccount.getToken() + "/n")) {
+    private static class TopicListener implements QiscusMqttTopicRouter.Listener {
+        @Override
+        public void onComment(String message) {
+            QiscusComment qiscusComment = jsonToComment(message);
+            if (qiscusComment != null) {
+                handleReceivedComment(qiscusComment);
+            }
+        }
+
+        @Override
+        public void onNotification(String message) {
             try {
                 handleNotification(new JSONObject(message));
             } catch (JSONException e) {
                 QiscusLogger.print(e.getMessage());
             }
-        } else if (topic.equals(qiscusAccount.getToken() + "/c")) {
-            QiscusComment qiscusComment = jsonToComment(message);
-            if (qiscusComment == null) {
-                return;
-            }
-            handleReceivedComment(qiscusComment);
-        } else if (topic.startsWith("r/") && topic.endsWith("/t")) {
-            String[] data = topic.split("/");
-            if (!data[3].equals(qiscusAccount.getEmail())) {
-                QiscusChatRoomEvent event = new QiscusChatRoomEvent()
-                        .setRoomId(Long.parseLong(data[1]))
-                        .setUser(data[3])
-                        .setEvent(QiscusChatRoomEvent.Event.TYPING)
-                        .setTyping("1".equals(message));
-                EventBus.getDefault().post(event);
-            }
-        } else if (topic.startsWith("r/") && topic.endsWith("/d")) {
-            String[] data = topic.split("/");
-            if (!data[3].equals(qiscusAccount.getEmail())) {
-                String[] payload = message.split(":");
-                QiscusChatRoomEvent event = new QiscusChatRoomEvent()
-                        .setRoomId(Long.parseLong(data[1]))
-                        .setUser(data[3])
-                        .setEvent(QiscusChatRoomEvent.Event.DELIVERED)
-                        .setCommentId(Long.parseLong(payload[0]))
-                        .setCommentUniqueId(payload[1]);
-                EventBus.getDefault().post(event);
-            }
-        } else if (topic.startsWith("r/") && topic.endsWith("/r")) {
-            String[] data = topic.split("/");
-            if (!data[3].equals(qiscusAccount.getEmail())) {
-                String[] payload = message.split(":");
-                QiscusChatRoomEvent event = new QiscusChatRoomEvent()
-                        .setRoomId(Long.parseLong(data[1]))
-                        .setUser(data[3])
-                        .setEvent(QiscusChatRoomEvent.Event.READ)
-                        .setCommentId(Long.parseLong(payload[0]))
-                        .setCommentUniqueId(payload[1]);
-                EventBus.getDefault().post(event);
-            }
-        } else if (topic.startsWith("u/") && topic.endsWith("/s")) {
-            String[] data = topic.split("/");
-            if (!data[1].equals(qiscusAccount.getEmail())) {
-                String[] status = message.split(":");
-                Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-                calendar.setTimeInMillis(Long.parseLong(status[1].substring(0, 13)));
-                QiscusUserStatusEvent event = new QiscusUserStatusEvent(data[1], "1".equals(status[0]),
-                        calendar.getTime());
-                EventBus.getDefault().post(event);
-            }
+        }
+
+        @Override
+        public void onTyping(long roomId, String user, boolean typing) {
+            QiscusTypingManager.getInstance().onTypingReceived(roomId, user, typing);
+        }
+
+        @Override
+        public void onDelivered(long roomId, String user, long commentId, String commentUniqueId) {
+            EventBus.getDefault().post(new QiscusChatRoomEvent()
+                    .setRoomId(roomId)
+                    .setUser(user)
+                    .setEvent(QiscusChatRoomEvent.Event.DELIVERED)
+                    .setCommentId(commentId)
+                    .setCommentUniqueId(commentUniqueId));
+        }
+
+        @Override
+        public void onRead(long roomId, String user, long commentId, String commentUniqueId) {
+            EventBus.getDefault().post(new QiscusChatRoomEvent()
+                    .setRoomId(roomId)
+                    .setUser(user)
+                    .setEvent(QiscusChatRoomEvent.Event.READ)
+                    .setCommentId(commentId)
+                    .setCommentUniqueId(commentUniqueId));
+        }
+
+        @Override
+        public void onUserStatus(String user, boolean online, long lastActive) {
+            EventBus.getDefault().post(new QiscusUserStatusEvent(user, online, new Date(lastActive)));
         }
     }
 
@@ -431,6 +379,61 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
         QiscusAndroidUtil.runOnBackgroundThread(() -> handleComment(qiscusComment));
     }
 
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static void handleReceivedComments(List<QiscusComment> qiscusComments) {
+        if (!qiscusComments.isEmpty()) {
+            QiscusAndroidUtil.runOnBackgroundThread(() -> handleComments(qiscusComments));
+        }
+    }
+
+    /**
+     * Handle a page of received comments. New or changed comments are saved as one batch before returning, then
+     * dispatched to the UI thread as one {@link QiscusCommentsReceivedEvent}.
+     *
+     * @return the new or changed comments
+     */
+    static List<QiscusComment> handleComments(List<QiscusComment> qiscusComments) {
+        List<QiscusComment> receivedComments = new ArrayList<>();
+        List<QiscusComment> newComments = new ArrayList<>();
+        for (QiscusComment qiscusComment : qiscusComments) {
+            QiscusComment savedComment = Qiscus.getDataStore().getComment(qiscusComment.getUniqueId());
+            if (savedComment != null && savedComment.getState() > qiscusComment.getState()) {
+                qiscusComment.setState(savedComment.getState());
+            }
+            if (savedComment != null && (savedComment.isDeleted() || savedComment.areContentsTheSame(qiscusComment))) {
+                continue;
+            }
+
+            if (!qiscusComment.isMyComment()) {
+                QiscusPusherApi.getInstance().setUserDelivery(qiscusComment.getRoomId(), qiscusComment.getId());
+            }
+            receivedComments.add(qiscusComment);
+            if (savedComment == null) {
+                newComments.add(qiscusComment);
+            }
+        }
+
+        if (receivedComments.isEmpty()) {
+            return receivedComments;
+        }
+
+        // Callers like sync move their cursor past these comments next, so they must be stored already
+        Qiscus.getDataStore().addOrUpdate(receivedComments);
+        Qiscus.getDataStore().flush();
+
+        Set<Long> roomIds = new HashSet<>();
+        for (QiscusComment qiscusComment : receivedComments) {
+            if (roomIds.add(qiscusComment.getRoomId())) {
+                // Last comment, and members on system events, of cached room responses changed
+                QiscusApi.getInstance().getRoomCache().invalidateRoom(qiscusComment.getRoomId());
+            }
+        }
+        QiscusPushNotificationUtil.notifySavedComments(Qiscus.getApps(), newComments);
+        QiscusAndroidUtil.runOnUIThread(() ->
+                EventBus.getDefault().post(new QiscusCommentsReceivedEvent(receivedComments)));
+        return receivedComments;
+    }
+
     private static void handleComment(QiscusComment qiscusComment) {
         QiscusComment savedComment = Qiscus.getDataStore().getComment(qiscusComment.getUniqueId());
         if (savedComment != null && (savedComment.isDeleted() || savedComment.areContentsTheSame(qiscusComment))) {
@@ -441,12 +444,13 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
             QiscusPusherApi.getInstance().setUserDelivery(qiscusComment.getRoomId(), qiscusComment.getId());
         }
 
+        QiscusApi.getInstance().getRoomCache().invalidateRoom(qiscusComment.getRoomId());
         QiscusPushNotificationUtil.handlePushNotification(Qiscus.getApps(), qiscusComment);
         QiscusAndroidUtil.runOnUIThread(() -> EventBus.getDefault().post(new QiscusCommentReceivedEvent(qiscusComment)));
     }
 
     @RestrictTo(RestrictTo.Scope.LIBRARY)
-    public static void handleNotification(JSONObject jsonObject) {
+    public static synchronized void handleNotification(JSONObject jsonObject) {
         long eventId = jsonObject.optLong("id");
         if (eventId <= QiscusEventCache.getInstance().getLastEventId()) {
             return;
@@ -455,62 +459,99 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
         QiscusEventCache.getInstance().setLastEventId(eventId);
 
         if (jsonObject.optString("action_topic").equals("delete_message")) {
-            JSONObject payload = jsonObject.optJSONObject("payload");
-
-            JSONObject actorJson = payload.optJSONObject("actor");
-            QiscusRoomMember actor = new QiscusRoomMember();
-            actor.setEmail(actorJson.optString("email"));
-            actor.setUsername(actorJson.optString("name"));
-
-            List<QiscusDeleteCommentHandler.DeletedCommentsData.DeletedComment> deletedComments = new ArrayList<>();
-            JSONObject dataJson = payload.optJSONObject("data");
-            JSONArray deletedCommentsJson = dataJson.optJSONArray("deleted_messages");
-            int deletedCommentsJsonSize = deletedCommentsJson.length();
-            for (int i = 0; i < deletedCommentsJsonSize; i++) {
-                JSONObject deletedCommentJson = deletedCommentsJson.optJSONObject(i);
-                long roomId = Long.valueOf(deletedCommentJson.optString("room_id", "0"));
-
-                JSONArray commentUniqueIds = deletedCommentJson.optJSONArray("message_unique_ids");
-                int commentUniqueIdsSize = commentUniqueIds.length();
-                for (int j = 0; j < commentUniqueIdsSize; j++) {
-                    deletedComments.add(new QiscusDeleteCommentHandler.DeletedCommentsData
-                            .DeletedComment(roomId, commentUniqueIds.optString(j)));
-                }
+            QiscusDeleteCommentHandler.handle(parseDeletedCommentsData(jsonObject));
+        } else if (jsonObject.optString("action_topic").equals("clear_room")) {
+            QiscusClearCommentsHandler.handle(parseClearCommentsData(jsonObject));
+        }
+    }
+
+    /**
+     * Handle a page of events at once, delete and clear events are grouped and applied as one batch each, and the
+     * last event id is committed once. Must be called from background thread.
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public static synchronized void handleNotifications(List<JSONObject> jsonObjects) {
+        long lastEventId = QiscusEventCache.getInstance().getLastEventId();
+        long newLastEventId = lastEventId;
+        List<QiscusDeleteCommentHandler.DeletedCommentsData> deletedCommentsDataList = new ArrayList<>();
+        List<QiscusClearCommentsHandler.ClearCommentsData> clearCommentsDataList = new ArrayList<>();
+        for (JSONObject jsonObject : jsonObjects) {
+            long eventId = jsonObject.optLong("id");
+            if (eventId <= lastEventId) {
+                continue;
             }
+            newLastEventId = Math.max(newLastEventId, eventId);
 
-            QiscusDeleteCommentHandler.DeletedCommentsData deletedCommentsData
-                    = new QiscusDeleteCommentHandler.DeletedCommentsData();
-            deletedCommentsData.setActor(actor);
-            deletedCommentsData.setHardDelete(dataJson.optBoolean("is_hard_delete"));
-            deletedCommentsData.setDeletedComments(deletedComments);
+            if (jsonObject.optString("action_topic").equals("delete_message")) {
+                deletedCommentsDataList.add(parseDeletedCommentsData(jsonObject));
+            } else if (jsonObject.optString("action_topic").equals("clear_room")) {
+                clearCommentsDataList.add(parseClearCommentsData(jsonObject));
+            }
+        }
 
-            QiscusDeleteCommentHandler.handle(deletedCommentsData);
-        } else if (jsonObject.optString("action_topic").equals("clear_room")) {
-            JSONObject payload = jsonObject.optJSONObject("payload");
-
-            JSONObject actorJson = payload.optJSONObject("actor");
-            QiscusRoomMember actor = new QiscusRoomMember();
-            actor.setEmail(actorJson.optString("email"));
-            actor.setUsername(actorJson.optString("name"));
-
-            List<Long> roomIds = new ArrayList<>();
-            JSONObject dataJson = payload.optJSONObject("data");
-            JSONArray clearedRoomsJson = dataJson.optJSONArray("deleted_rooms");
-            int clearedRoomsJsonSize = clearedRoomsJson.length();
-            for (int i = 0; i < clearedRoomsJsonSize; i++) {
-                JSONObject clearedRoomJson = clearedRoomsJson.optJSONObject(i);
-                roomIds.add(clearedRoomJson.optLong("id"));
+        if (!deletedCommentsDataList.isEmpty()) {
+            QiscusDeleteCommentHandler.handle(deletedCommentsDataList);
+        }
+        if (!clearCommentsDataList.isEmpty()) {
+            QiscusClearCommentsHandler.handle(clearCommentsDataList);
+        }
+        QiscusEventCache.getInstance().setLastEventId(newLastEventId);
+    }
+
+    private static QiscusRoomMember parseActor(JSONObject payload) {
+        JSONObject actorJson = payload.optJSONObject("actor");
+        QiscusRoomMember actor = new QiscusRoomMember();
+        actor.setEmail(actorJson.optString("email"));
+        actor.setUsername(actorJson.optString("name"));
+        return actor;
+    }
+
+    private static QiscusDeleteCommentHandler.DeletedCommentsData parseDeletedCommentsData(JSONObject jsonObject) {
+        JSONObject payload = jsonObject.optJSONObject("payload");
+
+        List<QiscusDeleteCommentHandler.DeletedCommentsData.DeletedComment> deletedComments = new ArrayList<>();
+        JSONObject dataJson = payload.optJSONObject("data");
+        JSONArray deletedCommentsJson = dataJson.optJSONArray("deleted_messages");
+        int deletedCommentsJsonSize = deletedCommentsJson.length();
+        for (int i = 0; i < deletedCommentsJsonSize; i++) {
+            JSONObject deletedCommentJson = deletedCommentsJson.optJSONObject(i);
+            long roomId = Long.valueOf(deletedCommentJson.optString("room_id", "0"));
+
+            JSONArray commentUniqueIds = deletedCommentJson.optJSONArray("message_unique_ids");
+            int commentUniqueIdsSize = commentUniqueIds.length();
+            for (int j = 0; j < commentUniqueIdsSize; j++) {
+                deletedComments.add(new QiscusDeleteCommentHandler.DeletedCommentsData
+                        .DeletedComment(roomId, commentUniqueIds.optString(j)));
             }
+        }
 
-            QiscusClearCommentsHandler.ClearCommentsData clearCommentsData
-                    = new QiscusClearCommentsHandler.ClearCommentsData();
-            //timestamp is in nano seconds format, convert it to milliseconds by divide it
-            clearCommentsData.setTimestamp(jsonObject.optLong("timestamp") / 1000000L);
-            clearCommentsData.setActor(actor);
-            clearCommentsData.setRoomIds(roomIds);
+        QiscusDeleteCommentHandler.DeletedCommentsData deletedCommentsData
+                = new QiscusDeleteCommentHandler.DeletedCommentsData();
+        deletedCommentsData.setActor(parseActor(payload));
+        deletedCommentsData.setHardDelete(dataJson.optBoolean("is_hard_delete"));
+        deletedCommentsData.setDeletedComments(deletedComments);
+        return deletedCommentsData;
+    }
+
+    private static QiscusClearCommentsHandler.ClearCommentsData parseClearCommentsData(JSONObject jsonObject) {
+        JSONObject payload = jsonObject.optJSONObject("payload");
 
-            QiscusClearCommentsHandler.handle(clearCommentsData);
+        List<Long> roomIds = new ArrayList<>();
+        JSONObject dataJson = payload.optJSONObject("data");
+        JSONArray clearedRoomsJson = dataJson.optJSONArray("deleted_rooms");
+        int clearedRoomsJsonSize = clearedRoomsJson.length();
+        for (int i = 0; i < clearedRoomsJsonSize; i++) {
+            JSONObject clearedRoomJson = clearedRoomsJson.optJSONObject(i);
+            roomIds.add(clearedRoomJson.optLong("id"));
         }
+
+        QiscusClearCommentsHandler.ClearCommentsData clearCommentsData
+                = new QiscusClearCommentsHandler.ClearCommentsData();
+        //timestamp is in nano seconds format, convert it to milliseconds by divide it
+        clearCommentsData.setTimestamp(jsonObject.optLong("timestamp") / 1000000L);
+        clearCommentsData.setActor(parseActor(payload));
+        clearCommentsData.setRoomIds(roomIds);
+        return clearCommentsData;
     }
 
     @Override
@@ -523,21 +564,11 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
         QiscusLogger.print(TAG, "Connected...");
         EventBus.getDefault().post(QiscusMqttStatusEvent.CONNECTED);
         try {
-            connecting = false;
-            reconnectCounter = 0;
-            listenComment();
-            listenNotification();
-            if (fallBackListenRoom != null) {
-                scheduledListenRoom = QiscusAndroidUtil.runOnBackgroundThread(fallBackListenRoom);
-            }
-            if (fallBackListenUserStatus != null) {
-                scheduledListenUserStatus = QiscusAndroidUtil.runOnBackgroundThread(fallBackListenUserStatus);
-            }
-            if (scheduledConnect != null) {
-                scheduledConnect.cancel(true);
-                scheduledConnect = null;
-            }
+            connecting.set(false);
+            reconnectScheduler.onConnected();
+            restoreSubscriptions();
             scheduleUserStatus();
+            QiscusOutbox.getInstance().wake();
         } catch (NullPointerException | IllegalArgumentException ignored) {
             //Do nothing
         }
@@ -550,13 +581,13 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
 
     @Override
     public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
-        if (reconnectCounter == 0) {
+        if (reconnectScheduler.getAttempt() == 0) {
             EventBus.getDefault().post(QiscusMqttStatusEvent.DISCONNECTED);
         }
-        reconnectCounter++;
-        QiscusErrorLogger.print(TAG, "Failure to connect, try again in " + RETRY_PERIOD * reconnectCounter + " ms");
-        connecting = false;
-        scheduledConnect = QiscusAndroidUtil.runOnBackgroundThread(fallbackConnect, RETRY_PERIOD * reconnectCounter);
+        connecting.set(false);
+        long delay = reconnectScheduler.onDisconnected();
+        QiscusErrorLogger.print(TAG, delay < 0 ? "Failure to connect, will try again when network is available"
+                : "Failure to connect, try again in " + delay + " ms");
     }
 
     @Subscribe
@@ -564,6 +595,7 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
         switch (userEvent) {
             case LOGOUT:
                 disconnect();
+                subscriptions.clear();
                 break;
         }
     }
@@ -580,7 +612,7 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
             qiscusComment.setSender(jsonObject.get("username").isJsonNull() ? null : jsonObject.get("username").getAsString());
             qiscusComment.setSenderEmail(jsonObject.get("email").getAsString());
             qiscusComment.setSenderAvatar(jsonObject.get("user_avatar").getAsString());
-            qiscusComment.setTime(dateFormat.parse(jsonObject.get("timestamp").getAsString()));
+            qiscusComment.setTime(new Date(QiscusIso8601.parse(jsonObject.get("timestamp").getAsString())));
             qiscusComment.setState(QiscusComment.STATE_ON_QISCUS);
 
             if (jsonObject.has("is_deleted")) {
@@ -633,9 +665,6 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
         scheduledUserStatus = Qiscus.getTaskExecutor()
                 .scheduleWithFixedDelay(() -> {
                     if (Qiscus.hasSetupUser()) {
-                        if (Qiscus.isOnForeground()) {
-                            QiscusResendCommentHelper.tryResendPendingComment();
-                        }
                         if (isConnected()) {
                             if (Qiscus.isOnForeground()) {
                                 setOfflineCounter = 0;
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.remote;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.RestrictTo;
+
+import com.qiscus.sdk.Qiscus;
+import com.qiscus.sdk.util.QiscusAndroidUtil;
+import com.qiscus.sdk.util.QiscusErrorLogger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+import rx.schedulers.Schedulers;
+
+/**
+ * Aggregates read and delivery receipts before they are sent with update_comment_status. Only the highest
+ * read and delivered comment id of every room is kept, so a burst of receipts (e.g. after sync) becomes one
+ * request per room. Pending receipts are flushed after a short debounce or when the room is exited, and
+ * persisted so they are still sent after process death.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public enum QiscusReceiptBatcher {
+    INSTANCE;
+    private static final long DEBOUNCE_DELAY = 500;
+    private static final long MAX_RETRY_DELAY = 60000;
+    private static final int READ = 0;
+    private static final int DELIVERED = 1;
+
+    private final SharedPreferences sharedPreferences;
+    private final Map<Long, long[]> pendingReceipts = new HashMap<>();
+    private final Map<Long, long[]> sentReceipts = new HashMap<>();
+    private ScheduledFuture<?> pendingFlush;
+    private int failedAttempts;
+
+    private long receiptCount;
+    private long droppedCount;
+    private long requestCount;
+
+    QiscusReceiptBatcher() {
+        sharedPreferences = Qiscus.getApps().getSharedPreferences("receipts.cache", Context.MODE_PRIVATE);
+        restorePendingReceipts();
+    }
+
+    public static QiscusReceiptBatcher getInstance() {
+        return INSTANCE;
+    }
+
+    public void markRead(long roomId, long commentId) {
+        addReceipt(roomId, commentId, READ);
+    }
+
+    public void markDelivered(long roomId, long commentId) {
+        addReceipt(roomId, commentId, DELIVERED);
+    }
+
+    private synchronized void addReceipt(long roomId, long commentId, int type) {
+        receiptCount++;
+        long[] sent = sentReceipts.get(roomId);
+        long[] pending = pendingReceipts.get(roomId);
+        if ((sent != null && sent[type] >= commentId) || (pending != null && pending[type] >= commentId)) {
+            droppedCount++;
+            return;
+        }
+
+        if (pending == null) {
+            pending = new long[2];
+            pendingReceipts.put(roomId, pending);
+        } else if (pending[type] > 0) {
+            droppedCount++;
+        }
+        pending[type] = commentId;
+        persist(roomId, pending);
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        scheduleFlush(DEBOUNCE_DELAY);
+    }
+
+    private void scheduleFlush(long delay) {
+        if (pendingFlush == null || pendingFlush.isDone()) {
+            pendingFlush = QiscusAndroidUtil.runOnBackgroundThread(this::flushAll, delay);
+        }
+    }
+
+    /**
+     * Send pending receipts of the room now, called when user leave the room.
+     */
+    public void flush(long roomId) {
+        long[] pending;
+        synchronized (this) {
+            pending = pendingReceipts.remove(roomId);
+        }
+        if (pending != null) {
+            send(roomId, pending);
+        }
+    }
+
+    public void flushAll() {
+        List<Map.Entry<Long, long[]>> receipts;
+        synchronized (this) {
+            pendingFlush = null;
+            receipts = new ArrayList<>(pendingReceipts.entrySet());
+            pendingReceipts.clear();
+        }
+        for (Map.Entry<Long, long[]> receipt : receipts) {
+            send(receipt.getKey(), receipt.getValue());
+        }
+    }
+
+    private void send(long roomId, long[] receipt) {
+        if (!Qiscus.hasSetupUser()) {
+            return;
+        }
+
+        synchronized (this) {
+            requestCount++;
+        }
+        QiscusApi.getInstance().updateCommentStatus(roomId, receipt[READ], receipt[DELIVERED])
+                .subscribeOn(Schedulers.io())
+                .subscribe(aVoid -> onSent(roomId, receipt), throwable -> {
+                    QiscusErrorLogger.print(throwable);
+                    onFailed(roomId, receipt);
+                });
+    }
+
+    private synchronized void onSent(long roomId, long[] receipt) {
+        failedAttempts = 0;
+        long[] sent = sentReceipts.get(roomId);
+        if (sent == null) {
+            sent = new long[2];
+            sentReceipts.put(roomId, sent);
+        }
+        sent[READ] = Math.max(sent[READ], receipt[READ]);
+        sent[DELIVERED] = Math.max(sent[DELIVERED], receipt[DELIVERED]);
+        if (!pendingReceipts.containsKey(roomId)) {
+            sharedPreferences.edit().remove(key(roomId)).apply();
+        }
+    }
+
+    private synchronized void onFailed(long roomId, long[] receipt) {
+        long[] pending = pendingReceipts.get(roomId);
+        if (pending == null) {
+            pending = receipt;
+            pendingReceipts.put(roomId, pending);
+        } else {
+            pending[READ] = Math.max(pending[READ], receipt[READ]);
+            pending[DELIVERED] = Math.max(pending[DELIVERED], receipt[DELIVERED]);
+        }
+        persist(roomId, pending);
+
+        // Retry with exponential backoff, other rooms failing in the same flush share the scheduled retry
+        if (pendingFlush == null || pendingFlush.isDone()) {
+            failedAttempts = Math.min(failedAttempts + 1, 16);
+            scheduleFlush(Math.min(DEBOUNCE_DELAY << failedAttempts, MAX_RETRY_DELAY));
+        }
+    }
+
+    private void persist(long roomId, long[] receipt) {
+        sharedPreferences.edit()
+                .putString(key(roomId), receipt[READ] + ":" + receipt[DELIVERED])
+                .apply();
+    }
+
+    private void restorePendingReceipts() {
+        for (Map.Entry<String, ?> entry : sharedPreferences.getAll().entrySet()) {
+            try {
+                long roomId = Long.parseLong(entry.getKey().substring(2));
+                String[] ids = String.valueOf(entry.getValue()).split(":");
+                pendingReceipts.put(roomId, new long[]{Long.parseLong(ids[READ]), Long.parseLong(ids[DELIVERED])});
+            } catch (Exception e) {
+                QiscusErrorLogger.print(e);
+            }
+        }
+        if (!pendingReceipts.isEmpty()) {
+            scheduleFlush();
+        }
+    }
+
+    private static String key(long roomId) {
+        return "r_" + roomId;
+    }
+
+    public synchronized void clear() {
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        pendingReceipts.clear();
+        sentReceipts.clear();
+        failedAttempts = 0;
+        sharedPreferences.edit().clear().apply();
+    }
+
+    /**
+     * @return number of receipts requested by the app
+     */
+    public synchronized long getReceiptCount() {
+        return receiptCount;
+    }
+
+    /**
+     * @return number of receipts dropped because a higher receipt of the same room was already known
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * @return number of update_comment_status requests saved compared to sending every receipt directly
+     */
+    public synchronized long getSavedRequestCount() {
+        return receiptCount - requestCount;
+    }
+}
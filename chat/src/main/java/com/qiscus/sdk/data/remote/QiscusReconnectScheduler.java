@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.remote;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.os.SystemClock;
+
+import com.qiscus.sdk.Qiscus;
+import com.qiscus.sdk.util.QiscusAndroidUtil;
+
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Decides when mqtt should reconnect. Failed attempts are retried with capped exponential backoff plus jitter,
+ * and nothing is scheduled while there is no network, the next attempt starts as soon as connectivity comes back.
+ * Reconnect requests from many places are collapsed, a request while an attempt is already scheduled does nothing.
+ */
+public final class QiscusReconnectScheduler {
+    private static final long BASE_DELAY = 1000;
+    private static final long MAX_DELAY = 60000;
+
+    private final Runnable connectAction;
+    private final Random random = new Random();
+    private ScheduledFuture<?> scheduledConnect;
+    private int attempt;
+    private boolean connected;
+    private long connectStartTime;
+    private long disconnectedTime;
+
+    private long lastConnectDuration;
+    private long reconnectCount;
+    private long offlineDuration;
+
+    QiscusReconnectScheduler(Runnable connectAction) {
+        this.connectAction = connectAction;
+        Qiscus.getApps().registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                onNetworkChanged(QiscusAndroidUtil.isNetworkAvailable());
+            }
+        }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    /**
+     * Connect now unless already connected or an attempt is already scheduled.
+     */
+    synchronized void requestConnect() {
+        if (connected || isScheduled()) {
+            return;
+        }
+        scheduledConnect = QiscusAndroidUtil.runOnBackgroundThread(connectAction);
+    }
+
+    synchronized void onConnecting() {
+        if (connectStartTime == 0) {
+            connectStartTime = SystemClock.elapsedRealtime();
+        }
+    }
+
+    synchronized void onConnected() {
+        long now = SystemClock.elapsedRealtime();
+        if (connectStartTime > 0) {
+            lastConnectDuration = now - connectStartTime;
+            connectStartTime = 0;
+        }
+        if (disconnectedTime > 0) {
+            offlineDuration += now - disconnectedTime;
+            disconnectedTime = 0;
+            reconnectCount++;
+        }
+        connected = true;
+        attempt = 0;
+        cancelScheduled();
+    }
+
+    /**
+     * Called when connection is lost or an attempt failed.
+     *
+     * @return delay in millis until the next attempt, or -1 if waiting for network
+     */
+    synchronized long onDisconnected() {
+        connected = false;
+        if (disconnectedTime == 0) {
+            disconnectedTime = SystemClock.elapsedRealtime();
+        }
+        cancelScheduled();
+        if (!QiscusAndroidUtil.isNetworkAvailable()) {
+            connectStartTime = 0;
+            return -1;
+        }
+
+        long delay = nextDelay();
+        attempt++;
+        scheduledConnect = QiscusAndroidUtil.runOnBackgroundThread(connectAction, delay);
+        return delay;
+    }
+
+    private synchronized void onNetworkChanged(boolean available) {
+        if (!available) {
+            cancelScheduled();
+            return;
+        }
+        if (!connected) {
+            attempt = 0;
+            cancelScheduled();
+            scheduledConnect = QiscusAndroidUtil.runOnBackgroundThread(connectAction);
+        }
+    }
+
+    /**
+     * Stop reconnecting, e.g. when the user logged out.
+     */
+    synchronized void stop() {
+        cancelScheduled();
+        connected = false;
+        attempt = 0;
+        connectStartTime = 0;
+        disconnectedTime = 0;
+    }
+
+    private long nextDelay() {
+        long delay = Math.min(MAX_DELAY, BASE_DELAY << Math.min(attempt, 16));
+        // Equal jitter, keep at least half of the backoff so clients do not reconnect at the same time
+        return delay / 2 + (long) (random.nextDouble() * (delay / 2));
+    }
+
+    private boolean isScheduled() {
+        return scheduledConnect != null && !scheduledConnect.isDone();
+    }
+
+    private void cancelScheduled() {
+        if (scheduledConnect != null) {
+            scheduledConnect.cancel(false);
+            scheduledConnect = null;
+        }
+    }
+
+    /**
+     * @return number of failed attempts since the last successful connection
+     */
+    public synchronized int getAttempt() {
+        return attempt;
+    }
+
+    /**
+     * @return time in millis from starting to connect until connected, of the last connection
+     */
+    public synchronized long getLastConnectDuration() {
+        return lastConnectDuration;
+    }
+
+    public synchronized long getReconnectCount() {
+        return reconnectCount;
+    }
+
+    /**
+     * @return total time in millis spent disconnected, including the current disconnection
+     */
+    public synchronized long getOfflineDuration() {
+        return disconnectedTime > 0 ? offlineDuration + SystemClock.elapsedRealtime() - disconnectedTime
+                : offlineDuration;
+    }
+}
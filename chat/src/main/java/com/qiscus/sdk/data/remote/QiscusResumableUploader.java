@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.remote;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.Base64;
+
+import com.qiscus.sdk.Qiscus;
+import com.qiscus.sdk.data.model.QiscusUploadConfig;
+import com.qiscus.sdk.util.QiscusErrorLogger;
+import com.qiscus.sdk.util.QiscusLogger;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Chunked upload using the tus resumable upload protocol. Upload sessions are persisted by upload id (the comment
+ * unique id), so a failed or interrupted upload of the same file continues from the offset confirmed by server.
+ * Every chunk is retried with backoff before the upload fails.
+ */
+final class QiscusResumableUploader {
+    private static final String TAG = QiscusResumableUploader.class.getSimpleName();
+    private static final String TUS_VERSION = "1.0.0";
+    private static final MediaType OFFSET_OCTET_STREAM = MediaType.parse("application/offset+octet-stream");
+    private static final long RETRY_DELAY = 500;
+
+    private final OkHttpClient httpClient;
+    private final QiscusUploadConfig uploadConfig;
+    private final SharedPreferences sessions;
+
+    QiscusResumableUploader(OkHttpClient httpClient, QiscusUploadConfig uploadConfig) {
+        this(httpClient, uploadConfig, Qiscus.getApps().getSharedPreferences("uploads.cache", Context.MODE_PRIVATE));
+    }
+
+    QiscusResumableUploader(OkHttpClient httpClient, QiscusUploadConfig uploadConfig, SharedPreferences sessions) {
+        this.httpClient = httpClient;
+        this.uploadConfig = uploadConfig;
+        this.sessions = sessions;
+    }
+
+    Uri upload(File file, String uploadId, QiscusApi.ProgressListener progressListener) throws IOException {
+        long fileLength = file.length();
+        String uploadUrl = restoreSession(file, uploadId);
+        long offset = -1;
+        if (uploadUrl != null) {
+            offset = getOffset(uploadUrl);
+            if (offset < 0) {
+                removeSession(uploadId);
+            } else {
+                QiscusLogger.print(TAG, "Resume upload " + uploadId + " from " + offset + " of " + fileLength);
+            }
+        }
+        if (offset < 0) {
+            uploadUrl = createUpload(file);
+            saveSession(file, uploadId, uploadUrl);
+            offset = 0;
+        }
+
+        byte[] buffer = new byte[(int) Math.min(uploadConfig.getChunkSize(), Math.max(fileLength, 1))];
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            int retry = 0;
+            while (offset < fileLength) {
+                try {
+                    if (retry > 0) {
+                        // Server may have stored part of the failed chunk, continue from the offset it confirms.
+                        // Failing to ask counts as another failed attempt.
+                        long serverOffset = getOffset(uploadUrl);
+                        if (serverOffset >= 0) {
+                            offset = serverOffset;
+                        }
+                    }
+                    if (offset < fileLength) {
+                        int length = (int) Math.min(buffer.length, fileLength - offset);
+                        randomAccessFile.seek(offset);
+                        randomAccessFile.readFully(buffer, 0, length);
+                        offset = uploadChunk(uploadUrl, offset, buffer, length);
+                    }
+                    retry = 0;
+                    progressListener.onProgress(offset * 100 / fileLength);
+                } catch (IOException e) {
+                    if (retry >= uploadConfig.getMaxChunkRetry()) {
+                        throw e;
+                    }
+                    QiscusErrorLogger.print(TAG, "Failed to upload chunk at " + offset + ", retrying...");
+                    sleep(RETRY_DELAY << retry);
+                    retry++;
+                }
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+
+        removeSession(uploadId);
+        return Uri.parse(uploadUrl);
+    }
+
+    private String createUpload(File file) throws IOException {
+        String fileName = Base64.encodeToString(file.getName().getBytes(), Base64.NO_WRAP);
+        Request request = new Request.Builder()
+                .url(uploadConfig.getResumableUploadUrl())
+                .header("Tus-Resumable", TUS_VERSION)
+                .header("Upload-Length", String.valueOf(file.length()))
+                .header("Upload-Metadata", "filename " + fileName)
+                .post(RequestBody.create(null, new byte[0]))
+                .build();
+
+        Response response = httpClient.newCall(request).execute();
+        try {
+            String location = response.header("Location");
+            if (!response.isSuccessful() || location == null) {
+                throw new IOException("Can not create upload, response code " + response.code());
+            }
+            HttpUrl uploadUrl = response.request().url().resolve(location);
+            if (uploadUrl == null) {
+                throw new IOException("Invalid upload location " + location);
+            }
+            return uploadUrl.toString();
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * @return offset confirmed by server, or -1 if the upload no longer exists
+     */
+    private long getOffset(String uploadUrl) throws IOException {
+        Request request = new Request.Builder()
+                .url(uploadUrl)
+                .header("Tus-Resumable", TUS_VERSION)
+                .head()
+                .build();
+
+        Response response = httpClient.newCall(request).execute();
+        try {
+            String offset = response.header("Upload-Offset");
+            if (!response.isSuccessful() || offset == null) {
+                return -1;
+            }
+            return Long.parseLong(offset);
+        } catch (NumberFormatException e) {
+            return -1;
+        } finally {
+            response.close();
+        }
+    }
+
+    private long uploadChunk(String uploadUrl, long offset, byte[] buffer, int length) throws IOException {
+        Request request = new Request.Builder()
+                .url(uploadUrl)
+                .header("Tus-Resumable", TUS_VERSION)
+                .header("Upload-Offset", String.valueOf(offset))
+                .patch(RequestBody.create(OFFSET_OCTET_STREAM, buffer, 0, length))
+                .build();
+
+        Response response = httpClient.newCall(request).execute();
+        try {
+            String newOffset = response.header("Upload-Offset");
+            if (!response.isSuccessful() || newOffset == null) {
+                throw new IOException("Failed to upload chunk, response code " + response.code());
+            }
+            return Long.parseLong(newOffset);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid upload offset", e);
+        } finally {
+            response.close();
+        }
+    }
+
+    private String restoreSession(File file, String uploadId) {
+        String json = sessions.getString(uploadId, null);
+        if (json == null) {
+            return null;
+        }
+
+        try {
+            JSONObject session = new JSONObject(json);
+            if (session.getString("path").equals(file.getAbsolutePath())
+                    && session.getLong("length") == file.length()
+                    && session.getLong("modified") == file.lastModified()) {
+                return session.getString("url");
+            }
+        } catch (JSONException e) {
+            QiscusErrorLogger.print(e);
+        }
+        removeSession(uploadId);
+        return null;
+    }
+
+    private void saveSession(File file, String uploadId, String uploadUrl) {
+        try {
+            JSONObject session = new JSONObject();
+            session.put("url", uploadUrl);
+            session.put("path", file.getAbsolutePath());
+            session.put("length", file.length());
+            session.put("modified", file.lastModified());
+            sessions.edit().putString(uploadId, session.toString()).apply();
+        } catch (JSONException e) {
+            QiscusErrorLogger.print(e);
+        }
+    }
+
+    private void removeSession(String uploadId) {
+        sessions.edit().remove(uploadId).apply();
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Upload interrupted", e);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.remote;
+
+import com.qiscus.sdk.Qiscus;
+import com.qiscus.sdk.util.QiscusErrorLogger;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import okhttp3.FormBody;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+
+/**
+ * Local cache of room and room list responses (get_room_by_id, user_rooms and rooms_info) keyed by request
+ * without the user token. Cached responses are revalidated with If-None-Match / If-Modified-Since and served
+ * from the cache on 304. Responses without validators are served from the cache while younger than
+ * {@link com.qiscus.sdk.data.model.QiscusHttpConfig#getRoomCacheTtl()}.
+ * <p>
+ * The cache state of every response is reported in {@link #HEADER_CACHE_STATUS}, and a request with
+ * {@link #HEADER_CACHE_MODE} set to {@link #ONLY_IF_CACHED} is answered from the cache only, with 504 on miss.
+ * <p>
+ * Cached responses of a room are dropped once a request changing the room succeeds, or when
+ * {@link #invalidateRoom(long)} is called for changes made by other users.
+ */
+public final class QiscusRoomCache implements Interceptor {
+    static final String HEADER_CACHE_MODE = "Qiscus-Cache-Mode";
+    static final String HEADER_CACHE_STATUS = "Qiscus-Cache-Status";
+    static final String ONLY_IF_CACHED = "only-if-cached";
+    static final String STATUS_HIT = "hit";
+    static final String STATUS_REVALIDATED = "revalidated";
+    static final String STATUS_MISS = "miss";
+
+    private static final Set<String> CACHED_PATHS = new HashSet<>(Arrays.asList(
+            "/api/v2/mobile/get_room_by_id",
+            "/api/v2/mobile/user_rooms",
+            "/api/v2/mobile/rooms_info"));
+
+    private static final Set<String> ROOM_CHANGING_PATHS = new HashSet<>(Arrays.asList(
+            "/api/v2/mobile/post_comment",
+            "/api/v2/mobile/update_room",
+            "/api/v2/mobile/clear_room_messages",
+            "/api/v2/mobile/delete_messages"));
+
+    private final File cacheDir;
+    private long hitCount;
+    private long revalidatedCount;
+    private long missCount;
+    private long bytesSaved;
+    private long bytesDownloaded;
+
+    QiscusRoomCache() {
+        cacheDir = new File(Qiscus.getApps().getCacheDir(), "qiscus_room_cache");
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (ROOM_CHANGING_PATHS.contains(request.url().encodedPath())) {
+            Response response = chain.proceed(request);
+            if (response.isSuccessful()) {
+                invalidate(roomIds(request));
+            }
+            return response;
+        }
+        if (!CACHED_PATHS.contains(request.url().encodedPath())) {
+            return chain.proceed(request);
+        }
+
+        String cacheMode = request.header(HEADER_CACHE_MODE);
+        if (cacheMode != null) {
+            request = request.newBuilder().removeHeader(HEADER_CACHE_MODE).build();
+        }
+
+        String key = key(request);
+        JSONObject entry = loadEntry(key);
+        if (ONLY_IF_CACHED.equals(cacheMode)) {
+            if (entry == null) {
+                return new Response.Builder()
+                        .request(request)
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(504)
+                        .message("Not cached")
+                        .body(ResponseBody.create(null, new byte[0]))
+                        .build();
+            }
+            return cachedResponse(request, key, entry, STATUS_HIT);
+        }
+
+        String etag = entry == null ? null : entry.optString("etag", null);
+        String lastModified = entry == null ? null : entry.optString("last_modified", null);
+        long ttl = Qiscus.getChatConfig().getHttpConfig().getRoomCacheTtl() * 1000;
+        if (entry != null && etag == null && lastModified == null
+                && System.currentTimeMillis() - entry.optLong("stored_at") < ttl) {
+            synchronized (this) {
+                hitCount++;
+            }
+            return cachedResponse(request, key, entry, STATUS_HIT);
+        }
+
+        Request.Builder requestBuilder = request.newBuilder();
+        if (etag != null) {
+            requestBuilder.header("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            requestBuilder.header("If-Modified-Since", lastModified);
+        }
+
+        Response response = chain.proceed(requestBuilder.build());
+        if (response.code() == 304 && entry != null) {
+            response.close();
+            recordRevalidated(entry);
+            return cachedResponse(request, key, entry, STATUS_REVALIDATED);
+        }
+        if (!response.isSuccessful() || response.body() == null) {
+            return response;
+        }
+
+        ResponseBody responseBody = response.body();
+        MediaType contentType = responseBody.contentType();
+        byte[] body = responseBody.bytes();
+        saveEntry(key, roomIds(request), response, contentType, body);
+        synchronized (this) {
+            missCount++;
+            bytesDownloaded += body.length;
+        }
+        return response.newBuilder()
+                .header(HEADER_CACHE_STATUS, STATUS_MISS)
+                .body(ResponseBody.create(contentType, body))
+                .build();
+    }
+
+    private Response cachedResponse(Request request, String key, JSONObject entry, String status) throws IOException {
+        BufferedSource source = Okio.buffer(Okio.source(new File(cacheDir, key + ".body")));
+        byte[] body;
+        try {
+            body = source.readByteArray();
+        } finally {
+            source.close();
+        }
+
+        String contentType = entry.optString("content_type", null);
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .header(HEADER_CACHE_STATUS, status)
+                .body(ResponseBody.create(contentType == null ? null : MediaType.parse(contentType), body))
+                .build();
+    }
+
+    private synchronized JSONObject loadEntry(String key) {
+        File metaFile = new File(cacheDir, key + ".meta");
+        if (!metaFile.exists() || !new File(cacheDir, key + ".body").exists()) {
+            return null;
+        }
+
+        try {
+            BufferedSource source = Okio.buffer(Okio.source(metaFile));
+            try {
+                return new JSONObject(source.readUtf8());
+            } finally {
+                source.close();
+            }
+        } catch (IOException | JSONException e) {
+            QiscusErrorLogger.print(e);
+            return null;
+        }
+    }
+
+    private synchronized void saveEntry(String key, List<Long> roomIds, Response response, MediaType contentType,
+                                        byte[] body) {
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            return;
+        }
+
+        try {
+            JSONObject entry = new JSONObject();
+            if (roomIds != null) {
+                entry.put("room_ids", new JSONArray(roomIds));
+            }
+            entry.put("etag", response.header("ETag"));
+            entry.put("last_modified", response.header("Last-Modified"));
+            entry.put("content_type", contentType == null ? null : contentType.toString());
+            entry.put("stored_at", System.currentTimeMillis());
+            entry.put("size", body.length);
+
+            write(new File(cacheDir, key + ".body"), body);
+            write(new File(cacheDir, key + ".meta"), entry.toString().getBytes("UTF-8"));
+        } catch (IOException | JSONException e) {
+            QiscusErrorLogger.print(e);
+        }
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        BufferedSink sink = Okio.buffer(Okio.sink(tempFile));
+        try {
+            sink.write(data);
+        } finally {
+            sink.close();
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Can not write " + file.getPath());
+        }
+    }
+
+    private synchronized void recordRevalidated(JSONObject entry) {
+        revalidatedCount++;
+        bytesSaved += entry.optLong("size");
+    }
+
+    /**
+     * @return rooms the request reads or changes, or null when it may cover any room
+     */
+    private static List<Long> roomIds(Request request) {
+        List<String> values = new ArrayList<>();
+        switch (request.url().encodedPath()) {
+            case "/api/v2/mobile/get_room_by_id":
+                values.add(request.url().queryParameter("id"));
+                break;
+            case "/api/v2/mobile/rooms_info":
+                if (!formValues(request, "room_unique_id[]").isEmpty()) {
+                    return null;
+                }
+                values.addAll(formValues(request, "room_id[]"));
+                break;
+            case "/api/v2/mobile/post_comment":
+                values.addAll(formValues(request, "topic_id"));
+                break;
+            case "/api/v2/mobile/update_room":
+                values.addAll(formValues(request, "id"));
+                break;
+            default:
+                return null;
+        }
+
+        List<Long> roomIds = new ArrayList<>();
+        for (String value : values) {
+            try {
+                roomIds.add(Long.parseLong(value));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return roomIds.isEmpty() ? null : roomIds;
+    }
+
+    private static List<String> formValues(Request request, String name) {
+        List<String> values = new ArrayList<>();
+        if (request.body() instanceof FormBody) {
+            FormBody formBody = (FormBody) request.body();
+            for (int i = 0; i < formBody.size(); i++) {
+                if (name.equals(formBody.name(i))) {
+                    values.add(formBody.value(i));
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Drop cached responses containing the room, e.g. after a comment or member change received from other users.
+     */
+    public void invalidateRoom(long roomId) {
+        invalidate(Collections.singletonList(roomId));
+    }
+
+    /**
+     * Drop cached responses of the rooms, or every cached response when roomIds is null.
+     */
+    private synchronized void invalidate(List<Long> roomIds) {
+        if (roomIds == null) {
+            clear();
+            return;
+        }
+
+        File[] metaFiles = cacheDir.listFiles((dir, name) -> name.endsWith(".meta"));
+        if (metaFiles == null) {
+            return;
+        }
+        for (File metaFile : metaFiles) {
+            String key = metaFile.getName().substring(0, metaFile.getName().length() - ".meta".length());
+            JSONObject entry = loadEntry(key);
+            if (entry == null || containsAny(entry.optJSONArray("room_ids"), roomIds)) {
+                metaFile.delete();
+                new File(cacheDir, key + ".body").delete();
+            }
+        }
+    }
+
+    /**
+     * @return true if the cached room ids contain any of the rooms, or are unknown because the response may
+     * contain any room
+     */
+    private static boolean containsAny(JSONArray cachedRoomIds, List<Long> roomIds) {
+        if (cachedRoomIds == null) {
+            return true;
+        }
+        for (int i = 0; i < cachedRoomIds.length(); i++) {
+            if (roomIds.contains(cachedRoomIds.optLong(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String key(Request request) throws IOException {
+        HttpUrl url = request.url().newBuilder().removeAllQueryParameters("token").build();
+        StringBuilder key = new StringBuilder(request.method()).append(' ').append(url);
+        if (request.body() instanceof FormBody) {
+            FormBody formBody = (FormBody) request.body();
+            for (int i = 0; i < formBody.size(); i++) {
+                if (!"token".equals(formBody.name(i))) {
+                    key.append('&').append(formBody.name(i)).append('=').append(formBody.value(i));
+                }
+            }
+        }
+        if (Qiscus.hasSetupUser()) {
+            key.append(' ').append(Qiscus.getQiscusAccount().getEmail());
+        }
+
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.toString().getBytes("UTF-8"));
+            StringBuilder hash = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hash.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Remove every cached response, e.g. when user logout.
+     */
+    public synchronized void clear() {
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * @return number of responses served from cache without request because still fresh, only happens when
+     * {@link com.qiscus.sdk.data.model.QiscusHttpConfig#getRoomCacheTtl()} is set
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return number of responses served from cache after server answered 304
+     */
+    public synchronized long getRevalidatedCount() {
+        return revalidatedCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return response bytes the server did not send again because it answered 304
+     */
+    public synchronized long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    public synchronized long getBytesDownloaded() {
+        return bytesDownloaded;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.remote;
+
+import android.support.annotation.RestrictTo;
+
+import com.qiscus.sdk.Qiscus;
+import com.qiscus.sdk.data.local.QiscusEventCache;
+import com.qiscus.sdk.data.local.QiscusSyncCursor;
+import com.qiscus.sdk.data.model.QiscusComment;
+import com.qiscus.sdk.data.model.QiscusSyncMetrics;
+import com.qiscus.sdk.event.QiscusSyncEvent;
+import com.qiscus.sdk.util.QiscusLogger;
+
+import org.greenrobot.eventbus.EventBus;
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import rx.Emitter;
+import rx.Observable;
+
+/**
+ * Incremental comment and event sync. Starting from {@link QiscusSyncCursor} it fetches bounded pages from the
+ * sync endpoint until caught up. Every page is saved as one batch and dispatched to the UI once, then the
+ * cursor is moved to the last comment of the page, so an interrupted sync resumes from the last completed page.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public enum QiscusSyncEngine {
+    INSTANCE;
+    private static final int BATCH_SIZE = 100;
+    private static final int MAX_PAGES = 20;
+    private static final int MAX_EVENT_PAGES = 50;
+
+    private final AtomicBoolean syncing = new AtomicBoolean(false);
+    private final AtomicBoolean syncingEvents = new AtomicBoolean(false);
+    private volatile QiscusSyncMetrics lastSyncMetrics;
+
+    public static QiscusSyncEngine getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sync comments received since the last sync. Only one sync runs at a time, calling this while syncing
+     * completes immediately.
+     *
+     * @return new or updated comments of every page
+     */
+    public Observable<List<QiscusComment>> sync() {
+        return Observable.create(subscriber -> {
+            if (!syncing.compareAndSet(false, true)) {
+                subscriber.onCompleted();
+                return;
+            }
+
+            long startTime = System.currentTimeMillis();
+            int itemCount = 0;
+            EventBus.getDefault().post(QiscusSyncEvent.STARTED);
+            QiscusLogger.print("Sync started...");
+            try {
+                long lastCommentId = getLastCommentId();
+                int pageCount = 0;
+                while (lastCommentId > 0 && pageCount < MAX_PAGES) {
+                    List<QiscusComment> page = QiscusApi.getInstance().sync(lastCommentId, BATCH_SIZE)
+                            .toList()
+                            .toBlocking()
+                            .single();
+                    if (page.isEmpty()) {
+                        break;
+                    }
+                    pageCount++;
+                    itemCount += page.size();
+
+                    long pageLastCommentId = lastCommentId;
+                    for (QiscusComment qiscusComment : page) {
+                        pageLastCommentId = Math.max(pageLastCommentId, qiscusComment.getId());
+                    }
+
+                    List<QiscusComment> receivedComments = QiscusPusherApi.handleComments(page);
+                    QiscusSyncCursor.getInstance().setLastCommentId(pageLastCommentId);
+                    if (!receivedComments.isEmpty()) {
+                        subscriber.onNext(receivedComments);
+                    }
+
+                    // A short page means we are caught up, no need another request just to get an empty page
+                    if (page.size() < BATCH_SIZE || pageLastCommentId == lastCommentId) {
+                        break;
+                    }
+                    lastCommentId = pageLastCommentId;
+                }
+
+                lastSyncMetrics = new QiscusSyncMetrics(startTime, System.currentTimeMillis() - startTime,
+                        itemCount, true);
+                EventBus.getDefault().post(QiscusSyncEvent.COMPLETED);
+                QiscusLogger.print("Sync completed, " + itemCount + " comments in " + pageCount + " pages...");
+                subscriber.onCompleted();
+            } catch (Exception e) {
+                lastSyncMetrics = new QiscusSyncMetrics(startTime, System.currentTimeMillis() - startTime,
+                        itemCount, false);
+                EventBus.getDefault().post(QiscusSyncEvent.FAILED);
+                QiscusLogger.print("Sync failed...");
+                subscriber.onError(e);
+            } finally {
+                syncing.set(false);
+            }
+        }, Emitter.BackpressureMode.BUFFER);
+    }
+
+    /**
+     * Drain sync_event until caught up. Every page is applied as one batch before the next page is requested,
+     * so catching up after a long offline period takes one sync instead of many heartbeats.
+     *
+     * @return events of every page
+     */
+    public Observable<List<JSONObject>> syncEvents() {
+        return Observable.create(subscriber -> {
+            if (!syncingEvents.compareAndSet(false, true)) {
+                subscriber.onCompleted();
+                return;
+            }
+
+            try {
+                long lastEventId = QiscusEventCache.getInstance().getLastEventId();
+                for (int pageCount = 0; pageCount < MAX_EVENT_PAGES; pageCount++) {
+                    List<JSONObject> events = QiscusApi.getInstance().getEvents(lastEventId)
+                            .toBlocking()
+                            .single();
+                    long newLastEventId = QiscusEventCache.getInstance().getLastEventId();
+                    if (events.isEmpty() || newLastEventId <= lastEventId) {
+                        break;
+                    }
+
+                    subscriber.onNext(events);
+                    lastEventId = newLastEventId;
+                }
+                subscriber.onCompleted();
+            } catch (Exception e) {
+                subscriber.onError(e);
+            } finally {
+                syncingEvents.set(false);
+            }
+        }, Emitter.BackpressureMode.BUFFER);
+    }
+
+    private long getLastCommentId() {
+        long lastCommentId = QiscusSyncCursor.getInstance().getLastCommentId();
+        if (lastCommentId <= 0) {
+            // First sync after upgrade or login, start from the latest local comment
+            QiscusComment latestComment = Qiscus.getDataStore().getLatestComment();
+            if (latestComment != null) {
+                lastCommentId = latestComment.getId();
+                QiscusSyncCursor.getInstance().setLastCommentId(lastCommentId);
+            }
+        }
+        return lastCommentId;
+    }
+
+    public boolean isSyncing() {
+        return syncing.get();
+    }
+
+    /**
+     * Metrics of the last finished sync, set before {@link QiscusSyncEvent#COMPLETED} or
+     * {@link QiscusSyncEvent#FAILED} is posted.
+     *
+     * @return the metrics, or null if no sync finished yet
+     */
+    public QiscusSyncMetrics getLastSyncMetrics() {
+        return lastSyncMetrics;
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.remote;
+
+import android.net.Uri;
+
+import com.qiscus.sdk.Qiscus;
+import com.qiscus.sdk.data.model.QiscusComment;
+import com.qiscus.sdk.event.QiscusTransferProgressEvent;
+
+import org.greenrobot.eventbus.EventBus;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+
+import rx.Observable;
+import rx.Subscription;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import rx.subjects.AsyncSubject;
+
+/**
+ * Central queue of attachment uploads and downloads. Transfers run with bounded concurrency per direction and
+ * start by priority, then by request order. Requesting a transfer that is already queued or running (same comment
+ * for upload, same url for download) joins the existing one instead of starting another. Transfers can be paused,
+ * resumed and cancelled by comment, and their aggregate progress is posted as {@link QiscusTransferProgressEvent}.
+ */
+public enum QiscusTransferManager {
+    INSTANCE;
+
+    public enum Priority {
+        BACKGROUND, USER, VISIBLE
+    }
+
+    private final Map<String, Transfer<?>> transfers = new HashMap<>();
+    private final Map<String, String> commentTransfers = new HashMap<>();
+    private final PriorityQueue<Transfer<?>> uploadQueue = new PriorityQueue<>(11, Transfer::compare);
+    private final PriorityQueue<Transfer<?>> downloadQueue = new PriorityQueue<>(11, Transfer::compare);
+    private int runningUploads;
+    private int runningDownloads;
+    private int maxConcurrentUploads = 2;
+    private int maxConcurrentDownloads = 3;
+    private long sequence;
+
+    public static QiscusTransferManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Upload the attachment of the comment, progress is set to the comment.
+     *
+     * @return uploaded file url
+     */
+    public Observable<Uri> upload(QiscusComment qiscusComment, File file, Priority priority) {
+        return Observable.defer(() -> enqueue("upload_" + qiscusComment.getUniqueId(), true, qiscusComment, priority,
+                listener -> QiscusApi.getInstance().uploadFile(file, qiscusComment.getUniqueId(), listener)));
+    }
+
+    /**
+     * Download the attachment of the comment, progress is set to every comment waiting for the same url.
+     *
+     * @return downloaded file
+     */
+    public Observable<File> download(QiscusComment qiscusComment, Priority priority) {
+        String url = qiscusComment.getAttachmentUri().toString();
+        long progressInterval = Qiscus.getChatConfig().getUploadConfig().getProgressInterval();
+        return Observable.defer(() -> enqueue("download_" + url, false, qiscusComment, priority,
+                listener -> QiscusApi.getInstance().downloadFile(url, qiscusComment.getAttachmentName(),
+                        new QiscusApi.ThrottledProgressListener(listener, progressInterval))));
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized <T> Observable<T> enqueue(String key, boolean upload, QiscusComment qiscusComment,
+                                                   Priority priority,
+                                                   Func1<QiscusApi.ProgressListener, Observable<T>> work) {
+        Transfer<T> transfer = (Transfer<T>) transfers.get(key);
+        if (transfer == null) {
+            transfer = new Transfer<>(key, upload, priority, sequence++, work);
+            transfers.put(key, transfer);
+            getQueue(transfer).add(transfer);
+        } else if (priority.ordinal() > transfer.priority.ordinal()) {
+            updatePriority(transfer, priority);
+        }
+
+        if (!transfer.comments.contains(qiscusComment)) {
+            transfer.comments.add(qiscusComment);
+        }
+        commentTransfers.put(qiscusComment.getUniqueId(), key);
+        startNext();
+        return transfer.result.asObservable();
+    }
+
+    private PriorityQueue<Transfer<?>> getQueue(Transfer<?> transfer) {
+        return transfer.upload ? uploadQueue : downloadQueue;
+    }
+
+    private void startNext() {
+        while (runningUploads < maxConcurrentUploads && !uploadQueue.isEmpty()) {
+            runningUploads++;
+            start(uploadQueue.poll());
+        }
+        while (runningDownloads < maxConcurrentDownloads && !downloadQueue.isEmpty()) {
+            runningDownloads++;
+            start(downloadQueue.poll());
+        }
+    }
+
+    private <T> void start(Transfer<T> transfer) {
+        int runId = ++transfer.runId;
+        transfer.running = true;
+        transfer.subscription = transfer.work.call(progress -> onProgress(transfer, progress))
+                .last()
+                .subscribeOn(Schedulers.io())
+                .subscribe(result -> onFinished(transfer, runId, result, null),
+                        throwable -> onFinished(transfer, runId, null, throwable));
+    }
+
+    private <T> void onFinished(Transfer<T> transfer, int runId, T result, Throwable throwable) {
+        synchronized (this) {
+            if (!transfer.running || transfer.runId != runId) {
+                return;
+            }
+            stop(transfer);
+            remove(transfer);
+            startNext();
+        }
+
+        if (throwable != null) {
+            transfer.result.onError(throwable);
+        } else {
+            transfer.result.onNext(result);
+            transfer.result.onCompleted();
+        }
+        postProgress();
+    }
+
+    private void onProgress(Transfer<?> transfer, long progress) {
+        List<QiscusComment> comments;
+        synchronized (this) {
+            transfer.progress = progress;
+            comments = new ArrayList<>(transfer.comments);
+        }
+        for (QiscusComment qiscusComment : comments) {
+            qiscusComment.setProgress((int) progress);
+        }
+        postProgress();
+    }
+
+    private void postProgress() {
+        int uploadCount = 0;
+        int downloadCount = 0;
+        long totalProgress = 0;
+        synchronized (this) {
+            for (Transfer<?> transfer : transfers.values()) {
+                if (transfer.upload) {
+                    uploadCount++;
+                } else {
+                    downloadCount++;
+                }
+                totalProgress += transfer.progress;
+            }
+        }
+        int count = uploadCount + downloadCount;
+        EventBus.getDefault().post(new QiscusTransferProgressEvent(uploadCount, downloadCount,
+                count == 0 ? 100 : (int) (totalProgress / count)));
+    }
+
+    private void stop(Transfer<?> transfer) {
+        if (transfer.running) {
+            transfer.running = false;
+            if (transfer.upload) {
+                runningUploads--;
+            } else {
+                runningDownloads--;
+            }
+            transfer.subscription.unsubscribe();
+        } else {
+            getQueue(transfer).remove(transfer);
+        }
+    }
+
+    private void remove(Transfer<?> transfer) {
+        transfers.remove(transfer.key);
+        for (QiscusComment qiscusComment : transfer.comments) {
+            commentTransfers.remove(qiscusComment.getUniqueId());
+        }
+    }
+
+    private void updatePriority(Transfer<?> transfer, Priority priority) {
+        boolean queued = getQueue(transfer).remove(transfer);
+        transfer.priority = priority;
+        if (queued) {
+            getQueue(transfer).add(transfer);
+        }
+    }
+
+    private Transfer<?> getTransfer(QiscusComment qiscusComment) {
+        String key = commentTransfers.get(qiscusComment.getUniqueId());
+        return key == null ? null : transfers.get(key);
+    }
+
+    /**
+     * Move the transfer of the comment in the queue, e.g. to {@link Priority#VISIBLE} when the comment is shown.
+     */
+    public synchronized void setPriority(QiscusComment qiscusComment, Priority priority) {
+        Transfer<?> transfer = getTransfer(qiscusComment);
+        if (transfer != null) {
+            updatePriority(transfer, priority);
+        }
+    }
+
+    /**
+     * Stop the transfer of the comment and keep it out of the queue until {@link #resume(QiscusComment)}.
+     * Resumable uploads continue from the last uploaded chunk when resumed.
+     */
+    public synchronized void pause(QiscusComment qiscusComment) {
+        Transfer<?> transfer = getTransfer(qiscusComment);
+        if (transfer != null && !transfer.paused) {
+            stop(transfer);
+            transfer.paused = true;
+            startNext();
+        }
+    }
+
+    public synchronized void resume(QiscusComment qiscusComment) {
+        Transfer<?> transfer = getTransfer(qiscusComment);
+        if (transfer != null && transfer.paused) {
+            transfer.paused = false;
+            getQueue(transfer).add(transfer);
+            startNext();
+        }
+    }
+
+    /**
+     * Stop waiting for the transfer of the comment. The transfer itself is cancelled when no other comment
+     * is waiting for it.
+     */
+    public void cancel(QiscusComment qiscusComment) {
+        Transfer<?> transfer;
+        synchronized (this) {
+            transfer = getTransfer(qiscusComment);
+            if (transfer == null) {
+                return;
+            }
+            transfer.comments.remove(qiscusComment);
+            commentTransfers.remove(qiscusComment.getUniqueId());
+            if (!transfer.comments.isEmpty()) {
+                return;
+            }
+            stop(transfer);
+            remove(transfer);
+            startNext();
+        }
+        transfer.result.onError(new CancellationException("Transfer cancelled"));
+        postProgress();
+    }
+
+    public synchronized boolean isTransferring(QiscusComment qiscusComment) {
+        return getTransfer(qiscusComment) != null;
+    }
+
+    public synchronized boolean isPaused(QiscusComment qiscusComment) {
+        Transfer<?> transfer = getTransfer(qiscusComment);
+        return transfer != null && transfer.paused;
+    }
+
+    public synchronized void setMaxConcurrentUploads(int maxConcurrentUploads) {
+        this.maxConcurrentUploads = maxConcurrentUploads;
+        startNext();
+    }
+
+    public synchronized void setMaxConcurrentDownloads(int maxConcurrentDownloads) {
+        this.maxConcurrentDownloads = maxConcurrentDownloads;
+        startNext();
+    }
+
+    private static class Transfer<T> {
+        private final String key;
+        private final boolean upload;
+        private final long sequence;
+        private final Func1<QiscusApi.ProgressListener, Observable<T>> work;
+        private final AsyncSubject<T> result = AsyncSubject.create();
+        private final List<QiscusComment> comments = new ArrayList<>();
+        private Priority priority;
+        private Subscription subscription;
+        private boolean running;
+        private boolean paused;
+        private int runId;
+        private long progress;
+
+        private Transfer(String key, boolean upload, Priority priority, long sequence,
+                         Func1<QiscusApi.ProgressListener, Observable<T>> work) {
+            this.key = key;
+            this.upload = upload;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.work = work;
+        }
+
+        private static int compare(Transfer<?> lhs, Transfer<?> rhs) {
+            if (lhs.priority != rhs.priority) {
+                return rhs.priority.ordinal() - lhs.priority.ordinal();
+            }
+            return lhs.sequence < rhs.sequence ? -1 : (lhs.sequence == rhs.sequence ? 0 : 1);
+        }
+    }
+}
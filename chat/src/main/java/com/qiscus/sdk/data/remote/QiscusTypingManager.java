@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.remote;
+
+import com.qiscus.sdk.event.QiscusChatRoomEvent;
+import com.qiscus.sdk.event.QiscusTypingEvent;
+import com.qiscus.sdk.util.QiscusAndroidUtil;
+
+import org.greenrobot.eventbus.EventBus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Throttles typing publishes of the current user and coalesces typing events of other users.
+ * Outbound, "1" is published once when the user starts typing and refreshed at most every REFRESH_INTERVAL,
+ * "0" is published after STOP_DELAY without input. Inbound, typers of every room are kept as a set, changes
+ * are emitted at most every EMIT_INTERVAL and typers which are not refreshed within TYPING_TIMEOUT expire, so a
+ * lost stop message does not leave a stale indicator.
+ */
+public enum QiscusTypingManager {
+    INSTANCE;
+    private static final long REFRESH_INTERVAL = 5000;
+    private static final long STOP_DELAY = 2000;
+    private static final long TYPING_TIMEOUT = 10000;
+    private static final long EMIT_INTERVAL = 500;
+
+    private final Map<Long, OutboundTyping> outboundTypings = new HashMap<>();
+    private final Map<Long, Map<String, Long>> typers = new HashMap<>();
+    private final Map<Long, Set<String>> emittedTypers = new HashMap<>();
+    private ScheduledFuture<?> pendingEmit;
+    private long pendingEmitTime;
+    private long lastEmitTime;
+
+    private long publishCount;
+    private long receivedCount;
+    private long emitCount;
+
+    public static QiscusTypingManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Notify that current user is typing in the room, call it on every text change.
+     */
+    public void onTyping(long roomId) {
+        boolean publish = false;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            OutboundTyping typing = outboundTypings.get(roomId);
+            if (typing == null) {
+                typing = new OutboundTyping();
+                outboundTypings.put(roomId, typing);
+            }
+            if (now - typing.lastPublishTime >= REFRESH_INTERVAL) {
+                typing.lastPublishTime = now;
+                publishCount++;
+                publish = true;
+            }
+            typing.lastInputTime = now;
+            if (typing.stopTask == null || typing.stopTask.isDone()) {
+                typing.stopTask = QiscusAndroidUtil.runOnBackgroundThread(() -> stopIfIdle(roomId), STOP_DELAY);
+            }
+        }
+        if (publish) {
+            QiscusPusherApi.getInstance().setUserTyping(roomId, true);
+        }
+    }
+
+    /**
+     * Publish stop typing now if current user was typing in the room, e.g. when leaving the room.
+     */
+    public void stopTyping(long roomId) {
+        synchronized (this) {
+            OutboundTyping typing = outboundTypings.remove(roomId);
+            if (typing == null) {
+                return;
+            }
+            if (typing.stopTask != null) {
+                typing.stopTask.cancel(false);
+            }
+            publishCount++;
+        }
+        QiscusPusherApi.getInstance().setUserTyping(roomId, false);
+    }
+
+    private void stopIfIdle(long roomId) {
+        synchronized (this) {
+            OutboundTyping typing = outboundTypings.get(roomId);
+            if (typing == null) {
+                return;
+            }
+            long idleTime = System.currentTimeMillis() - typing.lastInputTime;
+            if (idleTime < STOP_DELAY) {
+                typing.stopTask = QiscusAndroidUtil.runOnBackgroundThread(() -> stopIfIdle(roomId),
+                        STOP_DELAY - idleTime);
+                return;
+            }
+            outboundTypings.remove(roomId);
+            publishCount++;
+        }
+        QiscusPusherApi.getInstance().setUserTyping(roomId, false);
+    }
+
+    synchronized void onTypingReceived(long roomId, String user, boolean typing) {
+        receivedCount++;
+        Map<String, Long> roomTypers = typers.get(roomId);
+        if (typing) {
+            if (roomTypers == null) {
+                roomTypers = new HashMap<>();
+                typers.put(roomId, roomTypers);
+            }
+            roomTypers.put(user, System.currentTimeMillis() + TYPING_TIMEOUT);
+        } else if (roomTypers == null || roomTypers.remove(user) == null) {
+            return;
+        }
+        scheduleEmit(lastEmitTime + EMIT_INTERVAL);
+    }
+
+    private void scheduleEmit(long time) {
+        if (pendingEmit != null && !pendingEmit.isDone()) {
+            if (pendingEmitTime <= time) {
+                return;
+            }
+            pendingEmit.cancel(false);
+        }
+        pendingEmitTime = time;
+        pendingEmit = QiscusAndroidUtil.runOnBackgroundThread(this::emit,
+                Math.max(0, time - System.currentTimeMillis()));
+    }
+
+    private void emit() {
+        List<QiscusTypingEvent> typingEvents = new ArrayList<>();
+        List<QiscusChatRoomEvent> roomEvents = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            pendingEmit = null;
+            lastEmitTime = now;
+            long nextExpiry = Long.MAX_VALUE;
+
+            Set<Long> roomIds = new HashSet<>(typers.keySet());
+            roomIds.addAll(emittedTypers.keySet());
+            for (long roomId : roomIds) {
+                Set<String> current = new HashSet<>();
+                Map<String, Long> roomTypers = typers.get(roomId);
+                if (roomTypers != null) {
+                    Iterator<Map.Entry<String, Long>> iterator = roomTypers.entrySet().iterator();
+                    while (iterator.hasNext()) {
+                        Map.Entry<String, Long> typer = iterator.next();
+                        if (typer.getValue() <= now) {
+                            iterator.remove();
+                        } else {
+                            current.add(typer.getKey());
+                            nextExpiry = Math.min(nextExpiry, typer.getValue());
+                        }
+                    }
+                    if (roomTypers.isEmpty()) {
+                        typers.remove(roomId);
+                    }
+                }
+
+                Set<String> previous = emittedTypers.get(roomId);
+                if (previous == null) {
+                    previous = Collections.emptySet();
+                }
+                if (current.equals(previous)) {
+                    continue;
+                }
+
+                for (String user : current) {
+                    if (!previous.contains(user)) {
+                        roomEvents.add(createRoomEvent(roomId, user, true));
+                    }
+                }
+                for (String user : previous) {
+                    if (!current.contains(user)) {
+                        roomEvents.add(createRoomEvent(roomId, user, false));
+                    }
+                }
+                if (current.isEmpty()) {
+                    emittedTypers.remove(roomId);
+                } else {
+                    emittedTypers.put(roomId, current);
+                }
+                typingEvents.add(new QiscusTypingEvent(roomId, Collections.unmodifiableSet(current)));
+                emitCount++;
+            }
+
+            if (nextExpiry != Long.MAX_VALUE) {
+                scheduleEmit(Math.max(nextExpiry, now + EMIT_INTERVAL));
+            }
+        }
+
+        for (QiscusTypingEvent typingEvent : typingEvents) {
+            EventBus.getDefault().post(typingEvent);
+        }
+        for (QiscusChatRoomEvent roomEvent : roomEvents) {
+            EventBus.getDefault().post(roomEvent);
+        }
+    }
+
+    private static QiscusChatRoomEvent createRoomEvent(long roomId, String user, boolean typing) {
+        return new QiscusChatRoomEvent()
+                .setRoomId(roomId)
+                .setUser(user)
+                .setEvent(QiscusChatRoomEvent.Event.TYPING)
+                .setTyping(typing);
+    }
+
+    /**
+     * @return users currently typing in the room, as last emitted
+     */
+    public synchronized Set<String> getTypingUsers(long roomId) {
+        Set<String> users = emittedTypers.get(roomId);
+        return users == null ? Collections.emptySet() : new HashSet<>(users);
+    }
+
+    public synchronized void clear() {
+        for (OutboundTyping typing : outboundTypings.values()) {
+            if (typing.stopTask != null) {
+                typing.stopTask.cancel(false);
+            }
+        }
+        outboundTypings.clear();
+        if (pendingEmit != null) {
+            pendingEmit.cancel(false);
+            pendingEmit = null;
+        }
+        typers.clear();
+        emittedTypers.clear();
+    }
+
+    /**
+     * @return number of typing messages published by current user
+     */
+    public synchronized long getPublishCount() {
+        return publishCount;
+    }
+
+    /**
+     * @return number of typing messages received from other users
+     */
+    public synchronized long getReceivedCount() {
+        return receivedCount;
+    }
+
+    /**
+     * @return number of coalesced typing events emitted
+     */
+    public synchronized long getEmitCount() {
+        return emitCount;
+    }
+
+    private static class OutboundTyping {
+        private long lastPublishTime;
+        private long lastInputTime;
+        private ScheduledFuture<?> stopTask;
+    }
+}
@@ -35,6 +35,7 @@ public enum QiscusUrlScraper {
 
     QiscusUrlScraper() {
         rxUnfurl = new RxUnfurl.Builder()
+                .client(QiscusHttpEngine.getInstance().getClient())
                 .scheduler(Schedulers.io())
                 .build();
     }
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.event;
+
+import com.qiscus.sdk.data.model.QiscusComment;
+
+import java.util.List;
+
+/**
+ * Posted once for every batch of received comments, such as a sync page, instead of one
+ * {@link QiscusCommentReceivedEvent} per comment. Comments are already saved when this is posted.
+ */
+public class QiscusCommentsReceivedEvent {
+    private List<QiscusComment> qiscusComments;
+
+    public QiscusCommentsReceivedEvent(List<QiscusComment> qiscusComments) {
+        this.qiscusComments = qiscusComments;
+    }
+
+    public List<QiscusComment> getQiscusComments() {
+        return qiscusComments;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.event;
+
+/**
+ * Posted after a storage retention run removed something.
+ */
+public class QiscusRetentionEvent {
+    private int deletedComments;
+    private int deletedFiles;
+    private long reclaimedBytes;
+
+    public QiscusRetentionEvent(int deletedComments, int deletedFiles, long reclaimedBytes) {
+        this.deletedComments = deletedComments;
+        this.deletedFiles = deletedFiles;
+        this.reclaimedBytes = reclaimedBytes;
+    }
+
+    public int getDeletedComments() {
+        return deletedComments;
+    }
+
+    public int getDeletedFiles() {
+        return deletedFiles;
+    }
+
+    /**
+     * @return bytes freed from database file and downloaded media
+     */
+    public long getReclaimedBytes() {
+        return reclaimedBytes;
+    }
+}
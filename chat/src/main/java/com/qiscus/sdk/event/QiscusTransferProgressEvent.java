@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.event;
+
+/**
+ * Aggregate progress of attachment transfers, posted by QiscusTransferManager while transfers are running.
+ */
+public class QiscusTransferProgressEvent {
+    private int uploadCount;
+    private int downloadCount;
+    private int progress;
+
+    public QiscusTransferProgressEvent(int uploadCount, int downloadCount, int progress) {
+        this.uploadCount = uploadCount;
+        this.downloadCount = downloadCount;
+        this.progress = progress;
+    }
+
+    /**
+     * @return number of uploads running, queued or paused
+     */
+    public int getUploadCount() {
+        return uploadCount;
+    }
+
+    /**
+     * @return number of downloads running, queued or paused
+     */
+    public int getDownloadCount() {
+        return downloadCount;
+    }
+
+    /**
+     * @return average progress in percent of all transfers
+     */
+    public int getProgress() {
+        return progress;
+    }
+}
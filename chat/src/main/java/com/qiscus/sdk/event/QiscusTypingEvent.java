@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.event;
+
+import java.util.Set;
+
+/**
+ * Users typing in a room, posted by QiscusTypingManager at most every few hundred milliseconds when the set changes.
+ */
+public class QiscusTypingEvent {
+    private long roomId;
+    private Set<String> typingUsers;
+
+    public QiscusTypingEvent(long roomId, Set<String> typingUsers) {
+        this.roomId = roomId;
+        this.typingUsers = typingUsers;
+    }
+
+    public long getRoomId() {
+        return roomId;
+    }
+
+    /**
+     * @return emails of the users typing in the room, empty when nobody is typing
+     */
+    public Set<String> getTypingUsers() {
+        return typingUsers;
+    }
+}
@@ -29,11 +29,15 @@ import com.qiscus.sdk.data.model.QiscusContact;
 import com.qiscus.sdk.data.model.QiscusLocation;
 import com.qiscus.sdk.data.model.QiscusRoomMember;
 import com.qiscus.sdk.data.remote.QiscusApi;
+import com.qiscus.sdk.data.remote.QiscusOutbox;
 import com.qiscus.sdk.data.remote.QiscusPusherApi;
+import com.qiscus.sdk.data.remote.QiscusReceiptBatcher;
+import com.qiscus.sdk.data.remote.QiscusTransferManager;
 import com.qiscus.sdk.data.remote.QiscusResendCommentHelper;
 import com.qiscus.sdk.event.QiscusClearCommentsEvent;
 import com.qiscus.sdk.event.QiscusCommentDeletedEvent;
 import com.qiscus.sdk.event.QiscusCommentReceivedEvent;
+import com.qiscus.sdk.event.QiscusCommentsReceivedEvent;
 import com.qiscus.sdk.event.QiscusCommentResendEvent;
 import com.qiscus.sdk.event.QiscusMqttStatusEvent;
 import com.qiscus.sdk.util.QiscusAndroidUtil;
@@ -119,6 +123,9 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
         //Simpen statenya
         qiscusComment.setState(state);
         Qiscus.getDataStore().addOrUpdate(qiscusComment);
+        if (state == QiscusComment.STATE_PENDING) {
+            QiscusOutbox.getInstance().enqueue(qiscusComment);
+        }
     }
 
     public void cancelPendingComment(QiscusComment qiscusComment) {
@@ -127,6 +134,7 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
             if (!subscription.isUnsubscribed()) {
                 subscription.unsubscribe();
             }
+            QiscusTransferManager.getInstance().cancel(qiscusComment);
             pendingTask.remove(qiscusComment);
         }
     }
@@ -218,8 +226,8 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
         view.onSendingComment(qiscusComment);
 
         File finalCompressedFile = compressedFile;
-        Subscription subscription = QiscusApi.getInstance()
-                .uploadFile(compressedFile, percentage -> qiscusComment.setProgress((int) percentage))
+        Subscription subscription = QiscusTransferManager.getInstance()
+                .upload(qiscusComment, compressedFile, QiscusTransferManager.Priority.USER)
                 .doOnSubscribe(() -> Qiscus.getDataStore().addOrUpdate(qiscusComment))
                 .flatMap(uri -> {
                     qiscusComment.updateAttachmentUrl(uri.toString());
@@ -266,8 +274,8 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
         }
 
         qiscusComment.setProgress(0);
-        Subscription subscription = QiscusApi.getInstance()
-                .uploadFile(file, percentage -> qiscusComment.setProgress((int) percentage))
+        Subscription subscription = QiscusTransferManager.getInstance()
+                .upload(qiscusComment, file, QiscusTransferManager.Priority.USER)
                 .doOnSubscribe(() -> Qiscus.getDataStore().addOrUpdate(qiscusComment))
                 .flatMap(uri -> {
                     qiscusComment.updateAttachmentUrl(uri.toString());
@@ -336,7 +344,7 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
     }
 
     private Observable<Pair<QiscusChatRoom, List<QiscusComment>>> getInitRoomData() {
-        return QiscusApi.getInstance().getChatRoomComments(room.getId())
+        return QiscusApi.getInstance().getChatRoomCommentsCacheThenRevalidate(room.getId())
                 .doOnError(throwable -> {
                     QiscusErrorLogger.print(throwable);
                     throwable.printStackTrace();
@@ -361,11 +369,9 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
 
     private Observable<List<QiscusComment>> getCommentsFromNetwork(long lastCommentId) {
         return QiscusApi.getInstance().getComments(room.getId(), lastCommentId)
-                .doOnNext(qiscusComment -> {
-                    qiscusComment.setRoomId(room.getId());
-                    roomEventHandler.transformCommentState(qiscusComment, false);
-                })
+                .doOnNext(qiscusComment -> qiscusComment.setRoomId(room.getId()))
                 .toSortedList(commentComparator)
+                .doOnNext(comments -> roomEventHandler.transformCommentState(comments, false))
                 .subscribeOn(Schedulers.io());
     }
 
@@ -380,6 +386,7 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
                     return comments;
                 })
                 .doOnNext(comments -> roomEventHandler.transformCommentState(comments, forceFailedSendingComment))
+                .doOnNext(comments -> Qiscus.getDataStore().getLocalPaths(room.getId()))
                 .subscribeOn(Schedulers.io());
     }
 
@@ -518,11 +525,9 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
 
     public void loadCommentsAfter(QiscusComment comment) {
         QiscusApi.getInstance().getCommentsAfter(room.getId(), comment.getId())
-                .doOnNext(qiscusComment -> {
-                    qiscusComment.setRoomId(room.getId());
-                    roomEventHandler.transformCommentState(qiscusComment, false);
-                })
+                .doOnNext(qiscusComment -> qiscusComment.setRoomId(room.getId()))
                 .toSortedList(commentComparator)
+                .doOnNext(comments -> roomEventHandler.transformCommentState(comments, false))
                 .doOnNext(Collections::reverse)
                 .subscribeOn(Schedulers.newThread())
                 .observeOn(AndroidSchedulers.mainThread())
@@ -567,6 +572,15 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
         }
     }
 
+    @Subscribe
+    public void onCommentsReceivedEvent(QiscusCommentsReceivedEvent event) {
+        for (QiscusComment qiscusComment : event.getQiscusComments()) {
+            if (qiscusComment.getRoomId() == room.getId()) {
+                onGotNewComment(qiscusComment);
+            }
+        }
+    }
+
     @Subscribe
     public void handleClearCommentsEvent(QiscusClearCommentsEvent event) {
         if (event.getRoomId() == room.getId()) {
@@ -604,9 +618,8 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
         File file = Qiscus.getDataStore().getLocalPath(qiscusComment.getId());
         if (file == null) {
             qiscusComment.setDownloading(true);
-            QiscusApi.getInstance()
-                    .downloadFile(qiscusComment.getAttachmentUri().toString(), qiscusComment.getAttachmentName(),
-                            percentage -> qiscusComment.setProgress((int) percentage))
+            QiscusTransferManager.getInstance()
+                    .download(qiscusComment, QiscusTransferManager.Priority.VISIBLE)
                     .subscribeOn(Schedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
                     .compose(bindToLifecycle())
@@ -718,6 +731,7 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
         }
         roomEventHandler.detach();
         clearUnreadCount();
+        QiscusReceiptBatcher.getInstance().flush(room.getId());
         room = null;
         EventBus.getDefault().unregister(this);
     }
@@ -21,7 +21,7 @@ import android.support.v4.util.Pair;
 import com.qiscus.sdk.Qiscus;
 import com.qiscus.sdk.R;
 import com.qiscus.sdk.data.model.QiscusComment;
-import com.qiscus.sdk.data.remote.QiscusApi;
+import com.qiscus.sdk.data.remote.QiscusTransferManager;
 import com.qiscus.sdk.util.QiscusErrorLogger;
 import com.qiscus.sdk.util.QiscusFileUtil;
 import com.qiscus.sdk.util.QiscusTextUtil;
@@ -44,6 +44,7 @@ import rx.schedulers.Schedulers;
 public class QiscusPhotoViewerPresenter extends QiscusPresenter<QiscusPhotoViewerPresenter.View> {
 
     private Subscription downloadSubscription;
+    private QiscusComment downloadingComment;
 
     public QiscusPhotoViewerPresenter(View view) {
         super(view);
@@ -88,9 +89,9 @@ public class QiscusPhotoViewerPresenter extends QiscusPresenter<QiscusPhotoViewe
             return;
         }
         qiscusComment.setDownloading(true);
-        downloadSubscription = QiscusApi.getInstance()
-                .downloadFile(qiscusComment.getAttachmentUri().toString(), qiscusComment.getAttachmentName(),
-                        percentage -> qiscusComment.setProgress((int) percentage))
+        downloadingComment = qiscusComment;
+        downloadSubscription = QiscusTransferManager.getInstance()
+                .download(qiscusComment, QiscusTransferManager.Priority.VISIBLE)
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .compose(bindToLifecycle())
@@ -112,6 +113,10 @@ public class QiscusPhotoViewerPresenter extends QiscusPresenter<QiscusPhotoViewe
         if (downloadSubscription != null) {
             downloadSubscription.unsubscribe();
         }
+        if (downloadingComment != null) {
+            QiscusTransferManager.getInstance().cancel(downloadingComment);
+            downloadingComment = null;
+        }
     }
 
     public interface View extends QiscusPresenter.View {
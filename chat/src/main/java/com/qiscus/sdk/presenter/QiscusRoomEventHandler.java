@@ -31,6 +31,7 @@ import org.greenrobot.eventbus.Subscribe;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -54,6 +55,7 @@ class QiscusRoomEventHandler {
 
     //task untuk listen mqtt room
     private Runnable listenRoomTask;
+    private boolean listeningRoom;
 
     //listener untuk setiap perubahan state
     private StateListener listener;
@@ -129,10 +131,16 @@ class QiscusRoomEventHandler {
 
     private void listenRoomEvent() {
         QiscusPusherApi.getInstance().listenRoom(room);
+        listeningRoom = true;
     }
 
     @Subscribe
     public void onRoomEvent(QiscusChatRoomEvent event) {
+        //Typing event sudah di-coalesce oleh QiscusTypingManager dan dipost dari background thread
+        if (event.getEvent() == QiscusChatRoomEvent.Event.TYPING) {
+            handleEvent(event);
+            return;
+        }
         QiscusAndroidUtil.runOnBackgroundThread(() -> handleEvent(event));
     }
 
@@ -247,15 +255,30 @@ class QiscusRoomEventHandler {
     }
 
     void transformCommentState(List<QiscusComment> comments, boolean fromLocal) {
+        List<QiscusComment> changedComments = new ArrayList<>();
         for (QiscusComment comment : comments) {
-            transformCommentState(comment, fromLocal);
+            if (applyCommentState(comment, fromLocal)) {
+                changedComments.add(comment);
+            }
         }
+        Qiscus.getDataStore().addOrUpdate(changedComments);
     }
 
     void transformCommentState(QiscusComment qiscusComment, boolean fromLocal) {
+        if (applyCommentState(qiscusComment, fromLocal)) {
+            Qiscus.getDataStore().addOrUpdate(qiscusComment);
+        }
+    }
+
+    /**
+     * Menentukan state comment berdasarkan state anggota room
+     *
+     * @return true jika comment perlu disimpan ulang ke local DB
+     */
+    private boolean applyCommentState(QiscusComment qiscusComment, boolean fromLocal) {
         if (fromLocal && qiscusComment.getState() == QiscusComment.STATE_SENDING) {
             qiscusComment.setState(QiscusComment.STATE_PENDING);
-            Qiscus.getDataStore().addOrUpdate(qiscusComment);
+            return true;
         } else if (qiscusComment.getState() != QiscusComment.STATE_FAILED
                 && qiscusComment.getState() != QiscusComment.STATE_PENDING
                 && qiscusComment.getState() != QiscusComment.STATE_SENDING
@@ -269,8 +292,9 @@ class QiscusRoomEventHandler {
                 qiscusComment.setState(QiscusComment.STATE_ON_QISCUS);
             }
 
-            Qiscus.getDataStore().addOrUpdate(qiscusComment);
+            return true;
         }
+        return false;
     }
 
     void onGotComment(QiscusComment qiscusComment) {
@@ -344,7 +368,10 @@ class QiscusRoomEventHandler {
 
     void detach() {
         QiscusAndroidUtil.cancelRunOnUIThread(listenRoomTask);
-        QiscusPusherApi.getInstance().unListenRoom(room);
+        if (listeningRoom) {
+            QiscusPusherApi.getInstance().unListenRoom(room);
+            listeningRoom = false;
+        }
         listener = null;
         EventBus.getDefault().unregister(this);
     }
@@ -42,9 +42,7 @@ public class QiscusFirebaseService extends FirebaseMessagingService {
     public static boolean handleMessageReceived(RemoteMessage remoteMessage) {
         if (remoteMessage.getData().containsKey("qiscus_sdk")) {
             if (Qiscus.hasSetupUser()) {
-                if (!QiscusPusherApi.getInstance().isConnected()) {
-                    QiscusPusherApi.getInstance().restartConnection();
-                }
+                QiscusPusherApi.getInstance().ensureConnected();
                 if (remoteMessage.getData().containsKey("payload")) {
                     if (remoteMessage.getData().get("qiscus_sdk").equals("post_comment")) {
                         handlePostCommentEvent(remoteMessage);
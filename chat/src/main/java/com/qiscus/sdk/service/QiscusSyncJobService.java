@@ -11,12 +11,9 @@ import android.os.Build;
 import android.support.annotation.RequiresApi;
 
 import com.qiscus.sdk.Qiscus;
-import com.qiscus.sdk.data.local.QiscusEventCache;
 import com.qiscus.sdk.data.model.QiscusAccount;
-import com.qiscus.sdk.data.model.QiscusComment;
-import com.qiscus.sdk.data.remote.QiscusApi;
 import com.qiscus.sdk.data.remote.QiscusPusherApi;
-import com.qiscus.sdk.event.QiscusSyncEvent;
+import com.qiscus.sdk.data.remote.QiscusSyncEngine;
 import com.qiscus.sdk.event.QiscusUserEvent;
 import com.qiscus.sdk.util.QiscusAndroidUtil;
 import com.qiscus.sdk.util.QiscusErrorLogger;
@@ -28,7 +25,6 @@ import org.greenrobot.eventbus.Subscribe;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
-import rx.android.schedulers.AndroidSchedulers;
 import rx.schedulers.Schedulers;
 
 /**
@@ -53,7 +49,7 @@ public class QiscusSyncJobService extends JobService {
         }
 
         if (Qiscus.hasSetupUser()) {
-            QiscusAndroidUtil.runOnUIThread(() -> QiscusPusherApi.getInstance().restartConnection());
+            QiscusPusherApi.getInstance().ensureConnected();
             componentName = new ComponentName(this, QiscusSyncJobService.class);
             syncJob();
         }
@@ -73,46 +69,17 @@ public class QiscusSyncJobService extends JobService {
     }
 
     private void syncEvents() {
-        QiscusApi.getInstance().getEvents(QiscusEventCache.getInstance().getLastEventId())
+        QiscusSyncEngine.getInstance().syncEvents()
                 .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(events -> {
                 }, QiscusErrorLogger::print);
     }
 
     private void syncComments() {
-        QiscusApi.getInstance().sync()
-                .doOnNext(qiscusComment -> {
-                    QiscusComment savedQiscusComment = Qiscus.getDataStore().getComment(qiscusComment.getUniqueId());
-
-                    if (savedQiscusComment != null && savedQiscusComment.isDeleted()) {
-                        return;
-                    }
-
-                    if (!qiscusComment.isMyComment()) {
-                        QiscusPusherApi.getInstance()
-                                .setUserDelivery(qiscusComment.getRoomId(), qiscusComment.getId());
-                    }
-
-                    if (savedQiscusComment != null && savedQiscusComment.getState() > qiscusComment.getState()) {
-                        qiscusComment.setState(savedQiscusComment.getState());
-                    }
-                })
-                .doOnSubscribe(() -> {
-                    EventBus.getDefault().post((QiscusSyncEvent.STARTED));
-                    QiscusLogger.print("Sync started...");
-                })
-                .doOnCompleted(() -> {
-                    EventBus.getDefault().post((QiscusSyncEvent.COMPLETED));
-                    QiscusLogger.print("Sync completed...");
-                })
+        QiscusSyncEngine.getInstance().sync()
                 .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(QiscusPusherApi::handleReceivedComment, throwable -> {
-                    QiscusErrorLogger.print(throwable);
-                    EventBus.getDefault().post(QiscusSyncEvent.FAILED);
-                    QiscusLogger.print("Sync failed...");
-                });
+                .subscribe(comments -> {
+                }, QiscusErrorLogger::print);
     }
 
     private void stopSync() {
@@ -148,7 +115,7 @@ public class QiscusSyncJobService extends JobService {
         QiscusLogger.print(TAG, "Job started...");
 
         if (Qiscus.hasSetupUser()) {
-            QiscusAndroidUtil.runOnUIThread(() -> QiscusPusherApi.getInstance().restartConnection());
+            QiscusPusherApi.getInstance().ensureConnected();
             scheduleSync();
             jobFinished(params, true);
         }
@@ -22,12 +22,8 @@ import android.os.IBinder;
 import android.support.annotation.Nullable;
 
 import com.qiscus.sdk.Qiscus;
-import com.qiscus.sdk.data.local.QiscusEventCache;
-import com.qiscus.sdk.data.model.QiscusAccount;
-import com.qiscus.sdk.data.model.QiscusComment;
-import com.qiscus.sdk.data.remote.QiscusApi;
 import com.qiscus.sdk.data.remote.QiscusPusherApi;
-import com.qiscus.sdk.event.QiscusSyncEvent;
+import com.qiscus.sdk.data.remote.QiscusSyncEngine;
 import com.qiscus.sdk.event.QiscusUserEvent;
 import com.qiscus.sdk.util.QiscusAndroidUtil;
 import com.qiscus.sdk.util.QiscusErrorLogger;
@@ -39,7 +35,6 @@ import org.greenrobot.eventbus.Subscribe;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
-import rx.android.schedulers.AndroidSchedulers;
 import rx.schedulers.Schedulers;
 
 /**
@@ -51,7 +46,6 @@ import rx.schedulers.Schedulers;
 public class QiscusSyncService extends Service {
     private static final String TAG = QiscusSyncService.class.getSimpleName();
 
-    private QiscusAccount qiscusAccount;
     private ScheduledFuture<?> scheduledSync;
 
     @Override
@@ -63,7 +57,7 @@ public class QiscusSyncService extends Service {
         }
 
         if (Qiscus.hasSetupUser()) {
-            QiscusAndroidUtil.runOnUIThread(() -> QiscusPusherApi.getInstance().restartConnection());
+            QiscusPusherApi.getInstance().ensureConnected();
             scheduleSync(Qiscus.getHeartBeat());
         }
     }
@@ -80,7 +74,6 @@ public class QiscusSyncService extends Service {
     }
 
     private void scheduleSync(long period) {
-        qiscusAccount = Qiscus.getQiscusAccount();
         stopSync();
 
         scheduledSync = Qiscus.getTaskExecutor()
@@ -93,46 +86,17 @@ public class QiscusSyncService extends Service {
     }
 
     private void syncEvents() {
-        QiscusApi.getInstance().getEvents(QiscusEventCache.getInstance().getLastEventId())
+        QiscusSyncEngine.getInstance().syncEvents()
                 .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(events -> {
                 }, QiscusErrorLogger::print);
     }
 
     private void syncComments() {
-        QiscusApi.getInstance().sync()
-                .doOnNext(qiscusComment -> {
-                    QiscusComment savedQiscusComment = Qiscus.getDataStore().getComment(qiscusComment.getUniqueId());
-
-                    if (savedQiscusComment != null && savedQiscusComment.isDeleted()) {
-                        return;
-                    }
-
-                    if (!qiscusComment.getSenderEmail().equals(qiscusAccount.getEmail())) {
-                        QiscusPusherApi.getInstance()
-                                .setUserDelivery(qiscusComment.getRoomId(), qiscusComment.getId());
-                    }
-
-                    if (savedQiscusComment != null && savedQiscusComment.getState() > qiscusComment.getState()) {
-                        qiscusComment.setState(savedQiscusComment.getState());
-                    }
-                })
-                .doOnSubscribe(() -> {
-                    EventBus.getDefault().post((QiscusSyncEvent.STARTED));
-                    QiscusLogger.print("Sync started...");
-                })
-                .doOnCompleted(() -> {
-                    EventBus.getDefault().post((QiscusSyncEvent.COMPLETED));
-                    QiscusLogger.print("Sync completed...");
-                })
+        QiscusSyncEngine.getInstance().sync()
                 .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(QiscusPusherApi::handleReceivedComment, throwable -> {
-                    QiscusErrorLogger.print(throwable);
-                    EventBus.getDefault().post(QiscusSyncEvent.FAILED);
-                    QiscusLogger.print("Sync failed...");
-                });
+                .subscribe(comments -> {
+                }, QiscusErrorLogger::print);
     }
 
     private void stopSync() {
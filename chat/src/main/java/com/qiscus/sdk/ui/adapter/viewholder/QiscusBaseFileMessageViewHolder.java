@@ -121,7 +121,7 @@ public abstract class QiscusBaseFileMessageViewHolder extends QiscusBaseMessageV
     @Override
     protected void showMessage(QiscusComment qiscusComment) {
         if (downloadIconView != null) {
-            File localPath = Qiscus.getDataStore().getLocalPath(qiscusComment.getId());
+            File localPath = Qiscus.getDataStore().getLocalPath(qiscusComment.getRoomId(), qiscusComment.getId());
             if (localPath == null) {
                 File file = new File(qiscusComment.getAttachmentUri().toString());
                 if (file.exists()) {
@@ -184,7 +184,7 @@ public abstract class QiscusBaseImageMessageViewHolder extends QiscusBaseMessage
     }
 
     protected void showSentImage(QiscusComment qiscusComment) {
-        File localPath = Qiscus.getDataStore().getLocalPath(qiscusComment.getId());
+        File localPath = Qiscus.getDataStore().getLocalPath(qiscusComment.getRoomId(), qiscusComment.getId());
         if (localPath == null) { //If the image not yet downloaded
             showDownloadIcon(true);
             showBlurryImage(qiscusComment);
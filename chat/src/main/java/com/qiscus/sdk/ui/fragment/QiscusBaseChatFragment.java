@@ -70,6 +70,7 @@ import com.qiscus.sdk.data.model.QiscusLocation;
 import com.qiscus.sdk.data.model.QiscusPhoto;
 import com.qiscus.sdk.data.model.QiscusReplyCommentDraft;
 import com.qiscus.sdk.data.remote.QiscusPusherApi;
+import com.qiscus.sdk.data.remote.QiscusTypingManager;
 import com.qiscus.sdk.presenter.QiscusChatPresenter;
 import com.qiscus.sdk.ui.QiscusAccountLinkingActivity;
 import com.qiscus.sdk.ui.QiscusPhotoViewerActivity;
@@ -271,9 +272,6 @@ public abstract class QiscusBaseChatFragment<T extends QiscusBaseChatAdapter> ex
 
     private Runnable commentHighlightTask;
 
-    private boolean typing;
-    private Runnable stopTypingNotifyTask;
-
     @Nullable
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -343,11 +341,7 @@ public abstract class QiscusBaseChatFragment<T extends QiscusBaseChatAdapter> ex
         messageEditText.addTextChangedListener(new TextWatcher() {
             @Override
             public void beforeTextChanged(CharSequence s, int start, int count, int after) {
-                if (!typing) {
-                    typing = true;
-                    notifyServerTyping(true);
-                }
-                QiscusAndroidUtil.cancelRunOnUIThread(stopTypingNotifyTask);
+                QiscusTypingManager.getInstance().onTyping(qiscusChatRoom.getId());
             }
 
             @Override
@@ -358,7 +352,6 @@ public abstract class QiscusBaseChatFragment<T extends QiscusBaseChatAdapter> ex
             @Override
             public void afterTextChanged(Editable s) {
                 onMessageEditTextChanged(s);
-                QiscusAndroidUtil.runOnUIThread(stopTypingNotifyTask, 800);
             }
         });
 
@@ -620,11 +613,6 @@ public abstract class QiscusBaseChatFragment<T extends QiscusBaseChatAdapter> ex
         setupEmojiPopup();
         setupMentionEditText();
 
-        stopTypingNotifyTask = () -> {
-            typing = false;
-            notifyServerTyping(false);
-        };
-
         qiscusChatPresenter = new QiscusChatPresenter(this, qiscusChatRoom);
         if (savedInstanceState == null) {
             qiscusChatPresenter.loadComments(20);
@@ -1189,10 +1177,6 @@ public abstract class QiscusBaseChatFragment<T extends QiscusBaseChatAdapter> ex
         }
     }
 
-    private void notifyServerTyping(boolean typing) {
-        QiscusPusherApi.getInstance().setUserTyping(qiscusChatRoom.getId(), typing);
-    }
-
     public void sendQiscusComment(QiscusComment qiscusComment) {
         qiscusChatPresenter.resendComment(qiscusComment);
     }
@@ -1750,7 +1734,7 @@ public abstract class QiscusBaseChatFragment<T extends QiscusBaseChatAdapter> ex
         if (commentHighlightTask != null) {
             QiscusAndroidUtil.cancelRunOnUIThread(commentHighlightTask);
         }
-        QiscusPusherApi.getInstance().setUserTyping(qiscusChatRoom.getId(), false);
+        QiscusTypingManager.getInstance().stopTyping(qiscusChatRoom.getId());
         chatAdapter.detachView();
         if (recordAudioPanel != null) {
             recordAudioPanel.cancelRecord();
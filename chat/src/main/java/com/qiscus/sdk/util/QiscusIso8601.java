@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.util;
+
+/**
+ * Stateless UTC ISO-8601 timestamp codec, safe to call from any thread.
+ * Parses "yyyy-MM-dd'T'HH:mm:ss[.SSS](Z|+hh:mm|-hh:mm)" into epoch millis and formats epoch millis back to
+ * "yyyy-MM-dd'T'HH:mm:ss'Z'" as used by the Qiscus server.
+ */
+public final class QiscusIso8601 {
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    private QiscusIso8601() {
+
+    }
+
+    /**
+     * Parse the timestamp into epoch millis.
+     *
+     * @param timestamp ISO-8601 timestamp
+     * @return epoch millis
+     * @throws IllegalArgumentException if the timestamp is not a valid ISO-8601 date time
+     */
+    public static long parse(String timestamp) {
+        if (timestamp == null || timestamp.length() < 19) {
+            throw new IllegalArgumentException("Invalid timestamp: " + timestamp);
+        }
+
+        int year = parseInt(timestamp, 0, 4);
+        expect(timestamp, 4, '-');
+        int month = parseInt(timestamp, 5, 7);
+        expect(timestamp, 7, '-');
+        int day = parseInt(timestamp, 8, 10);
+        if (timestamp.charAt(10) != 'T' && timestamp.charAt(10) != 't' && timestamp.charAt(10) != ' ') {
+            throw new IllegalArgumentException("Invalid timestamp: " + timestamp);
+        }
+        int hour = parseInt(timestamp, 11, 13);
+        expect(timestamp, 13, ':');
+        int minute = parseInt(timestamp, 14, 16);
+        expect(timestamp, 16, ':');
+        int second = parseInt(timestamp, 17, 19);
+
+        if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 60) {
+            throw new IllegalArgumentException("Invalid timestamp: " + timestamp);
+        }
+
+        int position = 19;
+        int millis = 0;
+        if (position < timestamp.length() && timestamp.charAt(position) == '.') {
+            position++;
+            int digits = 0;
+            while (position < timestamp.length() && isDigit(timestamp.charAt(position))) {
+                if (digits < 3) {
+                    millis = millis * 10 + (timestamp.charAt(position) - '0');
+                }
+                digits++;
+                position++;
+            }
+            if (digits == 0) {
+                throw new IllegalArgumentException("Invalid timestamp: " + timestamp);
+            }
+            for (; digits < 3; digits++) {
+                millis *= 10;
+            }
+        }
+
+        long offsetMillis = 0;
+        if (position < timestamp.length()) {
+            char zone = timestamp.charAt(position);
+            if (zone == 'Z' || zone == 'z') {
+                position++;
+            } else if (zone == '+' || zone == '-') {
+                int offsetHour = parseInt(timestamp, position + 1, position + 3);
+                position += 3;
+                int offsetMinute = 0;
+                if (position < timestamp.length()) {
+                    if (timestamp.charAt(position) == ':') {
+                        position++;
+                    }
+                    offsetMinute = parseInt(timestamp, position, position + 2);
+                    position += 2;
+                }
+                offsetMillis = (offsetHour * 60L + offsetMinute) * 60L * MILLIS_PER_SECOND;
+                if (zone == '-') {
+                    offsetMillis = -offsetMillis;
+                }
+            }
+        }
+        if (position != timestamp.length()) {
+            throw new IllegalArgumentException("Invalid timestamp: " + timestamp);
+        }
+
+        long epochDay = toEpochDay(year, month, day);
+        long secondOfDay = hour * 3600L + minute * 60L + second;
+        return epochDay * MILLIS_PER_DAY + secondOfDay * MILLIS_PER_SECOND + millis - offsetMillis;
+    }
+
+    /**
+     * Format epoch millis as UTC timestamp, e.g. 2018-03-01T08:15:30Z.
+     */
+    public static String format(long epochMillis) {
+        long epochDay = floorDiv(epochMillis, MILLIS_PER_DAY);
+        int secondOfDay = (int) ((epochMillis - epochDay * MILLIS_PER_DAY) / MILLIS_PER_SECOND);
+
+        // Civil from days, see http://howardhinnant.github.io/date_algorithms.html
+        long z = epochDay + 719468;
+        long era = floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        char[] chars = new char[20];
+        putDigits(chars, 0, year, 4);
+        chars[4] = '-';
+        putDigits(chars, 5, month, 2);
+        chars[7] = '-';
+        putDigits(chars, 8, day, 2);
+        chars[10] = 'T';
+        putDigits(chars, 11, secondOfDay / 3600, 2);
+        chars[13] = ':';
+        putDigits(chars, 14, secondOfDay / 60 % 60, 2);
+        chars[16] = ':';
+        putDigits(chars, 17, secondOfDay % 60, 2);
+        chars[19] = 'Z';
+        return new String(chars);
+    }
+
+    private static long toEpochDay(int year, int month, int day) {
+        // Days from civil, see http://howardhinnant.github.io/date_algorithms.html
+        long y = month <= 2 ? year - 1 : year;
+        long era = floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    // Math.floorDiv is only available since API 24
+    private static long floorDiv(long x, long y) {
+        long result = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            result--;
+        }
+        return result;
+    }
+
+    private static int parseInt(String value, int start, int end) {
+        if (end > value.length()) {
+            throw new IllegalArgumentException("Invalid timestamp: " + value);
+        }
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (!isDigit(c)) {
+                throw new IllegalArgumentException("Invalid timestamp: " + value);
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static void expect(String value, int position, char expected) {
+        if (value.charAt(position) != expected) {
+            throw new IllegalArgumentException("Invalid timestamp: " + value);
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static void putDigits(char[] chars, int offset, int value, int length) {
+        for (int i = offset + length - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
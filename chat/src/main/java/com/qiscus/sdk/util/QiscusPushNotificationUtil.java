@@ -74,6 +74,17 @@ public final class QiscusPushNotificationUtil {
         QiscusAndroidUtil.runOnBackgroundThread(() -> handlePN(context, qiscusComment));
     }
 
+    /**
+     * Show notifications of new comments the caller already saved.
+     */
+    public static void notifySavedComments(Context context, List<QiscusComment> newComments) {
+        QiscusAndroidUtil.runOnBackgroundThread(() -> {
+            for (QiscusComment qiscusComment : newComments) {
+                notifyComment(context, qiscusComment);
+            }
+        });
+    }
+
     public static void handleDeletedCommentNotification(Context context, List<QiscusComment> comments, boolean hardDelete) {
         QiscusAndroidUtil.runOnBackgroundThread(() -> handleDeletedComment(context, comments, hardDelete));
     }
@@ -84,7 +95,10 @@ public final class QiscusPushNotificationUtil {
         }
 
         Qiscus.getDataStore().addOrUpdate(qiscusComment);
+        notifyComment(context, qiscusComment);
+    }
 
+    private static void notifyComment(Context context, QiscusComment qiscusComment) {
         Pair<Boolean, Long> lastChatActivity = QiscusCacheManager.getInstance().getLastChatActivity();
         if (!lastChatActivity.first || lastChatActivity.second != qiscusComment.getRoomId()) {
             updateUnreadCount(qiscusComment);
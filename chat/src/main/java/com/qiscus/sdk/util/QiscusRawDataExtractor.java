@@ -17,6 +17,7 @@
 package com.qiscus.sdk.util;
 
 import android.support.annotation.RestrictTo;
+import android.support.v4.util.LruCache;
 
 import com.qiscus.sdk.data.model.QiscusComment;
 
@@ -31,11 +32,35 @@ import org.json.JSONObject;
  */
 @RestrictTo(RestrictTo.Scope.LIBRARY)
 public final class QiscusRawDataExtractor {
+    private static final int PAYLOAD_CACHE_SIZE = 256;
+
+    /**
+     * Parsed payloads keyed by the raw payload, so binding the same comment again, or another instance of it
+     * loaded from database, does not parse the JSON again.
+     */
+    private static final LruCache<String, JSONObject> payloadCache = new LruCache<>(PAYLOAD_CACHE_SIZE);
 
     private QiscusRawDataExtractor() {
     }
 
+    /**
+     * Get parsed payload of the comment. The returned object is shared between callers, do not modify it.
+     *
+     * @param qiscusComment the comment
+     * @return parsed extra payload of the comment
+     * @throws JSONException when the payload is not a valid json object
+     */
     public static JSONObject getPayload(QiscusComment qiscusComment) throws JSONException {
-        return new JSONObject(qiscusComment.getExtraPayload());
+        String rawPayload = qiscusComment.getExtraPayload();
+        if (rawPayload == null) {
+            throw new JSONException("Comment has no payload");
+        }
+
+        JSONObject payload = payloadCache.get(rawPayload);
+        if (payload == null) {
+            payload = new JSONObject(rawPayload);
+            payloadCache.put(rawPayload, payload);
+        }
+        return payload;
     }
 }
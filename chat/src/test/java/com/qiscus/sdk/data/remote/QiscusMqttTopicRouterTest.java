@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.data.remote;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check {@link QiscusMqttTopicRouter} dispatches built in topics to the listener and other topics to the custom
+ * handlers matching them.
+ */
+public class QiscusMqttTopicRouterTest {
+    private static final String TOKEN = "abc123token";
+    private static final String EMAIL = "me@qiscus.com";
+
+    private final List<String> calls = new ArrayList<>();
+    private QiscusMqttTopicRouter router;
+
+    @Before
+    public void setUp() {
+        calls.clear();
+        router = new QiscusMqttTopicRouter(new RecordingListener());
+        router.setAccount(TOKEN, EMAIL);
+    }
+
+    @Test
+    public void routeComment() {
+        assertTrue(router.route(TOKEN + "/c", "{\"id\":1}"));
+        assertCalls("comment {\"id\":1}");
+    }
+
+    @Test
+    public void routeNotification() {
+        assertTrue(router.route(TOKEN + "/n", "{\"action_topic\":\"delete_message\"}"));
+        assertCalls("notification {\"action_topic\":\"delete_message\"}");
+    }
+
+    @Test
+    public void commentOfOtherTokenIsNotRouted() {
+        assertFalse(router.route("othertoken1/c", "{}"));
+        assertCalls();
+    }
+
+    @Test
+    public void routeTyping() {
+        assertTrue(router.route("r/12/12/john@qiscus.com/t", "1"));
+        assertTrue(router.route("r/12/12/john@qiscus.com/t", "0"));
+        assertCalls("typing 12 john@qiscus.com true", "typing 12 john@qiscus.com false");
+    }
+
+    @Test
+    public void routeDeliveredAndRead() {
+        assertTrue(router.route("r/12/12/john@qiscus.com/d", "345:unique-1"));
+        assertTrue(router.route("r/12/12/john@qiscus.com/r", "346:unique:2"));
+        assertCalls("delivered 12 john@qiscus.com 345 unique-1", "read 12 john@qiscus.com 346 unique:2");
+    }
+
+    @Test
+    public void routeUserStatus() {
+        assertTrue(router.route("u/john@qiscus.com/s", "1:1520000000000123"));
+        assertTrue(router.route("u/john@qiscus.com/s", "0:1520000000000"));
+        assertCalls("status john@qiscus.com true 1520000000000", "status john@qiscus.com false 1520000000000");
+    }
+
+    @Test
+    public void ownMessagesAreFiltered() {
+        assertTrue(router.route("r/12/12/" + EMAIL + "/t", "1"));
+        assertTrue(router.route("r/12/12/" + EMAIL + "/r", "345:unique-1"));
+        assertTrue(router.route("u/" + EMAIL + "/s", "1:1520000000000"));
+        assertCalls();
+    }
+
+    @Test
+    public void malformedRoomTopicsAreNotRouted() {
+        assertFalse(router.route("r/abc/abc/john@qiscus.com/t", "1"));
+        assertFalse(router.route("r/12/12/john@qiscus.com/d", "no-separator"));
+        assertFalse(router.route("r/12/12/john@qiscus.com/r", "x1:unique-1"));
+        assertFalse(router.route("r/12/12/john@qiscus.com/x", "1"));
+        assertCalls();
+    }
+
+    @Test
+    public void routeCustomSingleLevelWildcard() {
+        List<String> received = new ArrayList<>();
+        assertTrue(router.addHandler("game/+/score", (topic, message) -> received.add(topic + " " + message)));
+
+        assertTrue(router.route("game/42/score", "10"));
+        assertFalse(router.route("game/42/level/score", "11"));
+        assertFalse(router.route("game/42", "12"));
+
+        assertEquals(1, received.size());
+        assertEquals("game/42/score 10", received.get(0));
+        assertCalls();
+    }
+
+    @Test
+    public void routeCustomMultiLevelWildcard() {
+        List<String> received = new ArrayList<>();
+        router.addHandler("game/#", (topic, message) -> received.add(topic));
+
+        assertTrue(router.route("game", "1"));
+        assertTrue(router.route("game/42", "2"));
+        assertTrue(router.route("game/42/level/score", "3"));
+        assertFalse(router.route("games/42", "4"));
+
+        assertEquals(3, received.size());
+        assertEquals("game", received.get(0));
+        assertEquals("game/42", received.get(1));
+        assertEquals("game/42/level/score", received.get(2));
+    }
+
+    @Test
+    public void routeToEveryMatchingHandler() {
+        List<String> received = new ArrayList<>();
+        router.addHandler("game/+/score", (topic, message) -> received.add("single"));
+        router.addHandler("game/#", (topic, message) -> received.add("multi"));
+        router.addHandler("chat/#", (topic, message) -> received.add("other"));
+
+        assertTrue(router.route("game/42/score", "10"));
+
+        assertEquals(2, received.size());
+        assertTrue(received.contains("single"));
+        assertTrue(received.contains("multi"));
+    }
+
+    @Test
+    public void builtInTopicIsNotPassedToCustomHandler() {
+        List<String> received = new ArrayList<>();
+        router.addHandler("r/#", (topic, message) -> received.add(topic));
+
+        assertTrue(router.route("r/12/12/john@qiscus.com/t", "1"));
+        // Not a built in room topic, so it falls back to the custom handler
+        assertTrue(router.route("r/12/12/john@qiscus.com/x", "1"));
+
+        assertEquals(1, received.size());
+        assertEquals("r/12/12/john@qiscus.com/x", received.get(0));
+        assertCalls("typing 12 john@qiscus.com true");
+    }
+
+    @Test
+    public void addAndRemoveHandler() {
+        QiscusMqttTopicRouter.TopicHandler handler = (topic, message) -> calls.add("custom " + topic);
+        assertTrue(router.addHandler("custom/+", handler));
+        assertFalse(router.addHandler("custom/+", handler));
+        assertTrue(router.route("custom/1", "x"));
+
+        assertTrue(router.removeHandler("custom/+"));
+        assertFalse(router.removeHandler("custom/+"));
+        assertFalse(router.route("custom/1", "x"));
+        assertCalls("custom custom/1");
+    }
+
+    @Test
+    public void matches() {
+        assertTrue(QiscusMqttTopicRouter.matches("a/b/c", "a/b/c"));
+        assertFalse(QiscusMqttTopicRouter.matches("a/b/c", "a/b"));
+        assertFalse(QiscusMqttTopicRouter.matches("a/b", "a/b/c"));
+        assertTrue(QiscusMqttTopicRouter.matches("+/b/+", "a/b/c"));
+        assertTrue(QiscusMqttTopicRouter.matches("a/+", "a/"));
+        assertTrue(QiscusMqttTopicRouter.matches("#", "a/b/c"));
+        assertTrue(QiscusMqttTopicRouter.matches("a/#", "a"));
+        assertFalse(QiscusMqttTopicRouter.matches("a/#", "ab"));
+    }
+
+    private void assertCalls(String... expected) {
+        assertEquals(expected.length, calls.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], calls.get(i));
+        }
+    }
+
+    private class RecordingListener implements QiscusMqttTopicRouter.Listener {
+        @Override
+        public void onComment(String message) {
+            calls.add("comment " + message);
+        }
+
+        @Override
+        public void onNotification(String message) {
+            calls.add("notification " + message);
+        }
+
+        @Override
+        public void onTyping(long roomId, String user, boolean typing) {
+            calls.add("typing " + roomId + " " + user + " " + typing);
+        }
+
+        @Override
+        public void onDelivered(long roomId, String user, long commentId, String commentUniqueId) {
+            calls.add("delivered " + roomId + " " + user + " " + commentId + " " + commentUniqueId);
+        }
+
+        @Override
+        public void onRead(long roomId, String user, long commentId, String commentUniqueId) {
+            calls.add("read " + roomId + " " + user + " " + commentId + " " + commentUniqueId);
+        }
+
+        @Override
+        public void onUserStatus(String user, boolean online, long lastActive) {
+            calls.add("status " + user + " " + online + " " + lastActive);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.util;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link QiscusIso8601} is shared by every thread decoding responses, check it against a thread confined
+ * {@link SimpleDateFormat} while many threads use it at once.
+ */
+public class QiscusIso8601Test {
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 20000;
+    // 1970-01-01 to 2100-01-01
+    private static final long MAX_MILLIS = 4102444800000L;
+
+    @Test
+    public void roundTripOnManyThreads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                results.add(executor.submit(roundTrip(i)));
+            }
+            for (Future<Void> result : results) {
+                // Rethrows assertion failure of the thread
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Callable<Void> roundTrip(long seed) {
+        return () -> {
+            Random random = new Random(seed);
+            SimpleDateFormat reference = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+            reference.setTimeZone(TimeZone.getTimeZone("UTC"));
+            for (int i = 0; i < ITERATIONS; i++) {
+                long millis = (long) (random.nextDouble() * MAX_MILLIS) / 1000 * 1000;
+                String timestamp = QiscusIso8601.format(millis);
+                assertEquals(reference.format(new Date(millis)), timestamp);
+                assertEquals(timestamp, millis, QiscusIso8601.parse(timestamp));
+            }
+            return null;
+        };
+    }
+
+    @Test
+    public void parseFractionsAndOffsets() {
+        long expected = 1520241330000L;
+        assertEquals("2018-03-05T09:15:30Z", QiscusIso8601.format(expected));
+        assertEquals(expected, QiscusIso8601.parse("2018-03-05T09:15:30Z"));
+        assertEquals(expected + 123, QiscusIso8601.parse("2018-03-05T09:15:30.123Z"));
+        assertEquals(expected + 120, QiscusIso8601.parse("2018-03-05T09:15:30.12Z"));
+        assertEquals(expected + 123, QiscusIso8601.parse("2018-03-05T09:15:30.123456Z"));
+        assertEquals(expected, QiscusIso8601.parse("2018-03-05T16:15:30+07:00"));
+        assertEquals(expected, QiscusIso8601.parse("2018-03-05T04:45:30-0430"));
+        assertEquals(expected, QiscusIso8601.parse("2018-03-05T09:15:30"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectInvalidTimestamp() {
+        QiscusIso8601.parse("2018-03-05 09:15");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectTrailingCharacters() {
+        QiscusIso8601.parse("2018-03-05T09:15:30Zabc");
+    }
+}